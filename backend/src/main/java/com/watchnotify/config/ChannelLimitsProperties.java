@@ -0,0 +1,98 @@
+package com.watchnotify.config;
+
+import com.watchnotify.model.Notification;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Outbound rate and concurrency limits and circuit breaker settings per channel, bound
+ * from {@code app.notification.<channel>.limits} and
+ * {@code app.notification.<channel>.circuit-breaker}. Used by
+ * {@link com.watchnotify.service.NotificationDispatcher}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.notification")
+public class ChannelLimitsProperties {
+    
+    private Channel email = new Channel(new Limits(16));
+    
+    private Channel sms = new Channel(new Limits(8));
+    
+    private Channel push = new Channel(new Limits(16));
+    
+    public Limits forChannel(Notification.NotificationType channel) {
+        return switch (channel) {
+            case EMAIL -> email.getLimits();
+            case SMS -> sms.getLimits();
+            case PUSH -> push.getLimits();
+        };
+    }
+    
+    public CircuitBreaker circuitBreakerFor(Notification.NotificationType channel) {
+        return switch (channel) {
+            case EMAIL -> email.getCircuitBreaker();
+            case SMS -> sms.getCircuitBreaker();
+            case PUSH -> push.getCircuitBreaker();
+        };
+    }
+    
+    @Data
+    public static class Channel {
+        
+        private Limits limits;
+        
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        
+        public Channel() {
+            this(new Limits(16));
+        }
+        
+        public Channel(Limits limits) {
+            this.limits = limits;
+        }
+    }
+    
+    @Data
+    public static class Limits {
+        
+        // Hard provider cap in messages per second; 0 disables the token bucket
+        private double rate = 0;
+        
+        // Messages that may go out back to back before the rate applies; defaults to one second's worth
+        private int burst = 0;
+        
+        private int minConcurrency = 1;
+        
+        private int maxConcurrency;
+        
+        // A send slower than this (ms), or failing more than this share of its messages, halves the concurrency
+        private long latencyThreshold = 5000;
+        
+        private double errorThreshold = 0.2;
+        
+        private double backoffFactor = 0.5;
+        
+        // Minimum time (ms) between two decreases, so one burst of failures backs off only once
+        private long backoffInterval = 1000;
+        
+        public Limits() {
+            this(16);
+        }
+        
+        public Limits(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+    
+    @Data
+    public static class CircuitBreaker {
+        
+        // Consecutive sends in which every message failed before the channel is opened
+        private int failureThreshold = 5;
+        
+        // How long (ms) an open channel fails fast before a single trial send is let through
+        private long openDuration = 30000;
+    }
+}
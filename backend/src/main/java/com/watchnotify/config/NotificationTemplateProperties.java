@@ -0,0 +1,51 @@
+package com.watchnotify.config;
+
+import com.watchnotify.model.Notification;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per notification kind and channel message templates, bound from
+ * {@code app.notification.templates.<kind>.<channel>}, and per channel digest templates,
+ * bound from {@code app.notification.digest-templates.<channel>}. Anything left unset
+ * falls back to the built-in defaults in {@link com.watchnotify.service.MessageTemplateEngine}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.notification")
+public class NotificationTemplateProperties {
+    
+    private Map<Notification.NotificationKind, Map<Notification.NotificationType, ChannelTemplate>> templates =
+            new EnumMap<>(Notification.NotificationKind.class);
+    
+    private Map<Notification.NotificationType, DigestTemplate> digestTemplates =
+            new EnumMap<>(Notification.NotificationType.class);
+    
+    @Data
+    public static class ChannelTemplate {
+        
+        private String subject;
+        
+        private String salutation;
+        
+        private String body;
+    }
+    
+    /**
+     * A digest message: the body wraps the rendered items, each rendered from
+     * {@code item} and joined with {@code separator}.
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class DigestTemplate extends ChannelTemplate {
+        
+        private String item;
+        
+        private String separator;
+    }
+}
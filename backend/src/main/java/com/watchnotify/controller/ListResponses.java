@@ -0,0 +1,54 @@
+package com.watchnotify.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watchnotify.dto.CursorPage;
+import com.watchnotify.service.KeysetPager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Builds the paginated and NDJSON-streamed variants of the list endpoints.
+ *
+ * <p>Every list endpoint also answers {@code ?limit=N[&cursor=...]} with a
+ * {@link CursorPage}, and {@code Accept: application/x-ndjson} with one JSON object per
+ * line, written as the rows are read so the full list is never built in memory.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ListResponses {
+    
+    public static final String NDJSON = "application/x-ndjson";
+    
+    private final ObjectMapper objectMapper;
+    
+    public <T> ResponseEntity<CursorPage<T>> page(KeysetPager<T, ?> pager, String cursor, Integer limit) {
+        try {
+            return ResponseEntity.ok(pager.page(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected list request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    public <T> ResponseEntity<StreamingResponseBody> ndjson(KeysetPager<T, ?> pager) {
+        StreamingResponseBody body = out -> pager.forEach(row -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+}
@@ -1,7 +1,14 @@
 package com.watchnotify.controller;
 
+import com.watchnotify.dto.CursorPage;
+import com.watchnotify.dto.DeliveryStatsDto;
+import com.watchnotify.dto.NotificationDto;
+import com.watchnotify.dto.NotificationJobDto;
 import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.dto.NotificationSummaryDto;
 import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationJob;
+import com.watchnotify.service.NotificationJobService;
 import com.watchnotify.service.NotificationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,9 +16,11 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -21,45 +30,148 @@ import java.util.List;
 public class NotificationController {
     
     private final NotificationService notificationService;
+    private final NotificationJobService notificationJobService;
+    private final ListResponses listResponses;
     
     @PostMapping("/send")
-    public ResponseEntity<String> sendNotifications(@RequestBody NotificationRequestDto request) {
+    public ResponseEntity<NotificationJobDto> sendNotifications(@RequestBody NotificationRequestDto request) {
+        // Digests are assembled from buffered releases, never fanned out directly
+        if (request.getKind() == Notification.NotificationKind.DIGEST) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            notificationService.sendWatchReleaseNotifications(request);
-            return ResponseEntity.ok("Notifications sent successfully");
-        } catch (RuntimeException e) {
-            log.error("Error sending notifications: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to send notifications: " + e.getMessage());
+            NotificationJobDto job = notificationJobService.submit(request);
+            notificationService.runJob(job.getId());
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalArgumentException e) {
+            log.error("Error submitting notifications: {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<NotificationJobDto> getJob(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.ok(notificationJobService.getJob(jobId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @PostMapping("/jobs/{jobId}/pause")
+    public ResponseEntity<NotificationJobDto> pauseJob(@PathVariable Long jobId) {
+        return jobTransition(() -> notificationJobService.pause(jobId));
+    }
+    
+    @PostMapping("/jobs/{jobId}/resume")
+    public ResponseEntity<NotificationJobDto> resumeJob(@PathVariable Long jobId) {
+        return jobTransition(() -> {
+            NotificationJobDto job = notificationJobService.resume(jobId);
+            if (job.getState() == NotificationJob.JobState.QUEUED) {
+                notificationService.runJob(jobId);
+            }
+            return job;
+        });
+    }
+    
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<NotificationJobDto> cancelJob(@PathVariable Long jobId) {
+        return jobTransition(() -> notificationJobService.cancel(jobId));
+    }
+    
+    private ResponseEntity<NotificationJobDto> jobTransition(Supplier<NotificationJobDto> transition) {
+        try {
+            return ResponseEntity.ok(transition.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            log.warn("Rejected fan-out job change: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
     
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Notification>> getUserNotifications(@PathVariable Long userId) {
-        List<Notification> notifications = notificationService.getUserNotifications(userId);
+    public ResponseEntity<List<NotificationDto>> getUserNotifications(@PathVariable Long userId) {
+        List<NotificationDto> notifications = notificationService.getUserNotifications(userId);
         return ResponseEntity.ok(notifications);
     }
     
+    @GetMapping("/user/{userId}/inbox")
+    public ResponseEntity<CursorPage<NotificationSummaryDto>> getUserInbox(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Notification.NotificationStatus status,
+            @RequestParam(required = false) Notification.NotificationType type,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(notificationService.userInbox(userId, status, type), cursor, limit);
+    }
+    
+    @GetMapping(value = "/user/{userId}/inbox", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUserInbox(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Notification.NotificationStatus status,
+            @RequestParam(required = false) Notification.NotificationType type) {
+        return listResponses.ndjson(notificationService.userInbox(userId, status, type));
+    }
+    
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<Notification>> getNotificationsByStatus(@PathVariable Notification.NotificationStatus status) {
-        List<Notification> notifications = notificationService.getNotificationsByStatus(status);
+    public ResponseEntity<List<NotificationDto>> getNotificationsByStatus(@PathVariable Notification.NotificationStatus status) {
+        List<NotificationDto> notifications = notificationService.getNotificationsByStatus(status);
         return ResponseEntity.ok(notifications);
     }
     
+    @GetMapping(value = "/status/{status}", params = "limit")
+    public ResponseEntity<CursorPage<NotificationDto>> getNotificationsByStatusPage(
+            @PathVariable Notification.NotificationStatus status,
+            @RequestParam Integer limit, @RequestParam(required = false) String cursor) {
+        return listResponses.page(notificationService.notificationsByStatus(status), cursor, limit);
+    }
+    
+    @GetMapping(value = "/status/{status}", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamNotificationsByStatus(
+            @PathVariable Notification.NotificationStatus status) {
+        return listResponses.ndjson(notificationService.notificationsByStatus(status));
+    }
+    
     @GetMapping("/date-range")
-    public ResponseEntity<List<Notification>> getNotificationsByDateRange(
+    public ResponseEntity<List<NotificationDto>> getNotificationsByDateRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        List<Notification> notifications = notificationService.getNotificationsByDateRange(startDate, endDate);
+        List<NotificationDto> notifications = notificationService.getNotificationsByDateRange(startDate, endDate);
         return ResponseEntity.ok(notifications);
     }
     
+    @GetMapping(value = "/date-range", params = "limit")
+    public ResponseEntity<CursorPage<NotificationDto>> getNotificationsByDateRangePage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam Integer limit, @RequestParam(required = false) String cursor) {
+        return listResponses.page(notificationService.notificationsByDateRange(startDate, endDate), cursor, limit);
+    }
+    
+    @GetMapping(value = "/date-range", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamNotificationsByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return listResponses.ndjson(notificationService.notificationsByDateRange(startDate, endDate));
+    }
+    
     @GetMapping("/user/{userId}/count")
     public ResponseEntity<Long> getNotificationCountForUser(@PathVariable Long userId) {
         Long count = notificationService.getNotificationCountForUser(userId);
         return ResponseEntity.ok(count);
     }
     
+    @GetMapping("/user/{userId}/stats")
+    public ResponseEntity<DeliveryStatsDto> getUserDeliveryStats(@PathVariable Long userId) {
+        return ResponseEntity.ok(notificationService.getUserDeliveryStats(userId));
+    }
+    
+    @GetMapping("/release/{releaseId}/stats")
+    public ResponseEntity<DeliveryStatsDto> getReleaseDeliveryStats(@PathVariable Long releaseId) {
+        return ResponseEntity.ok(notificationService.getReleaseDeliveryStats(releaseId));
+    }
+    
     @PostMapping("/test-email")
     public ResponseEntity<String> testEmailNotification(@RequestParam String email) {
         try {
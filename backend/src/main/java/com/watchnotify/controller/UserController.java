@@ -1,14 +1,22 @@
 package com.watchnotify.controller;
 
 import com.watchnotify.dto.UserDto;
+import com.watchnotify.dto.UserImportResultDto;
+import com.watchnotify.service.UserImportService;
 import com.watchnotify.service.UserService;
 import jakarta.validation.Valid;
+import com.watchnotify.dto.CursorPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +28,8 @@ import java.util.Optional;
 public class UserController {
     
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final ListResponses listResponses;
     
     @GetMapping
     public ResponseEntity<List<UserDto>> getAllUsers() {
@@ -27,6 +37,17 @@ public class UserController {
         return ResponseEntity.ok(users);
     }
     
+    @GetMapping(params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getAllUsersPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.allUsers(), cursor, limit);
+    }
+    
+    @GetMapping(produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        return listResponses.ndjson(userService.allUsers());
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<UserDto> getUserById(@PathVariable Long id) {
         Optional<UserDto> user = userService.getUserById(id);
@@ -52,6 +73,20 @@ public class UserController {
         }
     }
     
+    @PostMapping(value = "/import", consumes = {UserImportService.CSV, ListResponses.NDJSON})
+    public ResponseEntity<UserImportResultDto> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                           InputStream body) {
+        try {
+            return ResponseEntity.ok(userImportService.importUsers(body, MediaType.parseMediaType(contentType)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected user import: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("User import aborted while reading the upload: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @PutMapping("/{id}")
     public ResponseEntity<UserDto> updateUser(@PathVariable Long id, @Valid @RequestBody UserDto userDto) {
         try {
@@ -80,27 +115,82 @@ public class UserController {
         return ResponseEntity.ok(activeUsers);
     }
     
+    @GetMapping(value = "/active", params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getActiveUsersPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.activeUsers(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/active", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamActiveUsers() {
+        return listResponses.ndjson(userService.activeUsers());
+    }
+    
     @GetMapping("/email-notifications")
     public ResponseEntity<List<UserDto>> getUsersForEmailNotifications() {
         List<UserDto> users = userService.getUsersForEmailNotifications();
         return ResponseEntity.ok(users);
     }
     
+    @GetMapping(value = "/email-notifications", params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getUsersForEmailNotificationsPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.emailNotificationUsers(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/email-notifications", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUsersForEmailNotifications() {
+        return listResponses.ndjson(userService.emailNotificationUsers());
+    }
+    
     @GetMapping("/sms-notifications")
     public ResponseEntity<List<UserDto>> getUsersForSmsNotifications() {
         List<UserDto> users = userService.getUsersForSmsNotifications();
         return ResponseEntity.ok(users);
     }
     
+    @GetMapping(value = "/sms-notifications", params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getUsersForSmsNotificationsPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.smsNotificationUsers(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/sms-notifications", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUsersForSmsNotifications() {
+        return listResponses.ndjson(userService.smsNotificationUsers());
+    }
+    
     @GetMapping("/push-notifications")
     public ResponseEntity<List<UserDto>> getUsersForPushNotifications() {
         List<UserDto> users = userService.getUsersForPushNotifications();
         return ResponseEntity.ok(users);
     }
     
+    @GetMapping(value = "/push-notifications", params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getUsersForPushNotificationsPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.pushNotificationUsers(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/push-notifications", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUsersForPushNotifications() {
+        return listResponses.ndjson(userService.pushNotificationUsers());
+    }
+    
     @GetMapping("/preferences")
     public ResponseEntity<List<UserDto>> getUsersWithPreferences(@RequestParam List<String> categories) {
         List<UserDto> users = userService.getUsersWithPreferences(categories);
         return ResponseEntity.ok(users);
     }
+    
+    @GetMapping(value = "/preferences", params = "limit")
+    public ResponseEntity<CursorPage<UserDto>> getUsersWithPreferencesPage(@RequestParam List<String> categories, @RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(userService.usersWithPreferences(categories), cursor, limit);
+    }
+    
+    @GetMapping(value = "/preferences", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUsersWithPreferences(@RequestParam List<String> categories) {
+        return listResponses.ndjson(userService.usersWithPreferences(categories));
+    }
 }
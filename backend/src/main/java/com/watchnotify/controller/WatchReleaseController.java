@@ -1,14 +1,20 @@
 package com.watchnotify.controller;
 
 import com.watchnotify.dto.WatchReleaseDto;
+import com.watchnotify.dto.WatchReleaseUpsertResultDto;
+import com.watchnotify.service.WatchReleaseCatalogCache;
 import com.watchnotify.service.WatchReleaseService;
+import com.watchnotify.service.WatchReleaseUpsertService;
 import jakarta.validation.Valid;
+import com.watchnotify.dto.CursorPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -22,6 +28,8 @@ import java.util.Optional;
 public class WatchReleaseController {
     
     private final WatchReleaseService watchReleaseService;
+    private final WatchReleaseUpsertService watchReleaseUpsertService;
+    private final ListResponses listResponses;
     
     @GetMapping
     public ResponseEntity<List<WatchReleaseDto>> getAllWatchReleases() {
@@ -29,11 +37,25 @@ public class WatchReleaseController {
         return ResponseEntity.ok(releases);
     }
     
+    @GetMapping(params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getAllWatchReleasesPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.allWatchReleases(), cursor, limit);
+    }
+    
+    @GetMapping(produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllWatchReleases() {
+        return listResponses.ndjson(watchReleaseService.allWatchReleases());
+    }
+    
     @GetMapping("/{id}")
-    public ResponseEntity<WatchReleaseDto> getWatchReleaseById(@PathVariable Long id) {
-        Optional<WatchReleaseDto> release = watchReleaseService.getWatchReleaseById(id);
-        return release.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<WatchReleaseDto> getWatchReleaseById(@PathVariable Long id, WebRequest request) {
+        WatchReleaseCatalogCache.Entry<Optional<WatchReleaseDto>> release =
+                watchReleaseService.cachedWatchReleaseById(id);
+        if (release.value().isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return conditional(request, new WatchReleaseCatalogCache.Entry<>(release.value().get(), release.etag()));
     }
     
     @PostMapping
@@ -47,6 +69,11 @@ public class WatchReleaseController {
         }
     }
     
+    @PutMapping("/bulk")
+    public ResponseEntity<WatchReleaseUpsertResultDto> upsertWatchReleases(@RequestBody List<WatchReleaseDto> releases) {
+        return ResponseEntity.ok(watchReleaseUpsertService.upsert(releases));
+    }
+    
     @PutMapping("/{id}")
     public ResponseEntity<WatchReleaseDto> updateWatchRelease(@PathVariable Long id, @Valid @RequestBody WatchReleaseDto watchReleaseDto) {
         try {
@@ -75,10 +102,31 @@ public class WatchReleaseController {
         return ResponseEntity.ok(releases);
     }
     
+    @GetMapping(value = "/unnotified", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getUnnotifiedReleasesPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.unnotifiedReleases(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/unnotified", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUnnotifiedReleases() {
+        return listResponses.ndjson(watchReleaseService.unnotifiedReleases());
+    }
+    
     @GetMapping("/brand/{brand}")
-    public ResponseEntity<List<WatchReleaseDto>> getReleasesByBrand(@PathVariable String brand) {
-        List<WatchReleaseDto> releases = watchReleaseService.getReleasesByBrand(brand);
-        return ResponseEntity.ok(releases);
+    public ResponseEntity<List<WatchReleaseDto>> getReleasesByBrand(@PathVariable String brand, WebRequest request) {
+        return conditional(request, watchReleaseService.cachedReleasesByBrand(brand));
+    }
+    
+    @GetMapping(value = "/brand/{brand}", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getReleasesByBrandPage(@PathVariable String brand, @RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.releasesByBrand(brand), cursor, limit);
+    }
+    
+    @GetMapping(value = "/brand/{brand}", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamReleasesByBrand(@PathVariable String brand) {
+        return listResponses.ndjson(watchReleaseService.releasesByBrand(brand));
     }
     
     @GetMapping("/brands")
@@ -87,16 +135,47 @@ public class WatchReleaseController {
         return ResponseEntity.ok(releases);
     }
     
+    @GetMapping(value = "/brands", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getReleasesByBrandsPage(@RequestParam List<String> brands, @RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.releasesByBrands(brands), cursor, limit);
+    }
+    
+    @GetMapping(value = "/brands", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamReleasesByBrands(@RequestParam List<String> brands) {
+        return listResponses.ndjson(watchReleaseService.releasesByBrands(brands));
+    }
+    
     @GetMapping("/upcoming")
-    public ResponseEntity<List<WatchReleaseDto>> getUpcomingReleases() {
-        List<WatchReleaseDto> releases = watchReleaseService.getUpcomingReleases();
-        return ResponseEntity.ok(releases);
+    public ResponseEntity<List<WatchReleaseDto>> getUpcomingReleases(WebRequest request) {
+        return conditional(request, watchReleaseService.cachedUpcomingReleases());
+    }
+    
+    @GetMapping(value = "/upcoming", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getUpcomingReleasesPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.upcomingReleases(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/upcoming", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUpcomingReleases() {
+        return listResponses.ndjson(watchReleaseService.upcomingReleases());
     }
     
     @GetMapping("/limited-edition")
-    public ResponseEntity<List<WatchReleaseDto>> getLimitedEditionReleases() {
-        List<WatchReleaseDto> releases = watchReleaseService.getLimitedEditionReleases();
-        return ResponseEntity.ok(releases);
+    public ResponseEntity<List<WatchReleaseDto>> getLimitedEditionReleases(WebRequest request) {
+        return conditional(request, watchReleaseService.cachedLimitedEditionReleases());
+    }
+    
+    @GetMapping(value = "/limited-edition", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getLimitedEditionReleasesPage(@RequestParam Integer limit,
+            @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.limitedEditionReleases(), cursor, limit);
+    }
+    
+    @GetMapping(value = "/limited-edition", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamLimitedEditionReleases() {
+        return listResponses.ndjson(watchReleaseService.limitedEditionReleases());
     }
     
     @GetMapping("/date-range")
@@ -107,6 +186,21 @@ public class WatchReleaseController {
         return ResponseEntity.ok(releases);
     }
     
+    @GetMapping(value = "/date-range", params = "limit")
+    public ResponseEntity<CursorPage<WatchReleaseDto>> getReleasesByDateRangePage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam Integer limit, @RequestParam(required = false) String cursor) {
+        return listResponses.page(watchReleaseService.releasesByDateRange(startDate, endDate), cursor, limit);
+    }
+    
+    @GetMapping(value = "/date-range", produces = ListResponses.NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamReleasesByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return listResponses.ndjson(watchReleaseService.releasesByDateRange(startDate, endDate));
+    }
+    
     @PutMapping("/{id}/mark-notified")
     public ResponseEntity<Void> markAsNotified(@PathVariable Long id) {
         try {
@@ -117,4 +211,12 @@ public class WatchReleaseController {
             return ResponseEntity.notFound().build();
         }
     }
+    
+    // Answers If-None-Match with 304 when the cached entry's ETag still matches
+    private <T> ResponseEntity<T> conditional(WebRequest request, WatchReleaseCatalogCache.Entry<T> entry) {
+        if (request.checkNotModified(entry.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entry.etag()).build();
+        }
+        return ResponseEntity.ok().eTag(entry.etag()).body(entry.value());
+    }
 }
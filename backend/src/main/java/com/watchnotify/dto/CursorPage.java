@@ -0,0 +1,23 @@
+package com.watchnotify.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list. {@code nextCursor} is opaque to clients: pass it
+ * back as {@code cursor} to get the following page. It is {@code null} on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    
+    private List<T> items;
+    
+    private String nextCursor;
+    
+    private int limit;
+}
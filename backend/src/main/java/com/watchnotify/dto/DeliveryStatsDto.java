@@ -0,0 +1,26 @@
+package com.watchnotify.dto;
+
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Notification counts of one user or one release by channel and status, read from the
+ * incrementally maintained delivery counters. Combinations with no notifications are
+ * left out.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryStatsDto {
+    
+    private DeliveryCounter.Scope scope;
+    
+    private Long id;
+    
+    private Map<Notification.NotificationType, Map<Notification.NotificationStatus, Long>> counts;
+}
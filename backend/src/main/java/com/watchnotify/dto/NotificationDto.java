@@ -0,0 +1,44 @@
+package com.watchnotify.dto;
+
+import com.watchnotify.model.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read model of a notification. Carries the user and release ids instead of the
+ * lazily loaded entities, so it can be serialized without touching the session.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDto {
+    
+    private Long id;
+    
+    private Long userId;
+    
+    private Long watchReleaseId;
+    
+    private Notification.NotificationType notificationType;
+    
+    private Notification.NotificationKind notificationKind;
+    
+    private Notification.NotificationStatus status;
+    
+    private String subject;
+    
+    private String message;
+    
+    private String recipient;
+    
+    private LocalDateTime sentAt;
+    
+    private String errorMessage;
+    
+    private Integer retryCount;
+    
+    private LocalDateTime createdAt;
+}
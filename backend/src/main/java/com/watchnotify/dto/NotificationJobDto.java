@@ -0,0 +1,53 @@
+package com.watchnotify.dto;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a fan-out job. Recipient and queued counts are as of the job's last
+ * checkpoint; delivery counts are read from the job's notifications.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationJobDto {
+    
+    private Long id;
+    
+    private Long watchReleaseId;
+    
+    private Notification.NotificationKind kind;
+    
+    private NotificationJob.JobState state;
+    
+    private Long recipientsResolved;
+    
+    private Long notificationsQueued;
+    
+    private Long sent;
+    
+    // FAILED and DEAD_LETTER
+    private Long failed;
+    
+    private Long cancelled;
+    
+    // Still PENDING, including deliveries held while the job is paused
+    private Long remaining;
+    
+    private Double recipientsPerSecond;
+    
+    private Double sendsPerSecond;
+    
+    private String errorMessage;
+    
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime startedAt;
+    
+    private LocalDateTime completedAt;
+}
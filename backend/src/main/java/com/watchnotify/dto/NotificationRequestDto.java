@@ -1,5 +1,6 @@
 package com.watchnotify.dto;
 
+import com.watchnotify.model.Notification;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -24,4 +25,6 @@ public class NotificationRequestDto {
     private Boolean sendPush = true;
     
     private String customMessage;
+    
+    private Notification.NotificationKind kind = Notification.NotificationKind.NEW_RELEASE;
 }
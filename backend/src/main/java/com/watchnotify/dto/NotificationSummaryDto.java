@@ -0,0 +1,34 @@
+package com.watchnotify.dto;
+
+import com.watchnotify.model.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Inbox entry of a user: what the notification was about and where it stands, without
+ * the message body. Every field comes from the notifications row itself.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationSummaryDto {
+    
+    private Long id;
+    
+    private Long watchReleaseId;
+    
+    private Notification.NotificationType notificationType;
+    
+    private Notification.NotificationKind notificationKind;
+    
+    private Notification.NotificationStatus status;
+    
+    private String subject;
+    
+    private LocalDateTime sentAt;
+    
+    private LocalDateTime createdAt;
+}
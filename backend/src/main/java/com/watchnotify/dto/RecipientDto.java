@@ -0,0 +1,36 @@
+package com.watchnotify.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lightweight view of a user carrying only what a notification fan-out needs.
+ * Loaded through constructor-expression queries so no User entity (and no
+ * preferences collection) ends up in the persistence context.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipientDto {
+    
+    private Long id;
+    
+    private String firstName;
+    
+    private String email;
+    
+    private String phoneNumber;
+    
+    private Boolean emailNotificationsEnabled;
+    
+    private Boolean smsNotificationsEnabled;
+    
+    private Boolean pushNotificationsEnabled;
+    
+    private Boolean emailDigestEnabled;
+    
+    private Boolean smsDigestEnabled;
+    
+    private Boolean pushDigestEnabled;
+}
@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.HashSet;
 import java.util.Set;
 
 @Data
@@ -35,5 +36,23 @@ public class UserDto {
     
     private Boolean pushNotificationsEnabled = true;
     
+    private Boolean emailDigestEnabled = false;
+    
+    private Boolean smsDigestEnabled = false;
+    
+    private Boolean pushDigestEnabled = false;
+    
     private Set<String> preferences;
+    
+    /**
+     * Projection constructor for the read queries; preferences are loaded separately.
+     */
+    public UserDto(Long id, String firstName, String lastName, String email, String phoneNumber,
+                   Boolean isActive, Boolean emailNotificationsEnabled, Boolean smsNotificationsEnabled,
+                   Boolean pushNotificationsEnabled, Boolean emailDigestEnabled, Boolean smsDigestEnabled,
+                   Boolean pushDigestEnabled) {
+        this(id, firstName, lastName, email, phoneNumber, isActive, emailNotificationsEnabled,
+                smsNotificationsEnabled, pushNotificationsEnabled, emailDigestEnabled, smsDigestEnabled,
+                pushDigestEnabled, new HashSet<>());
+    }
 }
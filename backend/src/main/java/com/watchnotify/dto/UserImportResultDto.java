@@ -0,0 +1,44 @@
+package com.watchnotify.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk user import. Rows are numbered from 1 in the order they were read,
+ * not counting the CSV header. Only the first rejected rows are listed; {@code failed}
+ * counts all of them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportResultDto {
+    
+    private long rows;
+    
+    private long created;
+    
+    private long updated;
+    
+    private long failed;
+    
+    private List<RowError> errors = new ArrayList<>();
+    
+    // More rows were rejected than are listed in errors
+    private boolean errorsTruncated;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        
+        private long row;
+        
+        private String email;
+        
+        private String message;
+    }
+}
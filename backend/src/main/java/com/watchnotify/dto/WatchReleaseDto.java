@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.Set;
 
 @Data
@@ -51,4 +52,16 @@ public class WatchReleaseDto {
     private LocalDateTime createdAt;
     
     private LocalDateTime updatedAt;
+    
+    /**
+     * Projection constructor for the read queries; features and categories are loaded separately.
+     */
+    public WatchReleaseDto(Long id, String watchName, String brand, String modelNumber, String description,
+                           LocalDateTime releaseDate, BigDecimal price, String currency, String imageUrl,
+                           String productUrl, Boolean isLimitedEdition, Integer limitedQuantity, Boolean isNotified,
+                           LocalDateTime notificationSentAt, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, watchName, brand, modelNumber, description, releaseDate, price, currency, new HashSet<>(),
+                new HashSet<>(), imageUrl, productUrl, isLimitedEdition, limitedQuantity, isNotified,
+                notificationSentAt, createdAt, updatedAt);
+    }
 }
@@ -0,0 +1,45 @@
+package com.watchnotify.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk watch release upsert. Items are identified by their position in the
+ * submitted list, starting at 0.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatchReleaseUpsertResultDto {
+    
+    private long items;
+    
+    private long created;
+    
+    private long updated;
+    
+    // Matched a stored release with the same fields, features and categories
+    private long unchanged;
+    
+    private long failed;
+    
+    private List<ItemError> errors = new ArrayList<>();
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemError {
+        
+        private long item;
+        
+        private String brand;
+        
+        private String modelNumber;
+        
+        private String message;
+    }
+}
@@ -0,0 +1,54 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted number of notifications of one user or one release that are on a given
+ * channel and in a given status. Maintained from in-memory deltas and reconciled
+ * against the notifications table, so reading a count never scans it.
+ */
+@Entity
+@Table(name = "delivery_counters", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_delivery_counters_key",
+                columnNames = {"scope", "scope_id", "notification_type", "status"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryCounter {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "scope", nullable = false)
+    private Scope scope;
+    
+    // User id or watch release id, depending on the scope
+    @Column(name = "scope_id", nullable = false)
+    private Long scopeId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_type", nullable = false)
+    private Notification.NotificationType notificationType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Notification.NotificationStatus status;
+    
+    @Column(name = "total", nullable = false)
+    private Long total;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public enum Scope {
+        USER, RELEASE
+    }
+}
@@ -0,0 +1,28 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * How far a node has flushed its delivery counter deltas: every change it recorded for
+ * a transaction that committed before {@code flushedThrough} is in the counters. Written
+ * by each flush, so a row that stops moving belongs to a node that is gone.
+ */
+@Entity
+@Table(name = "delivery_counter_nodes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryCounterNode {
+    
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+    
+    @Column(name = "flushed_through", nullable = false)
+    private LocalDateTime flushedThrough;
+}
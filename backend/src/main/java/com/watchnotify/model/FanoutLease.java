@@ -0,0 +1,63 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cluster-wide claim on a release fan-out. A node may only fan a release out while it
+ * holds an unexpired {@code NOTIFYING} lease; a crashed node's lease is taken over once
+ * it expires.
+ */
+@Entity
+@Table(name = "release_fanout_leases", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_fanout_lease_release_type", columnNames = {"watch_release_id", "lease_type"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FanoutLease {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "watch_release_id", nullable = false)
+    private Long watchReleaseId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "lease_type", nullable = false)
+    private LeaseType leaseType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state")
+    private LeaseState state;
+    
+    @Column(name = "lease_owner")
+    private String owner;
+    
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+    
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+    
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+    
+    public enum LeaseType {
+        ANNOUNCEMENT, REMINDER;
+        
+        // New-release and limited-edition fan-outs announce the same release, so they share a lease
+        public static LeaseType of(Notification.NotificationKind kind) {
+            return kind == Notification.NotificationKind.REMINDER ? REMINDER : ANNOUNCEMENT;
+        }
+    }
+    
+    public enum LeaseState {
+        NOTIFYING, COMPLETED, FAILED
+    }
+}
@@ -9,14 +9,26 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        @Index(name = "idx_notifications_channel_next_attempt", columnList = "status, notification_type, next_attempt_at"),
+        @Index(name = "idx_notifications_status_id", columnList = "status, id"),
+        @Index(name = "idx_notifications_user_created", columnList = "user_id, created_at DESC, id DESC"),
+        @Index(name = "idx_notifications_release_channel_status", columnList = "watch_release_id, notification_type, status"),
+        @Index(name = "idx_notifications_created_at", columnList = "created_at"),
+        @Index(name = "idx_notifications_job_status", columnList = "job_id, status"),
+        // Enforced through notification_deliveries on the partitioned PostgreSQL table
+        @Index(name = "uk_notifications_delivery", unique = true,
+               columnList = "user_id, watch_release_id, notification_type, notification_kind, dedup_seq")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Notification {
     
+    // Pooled sequence ids let Hibernate batch inserts, which IDENTITY columns prevent
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notifications_seq")
+    @SequenceGenerator(name = "notifications_seq", sequenceName = "notifications_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -31,6 +43,18 @@ public class Notification {
     @Column(name = "notification_type")
     private NotificationType notificationType;
     
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_kind")
+    private NotificationKind notificationKind;
+    
+    // Fan-out job that queued this notification
+    @Column(name = "job_id")
+    private Long jobId;
+    
+    // Distinguishes repeat deliveries allowed by the dedup policy (e.g. a second reminder)
+    @Column(name = "dedup_seq")
+    private Integer dedupSequence;
+    
     @Enumerated(EnumType.STRING)
     @Column(name = "status")
     private NotificationStatus status = NotificationStatus.PENDING;
@@ -53,6 +77,19 @@ public class Notification {
     @Column(name = "retry_count")
     private Integer retryCount = 0;
     
+    // Earliest time the outbox worker may (re)try a PENDING notification
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+    
+    // Set while an outbox worker is sending the row; the worker's outcome only applies if it still matches
+    @Column(name = "leased_until")
+    private LocalDateTime leasedUntil;
+    
+    // When an outbox outcome or a cancellation last changed the status; delivery counter
+    // reconciliation leaves users and releases with recent changes for a later run
+    @Column(name = "status_changed_at")
+    private LocalDateTime statusChangedAt;
+    
     @CreationTimestamp
     @Column(name = "created_at")
     private LocalDateTime createdAt;
@@ -61,7 +98,13 @@ public class Notification {
         EMAIL, SMS, PUSH
     }
     
+    public enum NotificationKind {
+        NEW_RELEASE, REMINDER, LIMITED_EDITION,
+        // One message covering several buffered releases; it has no single watch release
+        DIGEST
+    }
+    
     public enum NotificationStatus {
-        PENDING, SENT, FAILED, CANCELLED
+        PENDING, SENT, FAILED, CANCELLED, DEAD_LETTER
     }
 }
@@ -0,0 +1,62 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Aggregate of the notifications created on one day, per channel, kind and status.
+ * Summed from the hourly rollup by {@link com.watchnotify.service.NotificationRollup}.
+ */
+@Entity
+@Table(name = "notification_rollup_daily", indexes = {
+        @Index(name = "idx_notification_rollup_daily_rollup_date", columnList = "rollup_date")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDailyRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Day the notifications were created on
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_type")
+    private Notification.NotificationType notificationType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_kind")
+    private Notification.NotificationKind notificationKind;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private Notification.NotificationStatus status;
+    
+    @Column(name = "notification_count", nullable = false)
+    private Long notificationCount;
+    
+    // Sum of retry_count
+    @Column(name = "retry_count", nullable = false)
+    private Long retryCount;
+    
+    // Notifications with a sent_at, which the delivery time columns cover
+    @Column(name = "delivered_count", nullable = false)
+    private Long deliveredCount;
+    
+    @Column(name = "delivery_seconds_sum")
+    private Double deliverySecondsSum;
+    
+    @Column(name = "delivery_seconds_min")
+    private Double deliverySecondsMin;
+    
+    @Column(name = "delivery_seconds_max")
+    private Double deliverySecondsMax;
+}
@@ -0,0 +1,65 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A release delivery buffered for a user's digest on one channel instead of being
+ * queued as its own notification. Once the digest is queued the entry points at it and
+ * is kept, like a notification, as the record that the user has had this release.
+ */
+@Entity
+@Table(name = "notification_digest_entries", indexes = {
+        // Also serves loading a release's delivery keys into the dedup index
+        @Index(name = "uk_notification_digest_entries_delivery", unique = true,
+               columnList = "watch_release_id, notification_kind, notification_type, user_id, dedup_seq"),
+        // Partial (digest_notification_id IS NULL) on PostgreSQL
+        @Index(name = "idx_notification_digest_entries_pending",
+               columnList = "digest_notification_id, user_id, notification_type, created_at"),
+        @Index(name = "idx_notification_digest_entries_job", columnList = "job_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDigestEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_digest_entries_seq")
+    @SequenceGenerator(name = "notification_digest_entries_seq", sequenceName = "notification_digest_entries_seq",
+                       allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "watch_release_id", nullable = false)
+    private Long watchReleaseId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_type", nullable = false)
+    private Notification.NotificationType notificationType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_kind", nullable = false)
+    private Notification.NotificationKind notificationKind;
+    
+    @Column(name = "dedup_seq", nullable = false)
+    private Integer dedupSequence;
+    
+    // Fan-out job that buffered this entry
+    @Column(name = "job_id")
+    private Long jobId;
+    
+    // The queued digest; null while the entry is still waiting for one
+    @Column(name = "digest_notification_id")
+    private Long digestNotificationId;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
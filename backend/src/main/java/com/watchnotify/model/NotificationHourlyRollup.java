@@ -0,0 +1,62 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate of the notifications created in one hour, per channel, kind and
+ * status. Maintained by {@link com.watchnotify.service.NotificationRollup}.
+ */
+@Entity
+@Table(name = "notification_rollup_hourly", indexes = {
+        @Index(name = "idx_notification_rollup_hourly_bucket_start", columnList = "bucket_start")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationHourlyRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Start of the hour the notifications were created in
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_type")
+    private Notification.NotificationType notificationType;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_kind")
+    private Notification.NotificationKind notificationKind;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private Notification.NotificationStatus status;
+    
+    @Column(name = "notification_count", nullable = false)
+    private Long notificationCount;
+    
+    // Sum of retry_count
+    @Column(name = "retry_count", nullable = false)
+    private Long retryCount;
+    
+    // Notifications with a sent_at, which the delivery time columns cover
+    @Column(name = "delivered_count", nullable = false)
+    private Long deliveredCount;
+    
+    @Column(name = "delivery_seconds_sum")
+    private Double deliverySecondsSum;
+    
+    @Column(name = "delivery_seconds_min")
+    private Double deliverySecondsMin;
+    
+    @Column(name = "delivery_seconds_max")
+    private Double deliverySecondsMax;
+}
@@ -0,0 +1,85 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A fan-out of one watch release, run in the background. Recipients are read in id
+ * order and the job checkpoints the last one it queued after every chunk, so a job cut
+ * short by a restart resumes after its checkpoint on whichever node picks it up.
+ */
+@Entity
+@Table(name = "notification_jobs", indexes = {
+        @Index(name = "idx_notification_jobs_state", columnList = "state, heartbeat_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationJob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "watch_release_id", nullable = false)
+    private Long watchReleaseId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notification_kind")
+    private Notification.NotificationKind kind;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private JobState state;
+    
+    // The submitted request as JSON, read again whenever the job (re)starts
+    @Column(name = "request_json", columnDefinition = "TEXT")
+    private String request;
+    
+    // Scheduled jobs never repeat an announcement that has already completed
+    @Column(name = "scheduled")
+    private Boolean scheduled = false;
+    
+    @Column(name = "job_owner")
+    private String owner;
+    
+    // Every recipient up to this user id has been queued
+    @Column(name = "last_recipient_id")
+    private Long lastRecipientId = 0L;
+    
+    @Column(name = "recipients_resolved")
+    private Long recipientsResolved = 0L;
+    
+    @Column(name = "notifications_queued")
+    private Long notificationsQueued = 0L;
+    
+    @Column(name = "error_message")
+    private String errorMessage;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+    
+    // Renewed on every checkpoint; a RUNNING job that stops renewing it is resumed elsewhere
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+    
+    // When every recipient had been queued
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public enum JobState {
+        QUEUED, RUNNING, PAUSED, COMPLETED, FAILED, CANCELLED
+    }
+}
@@ -0,0 +1,39 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A notifications partition the partition maintenance job has detached. Only tables
+ * recorded here are archived and dropped; the row stays once the partition is gone, as
+ * the record of its archive file and of when its rows left the table.
+ */
+@Entity
+@Table(name = "notification_partition_archives")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPartitionArchive {
+    
+    @Id
+    @Column(name = "partition_name")
+    private String partitionName;
+    
+    // Recorded just before the partition is detached
+    @Column(name = "detached_at", nullable = false)
+    private LocalDateTime detachedAt;
+    
+    // Set when the partition is dropped, after its rows were archived and taken off the counters
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+    
+    @Column(name = "archived_rows")
+    private Long archivedRows;
+    
+    @Column(name = "archive_file")
+    private String archiveFile;
+}
@@ -0,0 +1,31 @@
+package com.watchnotify.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of an incremental rollup: everything created before the watermark has been
+ * rolled up for good. The row is locked for the duration of a rollup run, so only one
+ * node runs it at a time.
+ */
+@Entity
+@Table(name = "rollup_watermarks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupWatermark {
+    
+    @Id
+    @Column(name = "name")
+    private String name;
+    
+    @Column(name = "watermark", nullable = false)
+    private LocalDateTime watermark;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
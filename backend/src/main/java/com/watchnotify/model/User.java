@@ -5,7 +5,10 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -52,7 +55,20 @@ public class User {
     @Column(name = "push_notifications_enabled")
     private Boolean pushNotificationsEnabled = true;
     
-    @ElementCollection(fetch = FetchType.EAGER)
+    // Per channel, collect releases into a periodic digest instead of one message each
+    @Column(name = "email_digest_enabled")
+    private Boolean emailDigestEnabled = false;
+    
+    @Column(name = "sms_digest_enabled")
+    private Boolean smsDigestEnabled = false;
+    
+    @Column(name = "push_digest_enabled")
+    private Boolean pushDigestEnabled = false;
+    
+    @ElementCollection(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @CollectionTable(name = "user_preferences", joinColumns = @JoinColumn(name = "user_id"))
     @Column(name = "preference")
     private Set<String> preferences = new HashSet<>();
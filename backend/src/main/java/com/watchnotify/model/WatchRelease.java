@@ -5,7 +5,10 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -15,7 +18,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "watch_releases")
+@Table(name = "watch_releases", indexes = {
+        @Index(name = "idx_watch_releases_brand_model", columnList = "brand, model_number", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -47,12 +52,18 @@ public class WatchRelease {
     @Column(name = "currency")
     private String currency = "USD";
     
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @CollectionTable(name = "watch_features", joinColumns = @JoinColumn(name = "watch_id"))
     @Column(name = "feature")
     private Set<String> features = new HashSet<>();
     
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @CollectionTable(name = "watch_categories", joinColumns = @JoinColumn(name = "watch_id"))
     @Column(name = "category")
     private Set<String> categories = new HashSet<>();
@@ -0,0 +1,23 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.DeliveryCounterNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface DeliveryCounterNodeRepository extends JpaRepository<DeliveryCounterNode, String> {
+    
+    // Oldest flush among the nodes that have flushed since aliveSince
+    @Query("SELECT MIN(n.flushedThrough) FROM DeliveryCounterNode n WHERE n.flushedThrough >= :aliveSince")
+    Optional<LocalDateTime> findEarliestFlushSince(@Param("aliveSince") LocalDateTime aliveSince);
+    
+    @Modifying
+    @Query("DELETE FROM DeliveryCounterNode n WHERE n.flushedThrough < :aliveSince")
+    int deleteGone(@Param("aliveSince") LocalDateTime aliveSince);
+}
@@ -0,0 +1,31 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.Notification;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DeliveryCounterRepository extends JpaRepository<DeliveryCounter, Long> {
+    
+    List<DeliveryCounter> findByScopeAndScopeId(DeliveryCounter.Scope scope, Long scopeId);
+    
+    @Query("SELECT COALESCE(SUM(c.total), 0) FROM DeliveryCounter c WHERE c.scope = :scope AND " +
+           "c.scopeId = :scopeId AND c.status = :status")
+    long sumByStatus(@Param("scope") DeliveryCounter.Scope scope,
+                     @Param("scopeId") Long scopeId,
+                     @Param("status") Notification.NotificationStatus status);
+    
+    // Locked so that flushes and reconciliation on different nodes apply their changes one after another
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM DeliveryCounter c WHERE c.scope = :scope AND c.scopeId IN :scopeIds")
+    List<DeliveryCounter> lockByScopeIds(@Param("scope") DeliveryCounter.Scope scope,
+                                         @Param("scopeIds") Collection<Long> scopeIds);
+}
@@ -0,0 +1,45 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.FanoutLease;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface FanoutLeaseRepository extends JpaRepository<FanoutLease, Long> {
+    
+    boolean existsByWatchReleaseIdAndLeaseType(Long watchReleaseId, FanoutLease.LeaseType leaseType);
+    
+    // SELECT ... FOR UPDATE SKIP LOCKED: empty while another node is deciding on the same lease
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT l FROM FanoutLease l WHERE l.watchReleaseId = :releaseId AND l.leaseType = :leaseType")
+    Optional<FanoutLease> lockForClaim(@Param("releaseId") Long releaseId,
+                                       @Param("leaseType") FanoutLease.LeaseType leaseType);
+    
+    @Modifying
+    @Query("UPDATE FanoutLease l SET l.leaseExpiresAt = :expiresAt WHERE l.watchReleaseId = :releaseId AND " +
+           "l.leaseType = :leaseType AND l.owner = :owner AND l.state = 'NOTIFYING'")
+    int renew(@Param("releaseId") Long releaseId,
+              @Param("leaseType") FanoutLease.LeaseType leaseType,
+              @Param("owner") String owner,
+              @Param("expiresAt") LocalDateTime expiresAt);
+    
+    @Modifying
+    @Query("UPDATE FanoutLease l SET l.state = :state, l.completedAt = :completedAt, l.leaseExpiresAt = :completedAt " +
+           "WHERE l.watchReleaseId = :releaseId AND l.leaseType = :leaseType AND l.owner = :owner")
+    int finish(@Param("releaseId") Long releaseId,
+               @Param("leaseType") FanoutLease.LeaseType leaseType,
+               @Param("owner") String owner,
+               @Param("state") FanoutLease.LeaseState state,
+               @Param("completedAt") LocalDateTime completedAt);
+}
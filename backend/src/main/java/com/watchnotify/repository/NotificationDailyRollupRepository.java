@@ -0,0 +1,18 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.NotificationDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+
+@Repository
+public interface NotificationDailyRollupRepository extends JpaRepository<NotificationDailyRollup, Long> {
+    
+    @Modifying
+    @Query("DELETE FROM NotificationDailyRollup d WHERE d.rollupDate = :rollupDate")
+    int deleteDay(@Param("rollupDate") LocalDate rollupDate);
+}
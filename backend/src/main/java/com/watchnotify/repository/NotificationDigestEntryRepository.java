@@ -0,0 +1,50 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationDigestEntry;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface NotificationDigestEntryRepository extends JpaRepository<NotificationDigestEntry, Long> {
+    
+    // Entries of paused jobs wait for the job to be resumed, like its held notifications
+    String PENDING = "e.digestNotificationId IS NULL AND NOT EXISTS (SELECT j.id FROM NotificationJob j " +
+            "WHERE j.id = e.jobId AND j.state = 'PAUSED') ";
+    
+    // Rows as [userId, notificationType, dedupSequence], merged into the dedup index of a release
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT e.userId, e.notificationType, e.dedupSequence FROM NotificationDigestEntry e " +
+           "WHERE e.watchReleaseId = :releaseId AND e.notificationKind = :kind")
+    Stream<Object[]> streamDeliveryKeys(@Param("releaseId") Long releaseId,
+                                        @Param("kind") Notification.NotificationKind kind);
+    
+    // Rows as [userId, notificationType] of the digests whose oldest pending entry is older than dueBefore
+    @Query("SELECT e.userId, e.notificationType FROM NotificationDigestEntry e WHERE " + PENDING +
+           "GROUP BY e.userId, e.notificationType HAVING MIN(e.createdAt) <= :dueBefore ORDER BY MIN(e.createdAt)")
+    List<Object[]> findDueGroups(@Param("dueBefore") LocalDateTime dueBefore, Pageable pageable);
+    
+    // Lock timeout -2 is Hibernate's SKIP LOCKED, so concurrent nodes send disjoint digests
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM NotificationDigestEntry e WHERE " + PENDING + "AND e.userId IN :userIds " +
+           "ORDER BY e.userId, e.id")
+    List<NotificationDigestEntry> lockPendingForUsers(@Param("userIds") Collection<Long> userIds);
+    
+    @Modifying
+    @Query("DELETE FROM NotificationDigestEntry e WHERE e.jobId = :jobId AND e.digestNotificationId IS NULL")
+    int deletePendingForJob(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,26 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.NotificationHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NotificationHourlyRollupRepository extends JpaRepository<NotificationHourlyRollup, Long> {
+    
+    @Modifying
+    @Query("DELETE FROM NotificationHourlyRollup h WHERE h.bucketStart = :bucketStart")
+    int deleteBucket(@Param("bucketStart") LocalDateTime bucketStart);
+    
+    // Rows as [notificationType, notificationKind, status, count, retries, delivered, deliverySum, deliveryMin, deliveryMax]
+    @Query("SELECT h.notificationType, h.notificationKind, h.status, SUM(h.notificationCount), SUM(h.retryCount), " +
+           "SUM(h.deliveredCount), SUM(h.deliverySecondsSum), MIN(h.deliverySecondsMin), MAX(h.deliverySecondsMax) " +
+           "FROM NotificationHourlyRollup h WHERE h.bucketStart >= :from AND h.bucketStart < :to " +
+           "GROUP BY h.notificationType, h.notificationKind, h.status")
+    List<Object[]> sumBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
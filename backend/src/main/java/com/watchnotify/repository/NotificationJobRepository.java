@@ -0,0 +1,49 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.NotificationJob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NotificationJobRepository extends JpaRepository<NotificationJob, Long> {
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM NotificationJob j WHERE j.id = :id")
+    Optional<NotificationJob> lockById(@Param("id") Long id);
+    
+    // Jobs waiting to start and running jobs whose owner stopped checkpointing
+    @Query("SELECT j.id FROM NotificationJob j WHERE j.state = 'QUEUED' OR " +
+           "(j.state = 'RUNNING' AND j.heartbeatAt < :staleBefore) ORDER BY j.id")
+    List<Long> findRunnableIds(@Param("staleBefore") LocalDateTime staleBefore);
+    
+    @Modifying
+    @Query("UPDATE NotificationJob j SET j.state = 'RUNNING', j.owner = :owner, j.heartbeatAt = :now, " +
+           "j.startedAt = COALESCE(j.startedAt, :now), j.updatedAt = :now WHERE j.id = :id AND " +
+           "(j.state = 'QUEUED' OR (j.state = 'RUNNING' AND j.heartbeatAt < :staleBefore))")
+    int claim(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+    
+    // Only succeeds while the job is still running on this node, so it also tells the owner to stop
+    @Modifying
+    @Query("UPDATE NotificationJob j SET j.lastRecipientId = :lastRecipientId, " +
+           "j.recipientsResolved = j.recipientsResolved + :recipients, " +
+           "j.notificationsQueued = j.notificationsQueued + :queued, j.heartbeatAt = :now, j.updatedAt = :now " +
+           "WHERE j.id = :id AND j.state = 'RUNNING' AND j.owner = :owner")
+    int checkpoint(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("lastRecipientId") Long lastRecipientId,
+                   @Param("recipients") long recipients,
+                   @Param("queued") long queued,
+                   @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,14 @@
+package com.watchnotify.repository;
+
+import com.watchnotify.model.NotificationPartitionArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface NotificationPartitionArchiveRepository extends JpaRepository<NotificationPartitionArchive, String> {
+    
+    // Partitions detached and not yet archived, or archived at or after the given time
+    boolean existsByArchivedAtIsNullOrArchivedAtGreaterThanEqual(LocalDateTime since);
+}
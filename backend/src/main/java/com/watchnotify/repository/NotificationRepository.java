@@ -1,13 +1,24 @@
 package com.watchnotify.repository;
 
+import com.watchnotify.dto.NotificationDto;
+import com.watchnotify.dto.NotificationSummaryDto;
 import com.watchnotify.model.Notification;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
@@ -23,10 +34,155 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     @Query("SELECT n FROM Notification n WHERE n.status = 'PENDING' AND n.retryCount < :maxRetries")
     List<Notification> findPendingNotificationsWithRetryLimit(@Param("maxRetries") Integer maxRetries);
     
+    // Lock timeout -2 is Hibernate's SKIP LOCKED, so concurrent workers claim disjoint batches.
+    // Rows leased to a worker are skipped until the lease runs out.
+    // The createdSince bounds in this and the queries below prune the partitions older than it.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT n FROM Notification n WHERE n.status = 'PENDING' AND n.notificationType = :channel AND " +
+           "n.retryCount < :maxRetries AND n.nextAttemptAt <= :now AND " +
+           "(n.leasedUntil IS NULL OR n.leasedUntil <= :now) AND n.createdAt >= :createdSince " +
+           "ORDER BY n.nextAttemptAt")
+    List<Notification> claimDueNotifications(@Param("channel") Notification.NotificationType channel,
+                                             @Param("now") LocalDateTime now,
+                                             @Param("maxRetries") Integer maxRetries,
+                                             @Param("createdSince") LocalDateTime createdSince,
+                                             Pageable pageable);
+    
+    // Rows still held under the given lease, for recording the outcome of their sends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM Notification n WHERE n.id IN :ids AND n.leasedUntil = :leasedUntil")
+    List<Notification> lockLeased(@Param("ids") Collection<Long> ids,
+                                  @Param("leasedUntil") LocalDateTime leasedUntil);
+    
+    // Rows as [notificationType, count]; covered by the (status, notification_type, next_attempt_at) index
+    @Query("SELECT n.notificationType, COUNT(n) FROM Notification n WHERE n.status = 'PENDING' " +
+           "AND n.createdAt >= :createdSince GROUP BY n.notificationType")
+    List<Object[]> countPendingByChannel(@Param("createdSince") LocalDateTime createdSince);
+    
+    // Bounds the createdSince of the outbox queries; served by idx_notifications_pending_created
+    @Query("SELECT MIN(n.createdAt) FROM Notification n WHERE n.status = 'PENDING'")
+    Optional<LocalDateTime> findEarliestPendingCreatedAt();
+    
+    // Rows as [userId, notificationType, dedupSequence] for rebuilding the dedup index of a release.
+    // Only sent and in-flight rows count; cancelled and dead-lettered rows give up their sequence.
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT n.user.id, n.notificationType, n.dedupSequence FROM Notification n " +
+           "WHERE n.watchRelease.id = :releaseId AND n.notificationKind = :kind AND n.dedupSequence IS NOT NULL " +
+           "AND n.status IN ('PENDING', 'SENT') AND n.createdAt >= :createdSince")
+    Stream<Object[]> streamDeliveryKeys(@Param("releaseId") Long releaseId,
+                                        @Param("kind") Notification.NotificationKind kind,
+                                        @Param("createdSince") LocalDateTime createdSince);
+    
+    String NOTIFICATION_PROJECTION = "SELECT new com.watchnotify.dto.NotificationDto(n.id, n.user.id, " +
+            "n.watchRelease.id, n.notificationType, n.notificationKind, n.status, n.subject, n.message, " +
+            "n.recipient, n.sentAt, n.errorMessage, n.retryCount, n.createdAt) FROM Notification n ";
+    
+    // Read path: NotificationDto projections, keyset-paginated on id
+    
+    @Query(NOTIFICATION_PROJECTION + "WHERE n.status = :status AND n.id > :afterId ORDER BY n.id")
+    List<NotificationDto> findViewsByStatus(@Param("status") Notification.NotificationStatus status,
+                                            @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(NOTIFICATION_PROJECTION + "WHERE n.user.id = :userId ORDER BY n.createdAt DESC, n.id DESC")
+    List<NotificationDto> findViewsByUserId(@Param("userId") Long userId);
+    
+    // User inbox, newest first, keyset-paginated on (createdAt, id) over idx_notifications_user_created.
+    // Status and type are optional filters evaluated on the same index range.
+    @Query("SELECT new com.watchnotify.dto.NotificationSummaryDto(n.id, n.watchRelease.id, n.notificationType, " +
+           "n.notificationKind, n.status, n.subject, n.sentAt, n.createdAt) FROM Notification n " +
+           "WHERE n.user.id = :userId AND " +
+           "(n.createdAt < :beforeCreatedAt OR (n.createdAt = :beforeCreatedAt AND n.id < :beforeId)) AND " +
+           "(:status IS NULL OR n.status = :status) AND (:type IS NULL OR n.notificationType = :type) " +
+           "ORDER BY n.createdAt DESC, n.id DESC")
+    List<NotificationSummaryDto> findInbox(@Param("userId") Long userId,
+                                           @Param("status") Notification.NotificationStatus status,
+                                           @Param("type") Notification.NotificationType type,
+                                           @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+                                           @Param("beforeId") Long beforeId,
+                                           Pageable pageable);
+    
+    @Query(NOTIFICATION_PROJECTION + "WHERE n.createdAt >= :startDate AND n.createdAt <= :endDate AND " +
+           "n.id > :afterId ORDER BY n.id")
+    List<NotificationDto> findViewsByDateRange(@Param("startDate") LocalDateTime startDate,
+                                               @Param("endDate") LocalDateTime endDate,
+                                               @Param("afterId") Long afterId, Pageable pageable);
+    
     @Query("SELECT n FROM Notification n WHERE n.createdAt >= :startDate AND n.createdAt <= :endDate")
     List<Notification> findNotificationsByDateRange(@Param("startDate") LocalDateTime startDate, 
                                                    @Param("endDate") LocalDateTime endDate);
     
-    @Query("SELECT COUNT(n) FROM Notification n WHERE n.user.id = :userId AND n.status = 'SENT'")
-    Long countSentNotificationsByUser(@Param("userId") Long userId);
+    // Rollup of one bucket, as [notificationType, notificationKind, status, count, retries, delivered,
+    // deliverySum, deliveryMin, deliveryMax]; delivery times are in nanoseconds and only cover sent rows
+    @Query("SELECT n.notificationType, n.notificationKind, n.status, COUNT(n), COALESCE(SUM(n.retryCount), 0), " +
+           "COUNT(n.sentAt), SUM((n.sentAt - n.createdAt) by nanosecond), " +
+           "MIN((n.sentAt - n.createdAt) by nanosecond), MAX((n.sentAt - n.createdAt) by nanosecond) " +
+           "FROM Notification n " +
+           "WHERE n.createdAt >= :from AND n.createdAt < :to " +
+           "GROUP BY n.notificationType, n.notificationKind, n.status")
+    List<Object[]> rollUp(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    
+    @Query("SELECT MIN(n.createdAt) FROM Notification n")
+    Optional<LocalDateTime> findEarliestCreatedAt();
+    
+    // Rows as [userId, notificationType, status, count], for reconciling delivery counters
+    @Query("SELECT n.user.id, n.notificationType, n.status, COUNT(n) FROM Notification n " +
+           "WHERE n.user.id IN :userIds AND n.notificationType IS NOT NULL " +
+           "GROUP BY n.user.id, n.notificationType, n.status")
+    List<Object[]> countByUsers(@Param("userIds") Collection<Long> userIds);
+    
+    // Rows as [watchReleaseId, notificationType, status, count], for reconciling delivery counters
+    @Query("SELECT n.watchRelease.id, n.notificationType, n.status, COUNT(n) FROM Notification n " +
+           "WHERE n.watchRelease.id IN :releaseIds AND n.notificationType IS NOT NULL " +
+           "GROUP BY n.watchRelease.id, n.notificationType, n.status")
+    List<Object[]> countByReleases(@Param("releaseIds") Collection<Long> releaseIds);
+    
+    // Users with a notification created or settled at or after :since, whose counters may still have deltas in flight
+    @Query("SELECT DISTINCT n.user.id FROM Notification n WHERE n.user.id IN :userIds AND " +
+           "(n.createdAt >= :since OR n.statusChangedAt >= :since)")
+    List<Long> findUsersChangedSince(@Param("userIds") Collection<Long> userIds,
+                                     @Param("since") LocalDateTime since);
+    
+    // Releases with a notification created or settled at or after :since
+    @Query("SELECT DISTINCT n.watchRelease.id FROM Notification n WHERE n.watchRelease.id IN :releaseIds AND " +
+           "(n.createdAt >= :since OR n.statusChangedAt >= :since)")
+    List<Long> findReleasesChangedSince(@Param("releaseIds") Collection<Long> releaseIds,
+                                        @Param("since") LocalDateTime since);
+    
+    // Rows as [status, count, latest sentAt], for a fan-out job's progress
+    @Query("SELECT n.status, COUNT(n), MAX(n.sentAt) FROM Notification n WHERE n.jobId = :jobId GROUP BY n.status")
+    List<Object[]> countByJob(@Param("jobId") Long jobId);
+    
+    // Rows as [userId, notificationType, count] of a job's PENDING rows, for adjusting delivery counters
+    @Query("SELECT n.user.id, n.notificationType, COUNT(n) FROM Notification n WHERE n.jobId = :jobId AND " +
+           "n.status = 'PENDING' AND n.notificationType IS NOT NULL AND n.createdAt >= :createdSince " +
+           "GROUP BY n.user.id, n.notificationType")
+    List<Object[]> countPendingByUserForJob(@Param("jobId") Long jobId,
+                                            @Param("createdSince") LocalDateTime createdSince);
+    
+    // Rows as [watchReleaseId, notificationType, count] of a job's PENDING rows
+    @Query("SELECT n.watchRelease.id, n.notificationType, COUNT(n) FROM Notification n WHERE n.jobId = :jobId AND " +
+           "n.status = 'PENDING' AND n.notificationType IS NOT NULL AND n.createdAt >= :createdSince " +
+           "GROUP BY n.watchRelease.id, n.notificationType")
+    List<Object[]> countPendingByReleaseForJob(@Param("jobId") Long jobId,
+                                               @Param("createdSince") LocalDateTime createdSince);
+    
+    // Outbox workers only claim rows with a due next_attempt_at, so clearing it holds a paused job's rows
+    @Modifying
+    @Query("UPDATE Notification n SET n.nextAttemptAt = NULL WHERE n.jobId = :jobId AND n.status = 'PENDING' " +
+           "AND n.createdAt >= :createdSince")
+    int holdPendingForJob(@Param("jobId") Long jobId, @Param("createdSince") LocalDateTime createdSince);
+    
+    @Modifying
+    @Query("UPDATE Notification n SET n.nextAttemptAt = :now WHERE n.jobId = :jobId AND n.status = 'PENDING' " +
+           "AND n.nextAttemptAt IS NULL AND n.createdAt >= :createdSince")
+    int releaseHeldForJob(@Param("jobId") Long jobId, @Param("now") LocalDateTime now,
+                          @Param("createdSince") LocalDateTime createdSince);
+    
+    // Clearing dedup_seq frees the delivery, so a later fan-out of the release may notify the user again
+    @Modifying
+    @Query("UPDATE Notification n SET n.status = 'CANCELLED', n.nextAttemptAt = NULL, n.dedupSequence = NULL, " +
+           "n.statusChangedAt = :now WHERE n.jobId = :jobId AND n.status = 'PENDING' AND n.createdAt >= :createdSince")
+    int cancelPendingForJob(@Param("jobId") Long jobId, @Param("now") LocalDateTime now,
+                            @Param("createdSince") LocalDateTime createdSince);
 }
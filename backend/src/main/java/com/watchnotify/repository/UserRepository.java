@@ -1,17 +1,36 @@
 package com.watchnotify.repository;
 
+import com.watchnotify.dto.RecipientDto;
+import com.watchnotify.dto.UserDto;
 import com.watchnotify.model.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
+    String RECIPIENT_PROJECTION = "SELECT new com.watchnotify.dto.RecipientDto(u.id, u.firstName, u.email, u.phoneNumber, " +
+            "u.emailNotificationsEnabled, u.smsNotificationsEnabled, u.pushNotificationsEnabled, " +
+            "u.emailDigestEnabled, u.smsDigestEnabled, u.pushDigestEnabled) FROM User u ";
+    
+    String USER_PROJECTION = "SELECT new com.watchnotify.dto.UserDto(u.id, u.firstName, u.lastName, u.email, " +
+            "u.phoneNumber, u.isActive, u.emailNotificationsEnabled, u.smsNotificationsEnabled, " +
+            "u.pushNotificationsEnabled, u.emailDigestEnabled, u.smsDigestEnabled, u.pushDigestEnabled) FROM User u ";
+    
+    String AUDIENCE_FLAGS = "SELECT u.id, u.isActive, u.emailNotificationsEnabled, u.smsNotificationsEnabled, " +
+            "CASE WHEN u.phoneNumber IS NOT NULL THEN true ELSE false END, u.pushNotificationsEnabled FROM User u";
+    
     Optional<User> findByEmail(String email);
     
     List<User> findByIsActiveTrue();
@@ -32,4 +51,92 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findActiveUsersForEmailNotifications(@Param("brands") List<String> brands);
     
     boolean existsByEmail(String email);
+    
+    // Bulk import looks up a whole batch of emails at once: rows as [email, id]
+    @Query("SELECT u.email, u.id FROM User u WHERE u.email IN :emails")
+    List<Object[]> findIdsByEmailIn(@Param("emails") Collection<String> emails);
+    
+    // Read path: UserDto projections without preferences, which are then loaded for
+    // all returned users at once with findPreferencesByUserIdIn. List queries are
+    // keyset-paginated on id like the recipient reads above.
+    
+    @Query(USER_PROJECTION + "WHERE u.id > :afterId ORDER BY u.id")
+    List<UserDto> findAllUserViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(USER_PROJECTION + "WHERE u.id = :id")
+    Optional<UserDto> findUserViewById(@Param("id") Long id);
+    
+    @Query(USER_PROJECTION + "WHERE u.email = :email")
+    Optional<UserDto> findUserViewByEmail(@Param("email") String email);
+    
+    @Query(USER_PROJECTION + "WHERE u.isActive = true AND u.id > :afterId ORDER BY u.id")
+    List<UserDto> findActiveUserViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(USER_PROJECTION + "WHERE u.isActive = true AND u.emailNotificationsEnabled = true AND u.id > :afterId " +
+           "ORDER BY u.id")
+    List<UserDto> findEmailUserViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(USER_PROJECTION + "WHERE u.isActive = true AND u.smsNotificationsEnabled = true AND u.id > :afterId " +
+           "ORDER BY u.id")
+    List<UserDto> findSmsUserViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(USER_PROJECTION + "WHERE u.isActive = true AND u.pushNotificationsEnabled = true AND u.id > :afterId " +
+           "ORDER BY u.id")
+    List<UserDto> findPushUserViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(USER_PROJECTION + "WHERE u.isActive = true AND u.id > :afterId AND " +
+           "EXISTS (SELECT p FROM u.preferences p WHERE p IN :categories) ORDER BY u.id")
+    List<UserDto> findActiveUserViewsWithPreferences(@Param("categories") List<String> categories,
+                                                     @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Rows as [userId, preference]
+    @Query("SELECT u.id, p FROM User u JOIN u.preferences p WHERE u.id IN :ids")
+    List<Object[]> findPreferencesByUserIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Keyset-paginated recipient reads for notification fan-out. Callers pass the last
+    // id of the previous chunk (0 for the first) and a Pageable carrying the chunk size.
+    
+    @Query(RECIPIENT_PROJECTION + "WHERE u.isActive = true AND u.id > :afterId ORDER BY u.id")
+    List<RecipientDto> findActiveRecipientsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RECIPIENT_PROJECTION + "WHERE u.isActive = true AND u.id > :afterId AND " +
+           "EXISTS (SELECT p FROM u.preferences p WHERE p IN :categories) ORDER BY u.id")
+    List<RecipientDto> findActiveRecipientsWithPreferencesAfter(@Param("categories") List<String> categories,
+                                                                @Param("afterId") Long afterId,
+                                                                Pageable pageable);
+    
+    @Query(RECIPIENT_PROJECTION + "WHERE u.isActive = true AND u.emailNotificationsEnabled = true AND u.id > :afterId AND " +
+           "EXISTS (SELECT p FROM u.preferences p WHERE p IN :brands) ORDER BY u.id")
+    List<RecipientDto> findActiveEmailRecipientsWithPreferencesAfter(@Param("brands") List<String> brands,
+                                                                     @Param("afterId") Long afterId,
+                                                                     Pageable pageable);
+    
+    @Query(RECIPIENT_PROJECTION + "WHERE u.isActive = true AND u.id IN :ids ORDER BY u.id")
+    List<RecipientDto> findActiveRecipientsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Audience index rebuild: [id, isActive, emailEnabled, smsEnabled, hasPhoneNumber, pushEnabled]
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(AUDIENCE_FLAGS)
+    Stream<Object[]> streamAudienceFlags();
+    
+    // Audience index rebuild: [userId, preference]
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT u.id, p FROM User u JOIN u.preferences p")
+    Stream<Object[]> streamPreferences();
+    
+    // Audience index refresh: the same rows for users changed since the watermark
+    @Query(AUDIENCE_FLAGS + " WHERE u.updatedAt >= :since")
+    List<Object[]> findAudienceFlagsUpdatedSince(@Param("since") LocalDateTime since);
+    
+    @Query("SELECT u.id, p FROM User u JOIN u.preferences p WHERE u.updatedAt >= :since")
+    List<Object[]> findPreferencesUpdatedSince(@Param("since") LocalDateTime since);
+    
+    // Audience index refresh looks for deleted users when it holds more ids than the table
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT u.id FROM User u")
+    Stream<Long> streamIds();
+    
+    // Delivery counter reconciliation walks every user in id order
+    @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
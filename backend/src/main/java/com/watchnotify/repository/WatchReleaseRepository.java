@@ -1,17 +1,26 @@
 package com.watchnotify.repository;
 
+import com.watchnotify.dto.WatchReleaseDto;
 import com.watchnotify.model.WatchRelease;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface WatchReleaseRepository extends JpaRepository<WatchRelease, Long> {
     
+    String RELEASE_PROJECTION = "SELECT new com.watchnotify.dto.WatchReleaseDto(wr.id, wr.watchName, wr.brand, " +
+            "wr.modelNumber, wr.description, wr.releaseDate, wr.price, wr.currency, wr.imageUrl, wr.productUrl, " +
+            "wr.isLimitedEdition, wr.limitedQuantity, wr.isNotified, wr.notificationSentAt, wr.createdAt, " +
+            "wr.updatedAt) FROM WatchRelease wr ";
+    
     List<WatchRelease> findByIsNotifiedFalse();
     
     List<WatchRelease> findByReleaseDateBetween(LocalDateTime startDate, LocalDateTime endDate);
@@ -31,4 +40,66 @@ public interface WatchReleaseRepository extends JpaRepository<WatchRelease, Long
     List<WatchRelease> findUpcomingReleases(@Param("date") LocalDateTime date);
     
     List<WatchRelease> findByIsLimitedEditionTrue();
+    
+    // Read path: WatchReleaseDto projections without features and categories, which are
+    // then loaded for all returned releases at once. List queries are keyset-paginated on
+    // id, except upcoming releases which page on (releaseDate, id).
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.id > :afterId ORDER BY wr.id")
+    List<WatchReleaseDto> findAllReleaseViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.id = :id")
+    Optional<WatchReleaseDto> findReleaseViewById(@Param("id") Long id);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.isNotified = false AND wr.id > :afterId ORDER BY wr.id")
+    List<WatchReleaseDto> findUnnotifiedReleaseViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.brand = :brand AND wr.id > :afterId ORDER BY wr.id")
+    List<WatchReleaseDto> findReleaseViewsByBrand(@Param("brand") String brand, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.brand IN :brands AND wr.id > :afterId ORDER BY wr.id")
+    List<WatchReleaseDto> findReleaseViewsByBrandIn(@Param("brands") List<String> brands, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.releaseDate >= :date AND " +
+           "(wr.releaseDate > :afterDate OR (wr.releaseDate = :afterDate AND wr.id > :afterId)) " +
+           "ORDER BY wr.releaseDate ASC, wr.id ASC")
+    List<WatchReleaseDto> findUpcomingReleaseViews(@Param("date") LocalDateTime date,
+                                                   @Param("afterDate") LocalDateTime afterDate,
+                                                   @Param("afterId") Long afterId,
+                                                   Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.isLimitedEdition = true AND wr.id > :afterId ORDER BY wr.id")
+    List<WatchReleaseDto> findLimitedEditionReleaseViews(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.releaseDate BETWEEN :startDate AND :endDate AND wr.id > :afterId " +
+           "ORDER BY wr.id")
+    List<WatchReleaseDto> findReleaseViewsByReleaseDateBetween(@Param("startDate") LocalDateTime startDate,
+                                                               @Param("endDate") LocalDateTime endDate,
+                                                               @Param("afterId") Long afterId,
+                                                               Pageable pageable);
+    
+    // Rows as [releaseId, feature]
+    @Query("SELECT wr.id, f FROM WatchRelease wr JOIN wr.features f WHERE wr.id IN :ids")
+    List<Object[]> findFeaturesByReleaseIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Rows as [releaseId, category]
+    @Query("SELECT wr.id, c FROM WatchRelease wr JOIN wr.categories c WHERE wr.id IN :ids")
+    List<Object[]> findCategoriesByReleaseIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Bulk upsert matches a batch of (brand, modelNumber) keys with one query; the caller
+    // drops rows whose brand and model number only match different keys
+    
+    @Query(RELEASE_PROJECTION + "WHERE wr.brand IN :brands AND wr.modelNumber IN :modelNumbers")
+    List<WatchReleaseDto> findReleaseViewsByBrandInAndModelNumberIn(@Param("brands") Collection<String> brands,
+                                                                    @Param("modelNumbers") Collection<String> modelNumbers);
+    
+    // Rows as [brand, modelNumber, id]
+    @Query("SELECT wr.brand, wr.modelNumber, wr.id FROM WatchRelease wr " +
+           "WHERE wr.brand IN :brands AND wr.modelNumber IN :modelNumbers")
+    List<Object[]> findIdsByBrandInAndModelNumberIn(@Param("brands") Collection<String> brands,
+                                                    @Param("modelNumbers") Collection<String> modelNumbers);
+    
+    // Delivery counter reconciliation walks every release in id order
+    @Query("SELECT wr.id FROM WatchRelease wr WHERE wr.id > :afterId ORDER BY wr.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
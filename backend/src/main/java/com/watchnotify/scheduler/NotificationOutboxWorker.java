@@ -0,0 +1,294 @@
+package com.watchnotify.scheduler;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.repository.NotificationRepository;
+import com.watchnotify.service.BulkEmailTransport;
+import com.watchnotify.service.DeliveryCounters;
+import com.watchnotify.service.NotificationDispatcher;
+import com.watchnotify.service.NotificationHorizons;
+import com.watchnotify.service.NotificationMetrics;
+import com.watchnotify.service.NotificationSender;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the notification outbox. Each channel has its own workers, so a slow or failing
+ * provider only holds up its own rows. A worker repeatedly claims a batch of its
+ * channel's due {@code PENDING} rows with {@code FOR UPDATE SKIP LOCKED} and leases them
+ * until {@code lease-duration} from now, in a short transaction. It then sends them
+ * through the {@link NotificationDispatcher} outside any transaction, and records the
+ * outcomes in a second short transaction, only for rows still under its lease. No
+ * connection or row lock is held during provider calls. Emails are grouped into
+ * per-domain connection batches by the
+ * {@link BulkEmailTransport}. Failed sends are rescheduled with exponential backoff and
+ * jitter until {@code app.notification.retry.max-attempts} is reached, after which the
+ * row is moved to {@code DEAD_LETTER}. While a channel's circuit is open its workers
+ * claim nothing, and rows refused mid-batch are deferred without using up an attempt.
+ *
+ * <p>A row cancelled while in flight stays cancelled, and a row whose job was paused while
+ * in flight stays held if it is to be retried. A crashed node's rows return to the outbox
+ * once their lease runs out, for another worker or replica to pick up, so the lease must
+ * outlast the slowest batch including rate-limit waits.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationOutboxWorker {
+    
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 255;
+    
+    private final NotificationRepository notificationRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final NotificationSender notificationSender;
+    private final BulkEmailTransport bulkEmailTransport;
+    private final NotificationMetrics notificationMetrics;
+    private final DeliveryCounters deliveryCounters;
+    private final NotificationHorizons notificationHorizons;
+    private final TransactionTemplate transactionTemplate;
+    
+    // Workers per channel
+    @Value("${app.notification.outbox.workers:2}")
+    private int workers;
+    
+    @Value("${app.notification.outbox.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.notification.outbox.poll-interval:1000}")
+    private long pollInterval;
+    
+    @Value("${app.notification.outbox.lease-duration:300000}")
+    private long leaseDuration;
+    
+    @Value("${app.notification.retry.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${app.notification.retry.delay:5000}")
+    private long retryDelay;
+    
+    @Value("${app.notification.retry.max-delay:300000}")
+    private long maxRetryDelay;
+    
+    private ScheduledExecutorService workerPool;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Notification.NotificationType[] channels = Notification.NotificationType.values();
+        AtomicInteger counter = new AtomicInteger();
+        workerPool = Executors.newScheduledThreadPool(workers * channels.length, runnable -> {
+            Thread thread = new Thread(runnable, "notification-outbox-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        for (Notification.NotificationType channel : channels) {
+            for (int i = 0; i < workers; i++) {
+                workerPool.scheduleWithFixedDelay(() -> drainOutbox(channel),
+                        pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+        log.info("Started {} notification outbox workers per channel (batch size {})", workers, batchSize);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+    
+    /**
+     * Processes batches of one channel until its outbox has no more due rows or its
+     * circuit opens.
+     */
+    public void drainOutbox(Notification.NotificationType channel) {
+        try {
+            while (!workerPool.isShutdown() && notificationDispatcher.isAvailable(channel)
+                    && processBatch(channel) == batchSize) {
+                log.debug("{} outbox batch full, claiming the next one", channel);
+            }
+        } catch (Exception e) {
+            log.error("Error draining {} notification outbox", channel, e);
+        }
+    }
+    
+    private int processBatch(Notification.NotificationType channel) {
+        // Outcomes match rows on the lease, so keep it at a precision every database stores
+        LocalDateTime leasedUntil = LocalDateTime.now().plus(Duration.ofMillis(leaseDuration))
+                .truncatedTo(ChronoUnit.MILLIS);
+        List<Notification> claimed = transactionTemplate.execute(status -> claim(channel, leasedUntil));
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+        
+        // The claimed rows are detached now; the send threads only change these copies
+        NotificationDispatcher.DispatchBatch batch = notificationDispatcher.newBatch();
+        if (channel == Notification.NotificationType.EMAIL) {
+            // Emails go out in per-domain batches, one SMTP connection per batch
+            for (List<Notification> connectionBatch : bulkEmailTransport.partition(claimed)) {
+                if (!batch.submit(channel, connectionBatch.size(), () -> deliverEmails(connectionBatch))) {
+                    defer(channel, connectionBatch);
+                }
+            }
+        } else {
+            for (Notification notification : claimed) {
+                if (!batch.submit(channel, 1, () -> deliver(notification) ? 0 : 1)) {
+                    defer(channel, List.of(notification));
+                }
+            }
+        }
+        
+        try {
+            batch.awaitCompletion();
+        } catch (InterruptedException e) {
+            // The rows go back to the outbox when their lease runs out
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for outbox batch", e);
+        }
+        transactionTemplate.executeWithoutResult(status -> recordOutcomes(channel, claimed, leasedUntil));
+        return claimed.size();
+    }
+    
+    private List<Notification> claim(Notification.NotificationType channel, LocalDateTime leasedUntil) {
+        List<Notification> claimed = notificationRepository.claimDueNotifications(
+                channel, LocalDateTime.now(), maxAttempts, notificationHorizons.pending(), PageRequest.of(0, batchSize));
+        for (Notification notification : claimed) {
+            notification.setLeasedUntil(leasedUntil);
+            // Keeps leased rows out of the claim index range until the lease runs out
+            notification.setNextAttemptAt(leasedUntil);
+        }
+        return claimed;
+    }
+    
+    private void recordOutcomes(Notification.NotificationType channel, List<Notification> outcomes,
+                                LocalDateTime leasedUntil) {
+        Map<Long, Notification> byId = outcomes.stream()
+                .collect(Collectors.toMap(Notification::getId, Function.identity()));
+        List<Notification> recorded = new ArrayList<>(outcomes.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Notification row : notificationRepository.lockLeased(byId.keySet(), leasedUntil)) {
+            row.setLeasedUntil(null);
+            if (row.getStatus() != Notification.NotificationStatus.PENDING) {
+                // Cancelled while in flight
+                continue;
+            }
+            Notification outcome = byId.get(row.getId());
+            boolean held = row.getNextAttemptAt() == null;
+            row.setStatus(outcome.getStatus());
+            row.setSentAt(outcome.getSentAt());
+            row.setErrorMessage(outcome.getErrorMessage());
+            row.setRetryCount(outcome.getRetryCount());
+            row.setDedupSequence(outcome.getDedupSequence());
+            row.setNextAttemptAt(held ? null : outcome.getNextAttemptAt());
+            if (row.getStatus() != Notification.NotificationStatus.PENDING) {
+                row.setStatusChangedAt(now);
+            }
+            recorded.add(row);
+        }
+        if (recorded.size() < outcomes.size()) {
+            log.warn("Recorded {} of {} {} send outcomes; the rest were cancelled or their lease ran out while in flight",
+                    recorded.size(), outcomes.size(), channel);
+        }
+        // Applied once this transaction commits the new statuses
+        deliveryCounters.recordStatusChanges(recorded, Notification.NotificationStatus.PENDING);
+    }
+    
+    private boolean deliver(Notification notification) {
+        long started = System.nanoTime();
+        try {
+            notificationSender.send(notification);
+            notificationMetrics.recordSend(notification, System.nanoTime() - started, true);
+            
+            notification.setStatus(Notification.NotificationStatus.SENT);
+            notification.setSentAt(LocalDateTime.now());
+            notification.setErrorMessage(null);
+            return true;
+        } catch (Exception e) {
+            notificationMetrics.recordSend(notification, System.nanoTime() - started, false);
+            recordFailure(notification, e);
+            return false;
+        }
+    }
+    
+    private int deliverEmails(List<Notification> emails) {
+        long started = System.nanoTime();
+        Map<Notification, Exception> failures = bulkEmailTransport.send(emails);
+        long duration = System.nanoTime() - started;
+        LocalDateTime sentAt = LocalDateTime.now();
+        
+        for (Notification email : emails) {
+            Exception failure = failures.get(email);
+            notificationMetrics.recordSend(email, duration, failure == null);
+            if (failure == null) {
+                email.setStatus(Notification.NotificationStatus.SENT);
+                email.setSentAt(sentAt);
+                email.setErrorMessage(null);
+            } else {
+                recordFailure(email, failure);
+            }
+        }
+        return failures.size();
+    }
+    
+    // The channel's circuit is open: try again once it half-opens, without counting an attempt
+    private void defer(Notification.NotificationType channel, List<Notification> notifications) {
+        LocalDateTime retryAt = notificationDispatcher.retryAt(channel);
+        for (Notification notification : notifications) {
+            notification.setNextAttemptAt(retryAt);
+        }
+        notificationMetrics.recordDeferred(channel, notifications.size());
+        log.debug("{} circuit open, deferred {} notifications until {}", channel, notifications.size(), retryAt);
+    }
+    
+    private void recordFailure(Notification notification, Exception e) {
+        int attempts = notification.getRetryCount() + 1;
+        notification.setRetryCount(attempts);
+        notification.setErrorMessage(truncate(notification.getNotificationType() + " sending failed: " + e.getMessage()));
+        
+        if (attempts >= maxAttempts) {
+            notification.setStatus(Notification.NotificationStatus.DEAD_LETTER);
+            // Frees the delivery, so a later fan-out of the release may try this user again
+            notification.setDedupSequence(null);
+            notificationMetrics.recordDeadLetter(notification);
+            log.warn("Notification {} to {} moved to dead letter after {} attempts", 
+                    notification.getId(), notification.getRecipient(), attempts, e);
+        } else {
+            notification.setNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(backoffMillis(attempts))));
+            notificationMetrics.recordRetry(notification);
+            log.info("Notification {} to {} failed (attempt {}), retrying later: {}", 
+                    notification.getId(), notification.getRecipient(), attempts, e.getMessage());
+        }
+    }
+    
+    // Exponential backoff capped at max-delay, with "equal jitter" so retries from one burst spread out
+    private long backoffMillis(int attempt) {
+        long exponential = Math.min(maxRetryDelay, retryDelay << Math.min(attempt - 1, 20));
+        long half = exponential / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+    
+    private String truncate(String message) {
+        return message.length() <= MAX_ERROR_MESSAGE_LENGTH ? message : message.substring(0, MAX_ERROR_MESSAGE_LENGTH);
+    }
+}
@@ -1,6 +1,9 @@
 package com.watchnotify.scheduler;
 
 import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.model.Notification;
+import com.watchnotify.service.NotificationJobService;
+import com.watchnotify.service.NotificationMetrics;
 import com.watchnotify.service.NotificationService;
 import com.watchnotify.service.WatchReleaseService;
 import lombok.RequiredArgsConstructor;
@@ -16,7 +19,9 @@ import java.util.List;
 public class NotificationScheduler {
     
     private final NotificationService notificationService;
+    private final NotificationJobService notificationJobService;
     private final WatchReleaseService watchReleaseService;
+    private final NotificationMetrics notificationMetrics;
     
     /**
      * Scheduled task to check for unnotified watch releases and send notifications
@@ -25,6 +30,7 @@ public class NotificationScheduler {
     @Scheduled(fixedRate = 1800000) // 30 minutes
     public void sendNotificationsForNewReleases() {
         log.info("Starting scheduled notification check for new watch releases");
+        NotificationMetrics.JobRun run = notificationMetrics.startJob("new-releases", Notification.NotificationKind.NEW_RELEASE);
         
         try {
             List<com.watchnotify.dto.WatchReleaseDto> unnotifiedReleases = watchReleaseService.getUnnotifiedReleases();
@@ -43,9 +49,10 @@ public class NotificationScheduler {
                 request.setSendSms(false);
                 request.setSendPush(true);
                 request.setCustomMessage("A new watch release is now available!");
+                request.setKind(Notification.NotificationKind.NEW_RELEASE);
                 
                 try {
-                    notificationService.sendWatchReleaseNotifications(request);
+                    run.track(notificationService.sendScheduledNotifications(request));
                     log.info("Sent notifications for watch release: {}", release.getWatchName());
                 } catch (Exception e) {
                     log.error("Failed to send notifications for watch release: {}", release.getWatchName(), e);
@@ -54,6 +61,8 @@ public class NotificationScheduler {
             
         } catch (Exception e) {
             log.error("Error in scheduled notification task", e);
+        } finally {
+            run.finish();
         }
     }
     
@@ -64,6 +73,7 @@ public class NotificationScheduler {
     @Scheduled(fixedRate = 3600000) // 1 hour
     public void sendRemindersForUpcomingReleases() {
         log.info("Starting scheduled reminder check for upcoming watch releases");
+        NotificationMetrics.JobRun run = notificationMetrics.startJob("reminders", Notification.NotificationKind.REMINDER);
         
         try {
             List<com.watchnotify.dto.WatchReleaseDto> upcomingReleases = watchReleaseService.getUpcomingReleases();
@@ -82,9 +92,10 @@ public class NotificationScheduler {
                 request.setSendSms(false);
                 request.setSendPush(true);
                 request.setCustomMessage("Don't miss out! This watch will be released soon.");
+                request.setKind(Notification.NotificationKind.REMINDER);
                 
                 try {
-                    notificationService.sendWatchReleaseNotifications(request);
+                    run.track(notificationService.sendScheduledNotifications(request));
                     log.info("Sent reminder notifications for upcoming release: {}", release.getWatchName());
                 } catch (Exception e) {
                     log.error("Failed to send reminder notifications for upcoming release: {}", release.getWatchName(), e);
@@ -93,6 +104,8 @@ public class NotificationScheduler {
             
         } catch (Exception e) {
             log.error("Error in scheduled reminder task", e);
+        } finally {
+            run.finish();
         }
     }
     
@@ -103,6 +116,7 @@ public class NotificationScheduler {
     @Scheduled(fixedRate = 900000) // 15 minutes
     public void sendNotificationsForLimitedEditions() {
         log.info("Starting scheduled notification check for limited edition releases");
+        NotificationMetrics.JobRun run = notificationMetrics.startJob("limited-editions", Notification.NotificationKind.LIMITED_EDITION);
         
         try {
             List<com.watchnotify.dto.WatchReleaseDto> limitedEditions = watchReleaseService.getLimitedEditionReleases();
@@ -122,9 +136,10 @@ public class NotificationScheduler {
                     request.setSendSms(true);
                     request.setSendPush(true);
                     request.setCustomMessage("Limited edition alert! Only " + release.getLimitedQuantity() + " pieces available.");
+                    request.setKind(Notification.NotificationKind.LIMITED_EDITION);
                     
                     try {
-                        notificationService.sendWatchReleaseNotifications(request);
+                        run.track(notificationService.sendScheduledNotifications(request));
                         log.info("Sent limited edition notifications for: {}", release.getWatchName());
                     } catch (Exception e) {
                         log.error("Failed to send limited edition notifications for: {}", release.getWatchName(), e);
@@ -134,6 +149,24 @@ public class NotificationScheduler {
             
         } catch (Exception e) {
             log.error("Error in scheduled limited edition notification task", e);
+        } finally {
+            run.finish();
+        }
+    }
+    
+    /**
+     * Starts fan-out jobs that are queued but not running, and takes over running jobs
+     * whose node stopped checkpointing them, e.g. after a restart. They resume from their
+     * last checkpoint.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.jobs.recovery-interval:60000}")
+    public void resumeFanOutJobs() {
+        try {
+            for (Long jobId : notificationJobService.findRunnableJobIds()) {
+                notificationService.runJob(jobId);
+            }
+        } catch (Exception e) {
+            log.error("Error resuming fan-out jobs", e);
         }
     }
 }
@@ -0,0 +1,359 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.model.User;
+import com.watchnotify.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory audience index: one compressed bitmap of user ids per preference value,
+ * per channel flag and for {@code isActive}. Resolving the recipients of a request is
+ * a handful of bitmap ANDs and ORs instead of an {@code EXISTS} query over
+ * {@code user_preferences}, and already excludes users who would get no message.
+ *
+ * <p>The index is rebuilt from the database once the application is ready and kept up
+ * to date by {@link UserService} after each committed change on this node. Changes made
+ * on other nodes are picked up every {@code refresh-interval} ms from {@code updated_at},
+ * re-reading {@code refresh-overlap} ms before the last refresh for transactions that
+ * committed late; deleted users are found by comparing the indexed ids with the table.
+ * The whole index is rebuilt every {@code rebuild-interval} ms. Until it is built, or if
+ * it is disabled, {@link #resolve} returns empty and callers fall back to the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AudienceIndex {
+    
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${app.notification.audience-index.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.notification.audience-index.refresh-overlap:60000}")
+    private long refreshOverlap;
+    
+    @Value("${app.notification.audience-index.rebuild-interval:3600000}")
+    private long rebuildInterval;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final RoaringBitmap present = new RoaringBitmap();
+    private final RoaringBitmap active = new RoaringBitmap();
+    private final RoaringBitmap email = new RoaringBitmap();
+    private final RoaringBitmap sms = new RoaringBitmap();
+    private final RoaringBitmap push = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> byPreference = new HashMap<>();
+    
+    private volatile boolean ready;
+    
+    // Local clock time the last load started reading; rows changed after it are not yet indexed
+    private LocalDateTime loadedAt;
+    private long rebuiltAt;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        if (!enabled) {
+            log.info("Audience index disabled, recipients are resolved from the database");
+            return;
+        }
+        
+        rebuiltAt = System.currentTimeMillis();
+        LocalDateTime startedAt = LocalDateTime.now();
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            clear();
+            boolean complete = Boolean.TRUE.equals(transactionTemplate.execute(status -> load()));
+            ready = complete;
+            if (complete) {
+                loadedAt = startedAt;
+                log.info("Built audience index: {} active users, {} preference values",
+                        active.getLongCardinality(), byPreference.size());
+            } else {
+                clear();
+                log.warn("User ids exceed the audience index range, recipients are resolved from the database");
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private boolean load() {
+        try (Stream<Object[]> rows = userRepository.streamAudienceFlags()) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                if (!index(row)) {
+                    return false;
+                }
+            }
+        }
+        try (Stream<Object[]> rows = userRepository.streamPreferences()) {
+            rows.forEach(this::indexPreference);
+        }
+        return true;
+    }
+    
+    /**
+     * Applies the users changed on any node since the last load and drops deleted users.
+     * Once {@code rebuild-interval} ms have passed since the last rebuild the whole index
+     * is rebuilt instead, which is also when an index given up on is tried again.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.audience-index.refresh-interval:30000}",
+               initialDelayString = "${app.notification.audience-index.refresh-interval:30000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        if (System.currentTimeMillis() - rebuiltAt >= rebuildInterval) {
+            rebuild();
+            return;
+        }
+        if (!ready) {
+            return;
+        }
+        
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = loadedAt.minus(Duration.ofMillis(refreshOverlap));
+        Changes changes = transactionTemplate.execute(status -> new Changes(
+                userRepository.findAudienceFlagsUpdatedSince(since),
+                userRepository.findPreferencesUpdatedSince(since),
+                userRepository.count()));
+        
+        boolean stale;
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : changes.flags()) {
+                Long id = (Long) row[0];
+                if (!indexable(id)) {
+                    ready = false;
+                    clear();
+                    log.warn("User ids exceed the audience index range, recipients are resolved from the database");
+                    return;
+                }
+                removeFromAll(id.intValue());
+                index(row);
+            }
+            changes.preferences().forEach(this::indexPreference);
+            stale = present.getLongCardinality() > changes.userCount();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        if (stale) {
+            removeDeleted();
+        }
+        loadedAt = startedAt;
+        if (!changes.flags().isEmpty()) {
+            log.debug("Refreshed audience index: {} changed users", changes.flags().size());
+        }
+    }
+    
+    // Users created on this node after the ids were read may be dropped here; they are
+    // indexed again by the next refresh, which re-reads them within the overlap
+    private void removeDeleted() {
+        RoaringBitmap stored = new RoaringBitmap();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Long> ids = userRepository.streamIds()) {
+                ids.filter(AudienceIndex::indexable).forEach(id -> stored.add(id.intValue()));
+            }
+        });
+        
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap deleted = RoaringBitmap.andNot(present, stored);
+            deleted.forEach((int userId) -> removeFromAll(userId));
+            log.debug("Removed {} deleted users from the audience index", deleted.getLongCardinality());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Row as returned by streamAudienceFlags; false if the id does not fit the index
+    private boolean index(Object[] row) {
+        Long id = (Long) row[0];
+        if (!indexable(id)) {
+            return false;
+        }
+        int userId = id.intValue();
+        present.add(userId);
+        set(active, userId, (Boolean) row[1]);
+        set(email, userId, (Boolean) row[2]);
+        set(sms, userId, Boolean.TRUE.equals(row[3]) && Boolean.TRUE.equals(row[4]));
+        set(push, userId, (Boolean) row[5]);
+        return true;
+    }
+    
+    private void indexPreference(Object[] row) {
+        byPreference.computeIfAbsent((String) row[1], preference -> new RoaringBitmap())
+                .add(((Long) row[0]).intValue());
+    }
+    
+    /**
+     * Resolves the ids of the users a request should reach, mirroring the recipient
+     * queries: a category filter matches any of the categories, a brand filter also
+     * requires email to be enabled, and the user must have at least one requested
+     * channel enabled.
+     *
+     * @return the matching user ids, or empty if the index is not available
+     */
+    public Optional<RoaringBitmap> resolve(NotificationRequestDto request) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        
+        lock.readLock().lock();
+        try {
+            RoaringBitmap channels = new RoaringBitmap();
+            if (Boolean.TRUE.equals(request.getSendEmail())) {
+                channels.or(email);
+            }
+            if (Boolean.TRUE.equals(request.getSendSms())) {
+                channels.or(sms);
+            }
+            if (Boolean.TRUE.equals(request.getSendPush())) {
+                channels.or(push);
+            }
+            
+            RoaringBitmap audience = RoaringBitmap.and(active, channels);
+            if (request.getCategories() != null && !request.getCategories().isEmpty()) {
+                audience.and(anyOf(request.getCategories()));
+            } else if (request.getBrands() != null && !request.getBrands().isEmpty()) {
+                audience.and(email);
+                audience.and(anyOf(request.getBrands()));
+            }
+            return Optional.of(audience);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private RoaringBitmap anyOf(Collection<String> preferences) {
+        RoaringBitmap matches = new RoaringBitmap();
+        for (String preference : preferences) {
+            RoaringBitmap users = byPreference.get(preference);
+            if (users != null) {
+                matches.or(users);
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * Records a created or updated user once the current transaction commits.
+     */
+    public void userSaved(User user) {
+        Long id = user.getId();
+        boolean isActive = Boolean.TRUE.equals(user.getIsActive());
+        boolean emailEnabled = Boolean.TRUE.equals(user.getEmailNotificationsEnabled());
+        boolean smsEnabled = Boolean.TRUE.equals(user.getSmsNotificationsEnabled()) && user.getPhoneNumber() != null;
+        boolean pushEnabled = Boolean.TRUE.equals(user.getPushNotificationsEnabled());
+        Set<String> preferences = user.getPreferences() != null ? Set.copyOf(user.getPreferences()) : Set.of();
+        
+        afterCommit(() -> {
+            if (!indexable(id)) {
+                ready = false;
+                return;
+            }
+            int userId = id.intValue();
+            removeFromAll(userId);
+            present.add(userId);
+            set(active, userId, isActive);
+            set(email, userId, emailEnabled);
+            set(sms, userId, smsEnabled);
+            set(push, userId, pushEnabled);
+            for (String preference : preferences) {
+                byPreference.computeIfAbsent(preference, key -> new RoaringBitmap()).add(userId);
+            }
+        });
+    }
+    
+    /**
+     * Removes a deleted user once the current transaction commits.
+     */
+    public void userDeleted(Long id) {
+        afterCommit(() -> {
+            if (indexable(id)) {
+                removeFromAll(id.intValue());
+            }
+        });
+    }
+    
+    private void afterCommit(Runnable update) {
+        if (!enabled) {
+            return;
+        }
+        
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                update.run();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    locked.run();
+                }
+            });
+        } else {
+            locked.run();
+        }
+    }
+    
+    private void removeFromAll(int userId) {
+        present.remove(userId);
+        active.remove(userId);
+        email.remove(userId);
+        sms.remove(userId);
+        push.remove(userId);
+        byPreference.values().forEach(users -> users.remove(userId));
+    }
+    
+    private void clear() {
+        present.clear();
+        active.clear();
+        email.clear();
+        sms.clear();
+        push.clear();
+        byPreference.clear();
+    }
+    
+    private static void set(RoaringBitmap bitmap, int userId, Boolean flag) {
+        if (Boolean.TRUE.equals(flag)) {
+            bitmap.add(userId);
+        }
+    }
+    
+    private record Changes(List<Object[]> flags, List<Object[]> preferences, long userCount) {
+    }
+    
+    private static boolean indexable(Long id) {
+        return id != null && id >= 0 && id <= Integer.MAX_VALUE;
+    }
+}
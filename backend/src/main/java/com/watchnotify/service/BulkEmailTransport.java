@@ -0,0 +1,131 @@
+package com.watchnotify.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.watchnotify.model.Notification;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sends email notifications in batches over a single SMTP connection per batch,
+ * using {@link JavaMailSender#send(SimpleMailMessage...)} so the connect, STARTTLS
+ * handshake and authentication are paid once per batch instead of once per message.
+ *
+ * <p>Callers split their work with {@link #partition(List)}, which groups messages by
+ * recipient domain and caps the number of messages sent over one connection. The
+ * number of connections open at once is bounded by the dispatcher's email concurrency
+ * limit; the number of concurrent connections to any one domain is bounded here.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BulkEmailTransport {
+    
+    private final JavaMailSender emailSender;
+    
+    @Value("${app.notification.email.bulk.messages-per-connection:50}")
+    private int messagesPerConnection;
+    
+    @Value("${app.notification.email.bulk.max-connections-per-domain:4}")
+    private int maxConnectionsPerDomain;
+    
+    // Weakly held, so only domains with a send in progress keep an entry; a semaphore is
+    // never dropped while a sender still holds it, so the per-domain cap always holds
+    private final Cache<String, Semaphore> domainPermits = Caffeine.newBuilder().weakValues().build();
+    
+    /**
+     * Splits email notifications into per-connection batches, each holding messages
+     * for a single recipient domain.
+     */
+    public List<List<Notification>> partition(List<Notification> emails) {
+        Map<String, List<Notification>> byDomain = new LinkedHashMap<>();
+        for (Notification email : emails) {
+            byDomain.computeIfAbsent(domainOf(email.getRecipient()), domain -> new ArrayList<>()).add(email);
+        }
+        
+        List<List<Notification>> batches = new ArrayList<>();
+        for (List<Notification> domainEmails : byDomain.values()) {
+            for (int start = 0; start < domainEmails.size(); start += messagesPerConnection) {
+                batches.add(domainEmails.subList(start, Math.min(start + messagesPerConnection, domainEmails.size())));
+            }
+        }
+        return batches;
+    }
+    
+    /**
+     * Sends a batch produced by {@link #partition(List)} over one connection.
+     *
+     * @return the notifications that could not be sent, with the reason for each
+     */
+    public Map<Notification, Exception> send(List<Notification> batch) {
+        Map<Notification, Exception> failures = new IdentityHashMap<>();
+        if (batch.isEmpty()) {
+            return failures;
+        }
+        
+        IdentityHashMap<SimpleMailMessage, Notification> messages = new IdentityHashMap<>();
+        for (Notification notification : batch) {
+            messages.put(toMessage(notification), notification);
+        }
+        
+        String domain = domainOf(batch.get(0).getRecipient());
+        Semaphore permits = domainPermits.get(domain, d -> new Semaphore(maxConnectionsPerDomain));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(notification -> failures.put(notification, e));
+            return failures;
+        }
+        
+        try {
+            emailSender.send(messages.keySet().toArray(new SimpleMailMessage[0]));
+            log.info("Sent {} email notifications to {} over one connection", batch.size(), domain);
+        } catch (MailSendException e) {
+            // Failed messages are keyed by the original message instance
+            e.getFailedMessages().forEach((message, cause) -> {
+                Notification notification = messages.get(message);
+                if (notification != null) {
+                    failures.put(notification, cause);
+                }
+            });
+            if (failures.isEmpty()) {
+                batch.forEach(notification -> failures.put(notification, e));
+            }
+            log.warn("{} of {} email notifications to {} failed: {}", failures.size(), batch.size(), domain, e.getMessage());
+        } catch (MailException e) {
+            batch.forEach(notification -> failures.put(notification, e));
+            log.warn("Email batch of {} to {} failed: {}", batch.size(), domain, e.getMessage());
+        } finally {
+            permits.release();
+        }
+        return failures;
+    }
+    
+    private SimpleMailMessage toMessage(Notification notification) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(notification.getRecipient());
+        message.setSubject(notification.getSubject());
+        message.setText(notification.getMessage());
+        return message;
+    }
+    
+    private String domainOf(String address) {
+        int at = address != null ? address.lastIndexOf('@') : -1;
+        return at >= 0 ? address.substring(at + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
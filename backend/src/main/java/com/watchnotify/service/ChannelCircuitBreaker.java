@@ -0,0 +1,113 @@
+package com.watchnotify.service;
+
+import com.watchnotify.config.ChannelLimitsProperties;
+import com.watchnotify.model.Notification;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Circuit breaker for one outbound channel. After {@code failure-threshold} consecutive
+ * sends in which every message failed, the channel is opened: sends are refused without
+ * calling the provider until {@code open-duration} has passed. Then a single trial send
+ * is let through (half-open); its success closes the channel, its failure opens it again.
+ */
+@Slf4j
+final class ChannelCircuitBreaker {
+    
+    enum State { CLOSED, HALF_OPEN, OPEN }
+    
+    private final Notification.NotificationType channel;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private LocalDateTime openUntil = LocalDateTime.MIN;
+    private boolean trialInFlight;
+    
+    ChannelCircuitBreaker(Notification.NotificationType channel, ChannelLimitsProperties.CircuitBreaker settings) {
+        this.channel = channel;
+        this.failureThreshold = Math.max(1, settings.getFailureThreshold());
+        this.openDuration = Duration.ofMillis(settings.getOpenDuration());
+    }
+    
+    /**
+     * Whether a send would currently be let through, without claiming the half-open trial.
+     */
+    synchronized boolean isAvailable() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> !trialInFlight;
+            case OPEN -> !LocalDateTime.now().isBefore(openUntil);
+        };
+    }
+    
+    /**
+     * Claims permission for one send. Every permitted send must be followed by
+     * {@link #record} or {@link #abandon}.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && !LocalDateTime.now().isBefore(openUntil)) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+            case OPEN -> false;
+        };
+    }
+    
+    /**
+     * Returns the permission of a send that was never made, without recording an outcome.
+     */
+    synchronized void abandon() {
+        trialInFlight = false;
+    }
+    
+    /**
+     * Records the outcome of a permitted send; {@code failed} means none of its messages
+     * went out.
+     */
+    synchronized void record(boolean failed) {
+        if (!failed) {
+            if (state != State.CLOSED) {
+                log.info("{} channel recovered, closing circuit", channel);
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            return;
+        }
+        
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntil = LocalDateTime.now().plus(openDuration);
+            trialInFlight = false;
+            log.warn("{} channel failing ({} consecutive failed sends), opening circuit for {} ms",
+                    channel, consecutiveFailures, openDuration.toMillis());
+        }
+    }
+    
+    /**
+     * When sends refused now should be attempted again: the end of the open period, or
+     * immediately if the channel is closed or half-open.
+     */
+    synchronized LocalDateTime retryAt() {
+        LocalDateTime now = LocalDateTime.now();
+        return openUntil.isAfter(now) ? openUntil : now;
+    }
+    
+    synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,156 @@
+package com.watchnotify.service;
+
+import com.watchnotify.config.ChannelLimitsProperties;
+import com.watchnotify.model.Notification;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for one outbound channel: a token bucket enforces the provider's
+ * hard rate cap, and an AIMD concurrency limit adapts to its soft limits.
+ *
+ * <p>Every send that completes without trouble raises the concurrency limit by
+ * {@code 1 / limit} (about one per round of sends). When the smoothed error rate or the
+ * per-message latency of a send crosses its threshold, the limit is multiplied by the
+ * backoff factor, at most once per backoff interval, but never below the minimum.
+ */
+@Slf4j
+final class ChannelGovernor {
+    
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Weight of a single message in the smoothed error rate
+    private static final double ERROR_RATE_WEIGHT = 0.05;
+    
+    private final Notification.NotificationType channel;
+    private final ChannelLimitsProperties.Limits limits;
+    private final double burst;
+    private final long latencyThresholdNanos;
+    private final long backoffIntervalNanos;
+    
+    private double concurrencyLimit;
+    private int inFlight;
+    private double tokens;
+    private long refilledAt;
+    private double errorRate;
+    private long lastBackoffAt;
+    
+    private long windowStart;
+    private long windowMessages;
+    private double measuredRate;
+    
+    ChannelGovernor(Notification.NotificationType channel, ChannelLimitsProperties.Limits limits) {
+        if (limits.getMinConcurrency() < 1 || limits.getMaxConcurrency() < limits.getMinConcurrency()) {
+            throw new IllegalArgumentException("Invalid " + channel + " concurrency limits: min "
+                    + limits.getMinConcurrency() + ", max " + limits.getMaxConcurrency());
+        }
+        this.channel = channel;
+        this.limits = limits;
+        this.burst = limits.getBurst() > 0 ? limits.getBurst() : Math.max(1, Math.ceil(limits.getRate()));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(limits.getLatencyThreshold());
+        this.backoffIntervalNanos = TimeUnit.MILLISECONDS.toNanos(limits.getBackoffInterval());
+        
+        long now = System.nanoTime();
+        this.concurrencyLimit = limits.getMaxConcurrency();
+        this.tokens = burst;
+        this.refilledAt = now;
+        this.lastBackoffAt = now - backoffIntervalNanos;
+        this.windowStart = now;
+    }
+    
+    /**
+     * Blocks until a send of {@code messages} messages may start: the channel must be
+     * below its concurrency limit and the bucket must hold enough tokens. A send larger
+     * than the burst only waits for a full bucket and leaves it in debt.
+     */
+    synchronized void acquire(int messages) throws InterruptedException {
+        double needed = Math.min(messages, burst);
+        while (true) {
+            if (inFlight < (int) concurrencyLimit) {
+                if (!rateLimited()) {
+                    break;
+                }
+                refill();
+                if (tokens >= needed) {
+                    tokens -= messages;
+                    break;
+                }
+                long waitNanos = (long) Math.ceil((needed - tokens) * RATE_WINDOW_NANOS / limits.getRate());
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, 1));
+            } else {
+                wait();
+            }
+        }
+        inFlight++;
+    }
+    
+    /**
+     * Records the outcome of a send started with {@link #acquire} and adjusts the
+     * concurrency limit.
+     */
+    synchronized void release(int messages, int failures, long latencyNanos) {
+        inFlight--;
+        long now = System.nanoTime();
+        recordRate(now, messages);
+        
+        if (messages > 0) {
+            double weight = Math.min(1.0, messages * ERROR_RATE_WEIGHT);
+            errorRate += weight * ((double) failures / messages - errorRate);
+        }
+        boolean slow = messages > 0 && latencyNanos / messages > latencyThresholdNanos;
+        
+        if (errorRate > limits.getErrorThreshold() || slow) {
+            if (now - lastBackoffAt >= backoffIntervalNanos && concurrencyLimit > limits.getMinConcurrency()) {
+                lastBackoffAt = now;
+                concurrencyLimit = Math.max(limits.getMinConcurrency(), concurrencyLimit * limits.getBackoffFactor());
+                log.info("Backing off {} dispatch to {} concurrent sends (error rate {}, {} ms per message)",
+                        channel, (int) concurrencyLimit, String.format("%.2f", errorRate),
+                        TimeUnit.NANOSECONDS.toMillis(latencyNanos / Math.max(messages, 1)));
+            }
+        } else {
+            concurrencyLimit = Math.min(limits.getMaxConcurrency(), concurrencyLimit + 1.0 / concurrencyLimit);
+        }
+        notifyAll();
+    }
+    
+    synchronized int concurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+    
+    synchronized int inFlight() {
+        return inFlight;
+    }
+    
+    /**
+     * Messages per second completed over the last full one-second window.
+     */
+    synchronized double rate() {
+        recordRate(System.nanoTime(), 0);
+        return measuredRate;
+    }
+    
+    double rateLimit() {
+        return limits.getRate();
+    }
+    
+    private boolean rateLimited() {
+        return limits.getRate() > 0;
+    }
+    
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * limits.getRate() / RATE_WINDOW_NANOS);
+        refilledAt = now;
+    }
+    
+    private void recordRate(long now, int messages) {
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            // A window with no completions in between means the rate has dropped to zero
+            measuredRate = elapsed < 2 * RATE_WINDOW_NANOS ? windowMessages * (double) RATE_WINDOW_NANOS / elapsed : 0;
+            windowStart = now;
+            windowMessages = 0;
+        }
+        windowMessages += messages;
+    }
+}
@@ -0,0 +1,512 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.DeliveryCounterNode;
+import com.watchnotify.model.Notification;
+import com.watchnotify.repository.DeliveryCounterNodeRepository;
+import com.watchnotify.repository.DeliveryCounterRepository;
+import com.watchnotify.repository.NotificationPartitionArchiveRepository;
+import com.watchnotify.repository.NotificationRepository;
+import com.watchnotify.repository.UserRepository;
+import com.watchnotify.repository.WatchReleaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Notification counts per user and per release, split by channel and status, kept up
+ * to date incrementally instead of counted from the notifications table.
+ *
+ * <p>Status changes are recorded as deltas on striped {@link LongAdder}s once the
+ * transaction that made them commits, and flushed to {@code delivery_counters} on a
+ * fixed interval. Reads add the unflushed deltas to the stored totals. A reconciliation
+ * job periodically recounts the notifications table, a chunk of ids at a time, and
+ * corrects any counter that has drifted, e.g. after a node died with unflushed deltas.
+ * Counts cover the notifications still in the table: archiving a partition takes its
+ * rows off them. Notifications without a channel (fan-out failures) are not counted.
+ *
+ * <p>Each flush records in {@code delivery_counter_nodes} the time its deltas were taken
+ * out, and the transactions that record deltas hold off that moment while they commit,
+ * so every change committed before it is in the counters. Reconciliation only corrects
+ * users and releases whose notifications were all created and settled before the
+ * oldest such time of the live nodes, less {@code reconcile-grace}; the others may still
+ * have deltas in flight on some node and are left for a later run.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DeliveryCounters {
+    
+    private static final int CHUNK_SIZE = 500;
+    
+    private final DeliveryCounterRepository deliveryCounterRepository;
+    private final NotificationRepository notificationRepository;
+    private final UserRepository userRepository;
+    private final WatchReleaseRepository watchReleaseRepository;
+    private final DeliveryCounterNodeRepository nodeRepository;
+    private final NotificationPartitionArchiveRepository partitionArchiveRepository;
+    private final FanoutLeaseService fanoutLeaseService;
+    private final TransactionTemplate transactionTemplate;
+    
+    // Longest a transaction may take from stamping a notification to committing, plus clock skew between nodes
+    @Value("${app.notification.counters.reconcile-grace:60000}")
+    private long reconcileGrace;
+    
+    // A node that has not flushed for this long is gone, along with its unflushed deltas
+    @Value("${app.notification.counters.node-timeout:300000}")
+    private long nodeTimeout;
+    
+    // Held shared while recording deltas, from before a transaction commits until they are
+    // recorded, and exclusively while taking them out
+    private final ReadWriteLock deltaLock = new ReentrantReadWriteLock();
+    
+    // Serializes flushes, so a flush only records its time once the deltas taken before it are stored
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    private Map<CounterKey, LongAdder> deltas = new ConcurrentHashMap<>();
+    
+    /**
+     * Counts newly stored notifications in their current status.
+     */
+    public void recordCreated(Collection<Notification> notifications) {
+        List<Change> changes = new ArrayList<>(notifications.size());
+        for (Notification notification : notifications) {
+            changes.add(Change.of(notification, null));
+        }
+        record(changes);
+    }
+    
+    /**
+     * Moves every notification whose status is no longer {@code from} from that status's
+     * counts to its current status's counts.
+     */
+    public void recordStatusChanges(Collection<Notification> notifications, Notification.NotificationStatus from) {
+        List<Change> changes = new ArrayList<>();
+        for (Notification notification : notifications) {
+            if (notification.getStatus() != from) {
+                changes.add(Change.of(notification, from));
+            }
+        }
+        record(changes);
+    }
+    
+    /**
+     * Takes {@code count} notifications of a user or release that were archived out of
+     * the notifications table off its counts.
+     */
+    public void recordArchived(DeliveryCounter.Scope scope, Long scopeId, Notification.NotificationType channel,
+                               Notification.NotificationStatus status, long count) {
+        deltaLock.readLock().lock();
+        try {
+            add(scope, scopeId, channel, status, -count);
+        } finally {
+            deltaLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Moves notifications changed by a set-based update, given as
+     * [scopeId, notificationType, count] rows, from status {@code from} to {@code to}.
+     */
+    public void recordStatusChanges(DeliveryCounter.Scope scope, List<Object[]> counts,
+                                    Notification.NotificationStatus from, Notification.NotificationStatus to) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            for (Object[] row : counts) {
+                Long scopeId = (Long) row[0];
+                Notification.NotificationType channel = (Notification.NotificationType) row[1];
+                long count = (Long) row[2];
+                add(scope, scopeId, channel, from, -count);
+                add(scope, scopeId, channel, to, count);
+            }
+        });
+    }
+    
+    private void record(List<Change> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            for (Change change : changes) {
+                change.applyTo(this);
+            }
+        });
+    }
+    
+    private void afterCommit(Runnable changes) {
+        Runnable apply = () -> {
+            deltaLock.readLock().lock();
+            try {
+                changes.run();
+            } finally {
+                deltaLock.readLock().unlock();
+            }
+        };
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // A flush taking the deltas out waits for a committing transaction's deltas,
+            // so a change committed before the flush is never left out of it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private boolean committing;
+                
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    deltaLock.readLock().lock();
+                    committing = true;
+                }
+                
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    if (committing) {
+                        deltaLock.readLock().unlock();
+                    }
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+    
+    private void add(DeliveryCounter.Scope scope, Long scopeId, Notification.NotificationType channel,
+                     Notification.NotificationStatus status, long delta) {
+        if (scopeId != null && channel != null && status != null) {
+            deltas.computeIfAbsent(new CounterKey(scope, scopeId, channel, status), key -> new LongAdder()).add(delta);
+        }
+    }
+    
+    /**
+     * Number of notifications of a user or release in {@code status}, over all channels.
+     */
+    public long count(DeliveryCounter.Scope scope, Long scopeId, Notification.NotificationStatus status) {
+        long unflushed = 0;
+        deltaLock.readLock().lock();
+        try {
+            for (Notification.NotificationType channel : Notification.NotificationType.values()) {
+                unflushed += unflushed(new CounterKey(scope, scopeId, channel, status));
+            }
+        } finally {
+            deltaLock.readLock().unlock();
+        }
+        return deliveryCounterRepository.sumByStatus(scope, scopeId, status) + unflushed;
+    }
+    
+    /**
+     * Non-zero notification counts of a user or release, by channel and status.
+     */
+    public Map<Notification.NotificationType, Map<Notification.NotificationStatus, Long>> breakdown(
+            DeliveryCounter.Scope scope, Long scopeId) {
+        Map<Notification.NotificationType, Map<Notification.NotificationStatus, Long>> counts =
+                new EnumMap<>(Notification.NotificationType.class);
+        for (DeliveryCounter counter : deliveryCounterRepository.findByScopeAndScopeId(scope, scopeId)) {
+            counts.computeIfAbsent(counter.getNotificationType(),
+                    channel -> new EnumMap<>(Notification.NotificationStatus.class))
+                    .merge(counter.getStatus(), counter.getTotal(), Long::sum);
+        }
+        
+        deltaLock.readLock().lock();
+        try {
+            for (Notification.NotificationType channel : Notification.NotificationType.values()) {
+                for (Notification.NotificationStatus status : Notification.NotificationStatus.values()) {
+                    long unflushed = unflushed(new CounterKey(scope, scopeId, channel, status));
+                    if (unflushed != 0) {
+                        counts.computeIfAbsent(channel, c -> new EnumMap<>(Notification.NotificationStatus.class))
+                                .merge(status, unflushed, Long::sum);
+                    }
+                }
+            }
+        } finally {
+            deltaLock.readLock().unlock();
+        }
+        
+        counts.values().forEach(byStatus -> byStatus.values().removeIf(total -> total == 0));
+        counts.values().removeIf(Map::isEmpty);
+        return counts;
+    }
+    
+    private long unflushed(CounterKey key) {
+        LongAdder delta = deltas.get(key);
+        return delta != null ? delta.sum() : 0;
+    }
+    
+    /**
+     * Adds the deltas recorded since the last flush to the stored counters.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.counters.flush-interval:5000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<CounterKey, LongAdder> taken;
+            LocalDateTime takenAt;
+            deltaLock.writeLock().lock();
+            try {
+                taken = deltas;
+                deltas = new ConcurrentHashMap<>();
+                takenAt = LocalDateTime.now();
+            } finally {
+                deltaLock.writeLock().unlock();
+            }
+            
+            boolean stored = true;
+            for (Map<CounterKey, Long> chunk : chunks(taken)) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persist(chunk));
+                } catch (Exception e) {
+                    // Typically another node inserting the same new counter; keep the deltas for the next flush
+                    log.warn("Could not flush {} delivery counters, retrying on the next flush", chunk.size(), e);
+                    stored = false;
+                    deltaLock.readLock().lock();
+                    try {
+                        chunk.forEach((key, delta) -> add(key.scope(), key.scopeId(), key.channel(), key.status(), delta));
+                    } finally {
+                        deltaLock.readLock().unlock();
+                    }
+                }
+            }
+            if (stored) {
+                recordFlushed(takenAt);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    private void recordFlushed(LocalDateTime takenAt) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    nodeRepository.save(new DeliveryCounterNode(fanoutLeaseService.getNodeId(), takenAt)));
+        } catch (Exception e) {
+            log.warn("Could not record the delivery counter flush, recording it on the next flush", e);
+        }
+    }
+    
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+    
+    // Non-zero deltas grouped into chunks of at most CHUNK_SIZE ids of a single scope
+    private static List<Map<CounterKey, Long>> chunks(Map<CounterKey, LongAdder> taken) {
+        Map<DeliveryCounter.Scope, TreeMap<Long, Map<CounterKey, Long>>> byScopeId = new EnumMap<>(DeliveryCounter.Scope.class);
+        taken.forEach((key, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                byScopeId.computeIfAbsent(key.scope(), scope -> new TreeMap<>())
+                        .computeIfAbsent(key.scopeId(), id -> new HashMap<>())
+                        .put(key, delta);
+            }
+        });
+        
+        List<Map<CounterKey, Long>> chunks = new ArrayList<>();
+        for (TreeMap<Long, Map<CounterKey, Long>> scopeDeltas : byScopeId.values()) {
+            Map<CounterKey, Long> chunk = new HashMap<>();
+            int ids = 0;
+            for (Map<CounterKey, Long> idDeltas : scopeDeltas.values()) {
+                chunk.putAll(idDeltas);
+                if (++ids == CHUNK_SIZE) {
+                    chunks.add(chunk);
+                    chunk = new HashMap<>();
+                    ids = 0;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+    
+    private void persist(Map<CounterKey, Long> chunk) {
+        DeliveryCounter.Scope scope = chunk.keySet().iterator().next().scope();
+        Set<Long> scopeIds = new HashSet<>();
+        chunk.keySet().forEach(key -> scopeIds.add(key.scopeId()));
+        Map<CounterKey, DeliveryCounter> stored = lockCounters(scope, scopeIds);
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<DeliveryCounter> created = new ArrayList<>();
+        chunk.forEach((key, delta) -> {
+            DeliveryCounter counter = stored.get(key);
+            if (counter != null) {
+                counter.setTotal(counter.getTotal() + delta);
+                counter.setUpdatedAt(now);
+            } else {
+                created.add(key.newCounter(delta, now));
+            }
+        });
+        deliveryCounterRepository.saveAll(created);
+    }
+    
+    private Map<CounterKey, DeliveryCounter> lockCounters(DeliveryCounter.Scope scope, Collection<Long> scopeIds) {
+        Map<CounterKey, DeliveryCounter> counters = new HashMap<>();
+        for (DeliveryCounter counter : deliveryCounterRepository.lockByScopeIds(scope, scopeIds)) {
+            counters.put(CounterKey.of(counter), counter);
+        }
+        return counters;
+    }
+    
+    /**
+     * Recounts every user's and release's notifications and corrects the counters that
+     * disagree with the notifications table, skipping those that may have deltas in flight.
+     */
+    @Scheduled(initialDelayString = "${app.notification.counters.reconcile-interval:3600000}",
+               fixedDelayString = "${app.notification.counters.reconcile-interval:3600000}")
+    public void reconcile() {
+        LocalDateTime settledBefore = settledBefore();
+        if (settledBefore == null) {
+            log.debug("No node has flushed its delivery counters yet, skipping reconciliation");
+            return;
+        }
+        if (partitionArchiveRepository.existsByArchivedAtIsNullOrArchivedAtGreaterThanEqual(settledBefore)) {
+            log.info("A notification partition is being archived, skipping delivery counter reconciliation");
+            return;
+        }
+        
+        long drifted = reconcile(DeliveryCounter.Scope.USER, userRepository::findIdsAfter,
+                notificationRepository::countByUsers, notificationRepository::findUsersChangedSince, settledBefore)
+                + reconcile(DeliveryCounter.Scope.RELEASE, watchReleaseRepository::findIdsAfter,
+                notificationRepository::countByReleases, notificationRepository::findReleasesChangedSince,
+                settledBefore);
+        if (drifted > 0) {
+            log.info("Reconciled {} drifted delivery counters", drifted);
+        } else {
+            log.debug("Delivery counters are consistent with the notifications table");
+        }
+    }
+    
+    // Every change stamped before this was committed before the last flush of every live node
+    private LocalDateTime settledBefore() {
+        LocalDateTime aliveSince = LocalDateTime.now().minus(Duration.ofMillis(nodeTimeout));
+        return transactionTemplate.execute(status -> {
+            nodeRepository.deleteGone(aliveSince);
+            return nodeRepository.findEarliestFlushSince(aliveSince)
+                    .map(flushed -> flushed.minus(Duration.ofMillis(reconcileGrace)))
+                    .orElse(null);
+        });
+    }
+    
+    private long reconcile(DeliveryCounter.Scope scope, BiFunction<Long, Pageable, List<Long>> idsAfter,
+                           Function<Collection<Long>, List<Object[]>> recount,
+                           BiFunction<Collection<Long>, LocalDateTime, List<Long>> changedSince,
+                           LocalDateTime settledBefore) {
+        Pageable page = PageRequest.of(0, CHUNK_SIZE);
+        long drifted = 0;
+        Long after = 0L;
+        while (true) {
+            List<Long> ids = idsAfter.apply(after, page);
+            if (!ids.isEmpty()) {
+                drifted += reconcileChunk(scope, ids, recount, changedSince, settledBefore);
+            }
+            if (ids.size() < CHUNK_SIZE) {
+                return drifted;
+            }
+            after = ids.get(ids.size() - 1);
+        }
+    }
+    
+    // The counters of a settled id have no deltas left on any node, so they must equal the recount.
+    // Locking them first holds off flushes; a change committed after the recount is flushed on top.
+    private int reconcileChunk(DeliveryCounter.Scope scope, List<Long> ids,
+                               Function<Collection<Long>, List<Object[]>> recount,
+                               BiFunction<Collection<Long>, LocalDateTime, List<Long>> changedSince,
+                               LocalDateTime settledBefore) {
+        Integer drifted = transactionTemplate.execute(status -> {
+            Map<CounterKey, DeliveryCounter> stored = lockCounters(scope, ids);
+            Map<CounterKey, Long> actual = new HashMap<>();
+            for (Object[] row : recount.apply(ids)) {
+                actual.put(new CounterKey(scope, (Long) row[0], (Notification.NotificationType) row[1],
+                        (Notification.NotificationStatus) row[2]), (Long) row[3]);
+            }
+            // Checked after the recount, so it covers every change the recount saw
+            Set<Long> unsettled = new HashSet<>(changedSince.apply(ids, settledBefore));
+            
+            Set<CounterKey> keys = new HashSet<>(actual.keySet());
+            keys.addAll(stored.keySet());
+            LocalDateTime now = LocalDateTime.now();
+            List<DeliveryCounter> created = new ArrayList<>();
+            int corrected = 0;
+            for (CounterKey key : keys) {
+                if (unsettled.contains(key.scopeId())) {
+                    continue;
+                }
+                long expected = actual.getOrDefault(key, 0L);
+                DeliveryCounter counter = stored.get(key);
+                if (counter == null && expected != 0) {
+                    created.add(key.newCounter(expected, now));
+                    corrected++;
+                } else if (counter != null && counter.getTotal() != expected) {
+                    counter.setTotal(expected);
+                    counter.setUpdatedAt(now);
+                    corrected++;
+                }
+            }
+            deliveryCounterRepository.saveAll(created);
+            return corrected;
+        });
+        return drifted != null ? drifted : 0;
+    }
+    
+    private record CounterKey(DeliveryCounter.Scope scope, Long scopeId, Notification.NotificationType channel,
+                              Notification.NotificationStatus status) {
+        
+        static CounterKey of(DeliveryCounter counter) {
+            return new CounterKey(counter.getScope(), counter.getScopeId(), counter.getNotificationType(),
+                    counter.getStatus());
+        }
+        
+        DeliveryCounter newCounter(long total, LocalDateTime now) {
+            return new DeliveryCounter(null, scope, scopeId, channel, status, total, now);
+        }
+    }
+    
+    // Ids and statuses are captured when the change is recorded; the entity may be detached by the time it applies
+    private record Change(Long userId, Long releaseId, Notification.NotificationType channel,
+                          Notification.NotificationStatus from, Notification.NotificationStatus to) {
+        
+        static Change of(Notification notification, Notification.NotificationStatus from) {
+            return new Change(
+                    notification.getUser() != null ? notification.getUser().getId() : null,
+                    notification.getWatchRelease() != null ? notification.getWatchRelease().getId() : null,
+                    notification.getNotificationType(), from, notification.getStatus());
+        }
+        
+        void applyTo(DeliveryCounters counters) {
+            counters.add(DeliveryCounter.Scope.USER, userId, channel, from, -1);
+            counters.add(DeliveryCounter.Scope.USER, userId, channel, to, 1);
+            counters.add(DeliveryCounter.Scope.RELEASE, releaseId, channel, from, -1);
+            counters.add(DeliveryCounter.Scope.RELEASE, releaseId, channel, to, 1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.FanoutLease;
+import com.watchnotify.repository.FanoutLeaseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Hands out per-release fan-out leases so each fan-out runs on exactly one node of the
+ * cluster at a time. Every operation runs in its own short transaction so lease state is
+ * visible to other nodes immediately.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FanoutLeaseService {
+    
+    private final FanoutLeaseRepository fanoutLeaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    private final String nodeId = resolveNodeId();
+    
+    @Value("${app.notification.fanout.lease-duration:300000}")
+    private long leaseDuration;
+    
+    @Value("${app.notification.fanout.reminder-interval:3000000}")
+    private long reminderInterval;
+    
+    /**
+     * Tries to claim the fan-out lease for a release.
+     *
+     * @param once when true, a lease that already completed cannot be claimed again
+     *             (reminder leases become claimable again after the reminder interval)
+     * @return true if this node now owns the lease and should run the fan-out
+     */
+    public boolean tryClaim(Long releaseId, FanoutLease.LeaseType leaseType, boolean once) {
+        ensureLeaseRow(releaseId, leaseType);
+        
+        Boolean claimed = transactionTemplate.execute(status -> {
+            FanoutLease lease = fanoutLeaseRepository.lockForClaim(releaseId, leaseType).orElse(null);
+            if (lease == null) {
+                return false;
+            }
+            
+            LocalDateTime now = LocalDateTime.now();
+            if (lease.getState() == FanoutLease.LeaseState.NOTIFYING && lease.getLeaseExpiresAt().isAfter(now)) {
+                log.info("Fan-out of release {} ({}) is already running on {}", releaseId, leaseType, lease.getOwner());
+                return false;
+            }
+            if (once && lease.getState() == FanoutLease.LeaseState.COMPLETED && !isReclaimable(lease, now)) {
+                log.info("Fan-out of release {} ({}) already completed at {}", releaseId, leaseType, lease.getCompletedAt());
+                return false;
+            }
+            if (lease.getState() == FanoutLease.LeaseState.NOTIFYING) {
+                log.warn("Taking over expired fan-out lease of release {} ({}) from {}", releaseId, leaseType, lease.getOwner());
+            }
+            
+            lease.setState(FanoutLease.LeaseState.NOTIFYING);
+            lease.setOwner(nodeId);
+            lease.setClaimedAt(now);
+            lease.setLeaseExpiresAt(now.plus(Duration.ofMillis(leaseDuration)));
+            lease.setCompletedAt(null);
+            return true;
+        });
+        return Boolean.TRUE.equals(claimed);
+    }
+    
+    /**
+     * Extends a lease held by this node. Fails if the lease has been lost, for example
+     * because it expired and another node took it over.
+     */
+    public void renew(Long releaseId, FanoutLease.LeaseType leaseType) {
+        Integer updated = transactionTemplate.execute(status -> fanoutLeaseRepository.renew(
+                releaseId, leaseType, nodeId, LocalDateTime.now().plus(Duration.ofMillis(leaseDuration))));
+        if (updated == null || updated == 0) {
+            throw new IllegalStateException("Lost fan-out lease for release " + releaseId + " (" + leaseType + ")");
+        }
+    }
+    
+    public void complete(Long releaseId, FanoutLease.LeaseType leaseType) {
+        finish(releaseId, leaseType, FanoutLease.LeaseState.COMPLETED);
+    }
+    
+    /**
+     * Gives up a lease after a failed fan-out so another run can claim it straight away.
+     */
+    public void fail(Long releaseId, FanoutLease.LeaseType leaseType) {
+        finish(releaseId, leaseType, FanoutLease.LeaseState.FAILED);
+    }
+    
+    private void finish(Long releaseId, FanoutLease.LeaseType leaseType, FanoutLease.LeaseState state) {
+        transactionTemplate.executeWithoutResult(status -> 
+                fanoutLeaseRepository.finish(releaseId, leaseType, nodeId, state, LocalDateTime.now()));
+    }
+    
+    /**
+     * Identifies this node as the owner of leases and fan-out jobs.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    private boolean isReclaimable(FanoutLease lease, LocalDateTime now) {
+        return lease.getLeaseType() == FanoutLease.LeaseType.REMINDER
+                && lease.getCompletedAt() != null
+                && lease.getCompletedAt().plus(Duration.ofMillis(reminderInterval)).isBefore(now);
+    }
+    
+    // The lease row must exist before it can be locked; concurrent inserts lose on the unique key
+    private void ensureLeaseRow(Long releaseId, FanoutLease.LeaseType leaseType) {
+        if (fanoutLeaseRepository.existsByWatchReleaseIdAndLeaseType(releaseId, leaseType)) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                FanoutLease lease = new FanoutLease();
+                lease.setWatchReleaseId(releaseId);
+                lease.setLeaseType(leaseType);
+                fanoutLeaseRepository.saveAndFlush(lease);
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Fan-out lease for release {} ({}) was created concurrently", releaseId, leaseType);
+        }
+    }
+    
+    private static String resolveNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
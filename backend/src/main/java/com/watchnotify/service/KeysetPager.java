@@ -0,0 +1,103 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.CursorPage;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A list query that can be read in keyset-paginated pages. The query returns rows that
+ * sort strictly after a given key, ordered by that key; the key of the last row of a page
+ * is handed to clients as an opaque cursor.
+ *
+ * <p>The same query serves the unbounded list endpoints ({@link #all()}), the paginated
+ * variants ({@link #page}) and the NDJSON streams ({@link #forEach}), which read the
+ * rows in chunks so that only one chunk is ever held in memory.
+ */
+public final class KeysetPager<T, K> {
+    
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int STREAM_CHUNK_SIZE = 500;
+    
+    private final BiFunction<K, Pageable, List<T>> query;
+    private final Function<T, K> keyOf;
+    private final K start;
+    private final Function<K, String> encoder;
+    private final Function<String, K> decoder;
+    
+    public KeysetPager(BiFunction<K, Pageable, List<T>> query, Function<T, K> keyOf, K start,
+                       Function<K, String> encoder, Function<String, K> decoder) {
+        this.query = query;
+        this.keyOf = keyOf;
+        this.start = start;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+    
+    /**
+     * A pager over rows ordered by their numeric id, starting from id 0.
+     */
+    public static <T> KeysetPager<T, Long> byId(BiFunction<Long, Pageable, List<T>> query, Function<T, Long> idOf) {
+        return new KeysetPager<>(query, idOf, 0L, String::valueOf, Long::valueOf);
+    }
+    
+    public List<T> all() {
+        return query.apply(start, Pageable.unpaged());
+    }
+    
+    /**
+     * Reads the page after {@code cursor} (the first page if it is {@code null}).
+     *
+     * @throws IllegalArgumentException if the cursor was not issued by this pager
+     */
+    public CursorPage<T> page(String cursor, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        K after = cursor == null || cursor.isBlank() ? start : decode(cursor);
+        
+        // One extra row tells whether there is a next page
+        List<T> rows = query.apply(after, PageRequest.of(0, size + 1));
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null, size);
+        }
+        
+        List<T> items = rows.subList(0, size);
+        return new CursorPage<>(items, encode(keyOf.apply(items.get(size - 1))), size);
+    }
+    
+    /**
+     * Hands every row to {@code sink}, reading them in chunks of {@link #STREAM_CHUNK_SIZE}.
+     */
+    public void forEach(Consumer<T> sink) {
+        Pageable chunk = PageRequest.of(0, STREAM_CHUNK_SIZE);
+        K after = start;
+        
+        while (true) {
+            List<T> rows = query.apply(after, chunk);
+            rows.forEach(sink);
+            if (rows.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            after = keyOf.apply(rows.get(rows.size() - 1));
+        }
+    }
+    
+    private String encode(K key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(encoder.apply(key).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private K decode(String cursor) {
+        try {
+            return decoder.apply(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
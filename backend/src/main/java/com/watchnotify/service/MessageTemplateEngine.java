@@ -0,0 +1,396 @@
+package com.watchnotify.service;
+
+import com.watchnotify.config.NotificationTemplateProperties;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.WatchRelease;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Renders notification messages from precompiled per-kind, per-channel templates.
+ *
+ * <p>Everything except the salutation depends only on the release, the notification
+ * kind and the custom message, so that part is rendered once per fan-out and cached.
+ * Per recipient only the salutation is filled in and prepended.
+ *
+ * <p>Templates use {@code {name}} placeholders. Text inside {@code [...]} is optional:
+ * it is emitted only if every placeholder inside it has a non-blank value. Available
+ * placeholders are {@code watchName}, {@code brand}, {@code modelNumber},
+ * {@code description}, {@code currency}, {@code price}, {@code productUrl},
+ * {@code imageUrl}, {@code limitedQuantity} and {@code customMessage}; salutations
+ * may use {@code firstName}.
+ *
+ * <p>Digests combine several releases into one message per channel. Each release is
+ * rendered from the digest's item template, which may also use {@code kindLabel}, and
+ * the digest subject and body may use {@code count} and {@code items}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageTemplateEngine {
+    
+    private static final int RENDER_CACHE_SIZE = 256;
+    
+    private static final String DEFAULT_EMAIL_BODY =
+            "[{customMessage}\n\n]%s\n\n" +
+            "Watch: {watchName}\n" +
+            "Brand: {brand}\n" +
+            "[Model: {modelNumber}\n]" +
+            "[Price: {currency} {price}\n]" +
+            "[Description: {description}\n]" +
+            "[Learn more: {productUrl}\n]" +
+            "\nBest regards,\nWatch Notification Service";
+    
+    private static final String DEFAULT_SMS_BODY =
+            "%s: {watchName} by {brand}[ - {currency} {price}][ - {customMessage}]";
+    
+    private static final Map<Notification.NotificationKind, String> KIND_LABELS = Map.of(
+            Notification.NotificationKind.NEW_RELEASE, "New release",
+            Notification.NotificationKind.REMINDER, "Coming soon",
+            Notification.NotificationKind.LIMITED_EDITION, "Limited edition");
+    
+    private final NotificationTemplateProperties properties;
+    
+    private final Map<Notification.NotificationKind, Map<Notification.NotificationType, CompiledMessage>> compiled =
+            new EnumMap<>(Notification.NotificationKind.class);
+    
+    private final Map<Notification.NotificationType, CompiledDigest> compiledDigests =
+            new EnumMap<>(Notification.NotificationType.class);
+    
+    private final Map<RenderKey, RenderedRelease> renderCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(RENDER_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<RenderKey, RenderedRelease> eldest) {
+                    return size() > RENDER_CACHE_SIZE;
+                }
+            });
+    
+    @PostConstruct
+    void compileTemplates() {
+        for (Notification.NotificationKind kind : Notification.NotificationKind.values()) {
+            if (kind == Notification.NotificationKind.DIGEST) {
+                continue;
+            }
+            Map<Notification.NotificationType, CompiledMessage> byChannel = new EnumMap<>(Notification.NotificationType.class);
+            for (Notification.NotificationType channel : Notification.NotificationType.values()) {
+                NotificationTemplateProperties.ChannelTemplate defaults = defaultTemplate(kind, channel);
+                NotificationTemplateProperties.ChannelTemplate configured = properties.getTemplates()
+                        .getOrDefault(kind, Map.of())
+                        .get(channel);
+                
+                byChannel.put(channel, new CompiledMessage(
+                        Template.compile(pick(configured, defaults, NotificationTemplateProperties.ChannelTemplate::getSubject)),
+                        Template.compile(pick(configured, defaults, NotificationTemplateProperties.ChannelTemplate::getSalutation)),
+                        Template.compile(pick(configured, defaults, NotificationTemplateProperties.ChannelTemplate::getBody))));
+            }
+            compiled.put(kind, byChannel);
+        }
+        for (Notification.NotificationType channel : Notification.NotificationType.values()) {
+            NotificationTemplateProperties.DigestTemplate defaults = defaultDigestTemplate(channel);
+            NotificationTemplateProperties.DigestTemplate configured = properties.getDigestTemplates().get(channel);
+            compiledDigests.put(channel, new CompiledDigest(
+                    Template.compile(pick(configured, defaults, NotificationTemplateProperties.DigestTemplate::getSubject)),
+                    Template.compile(pick(configured, defaults, NotificationTemplateProperties.DigestTemplate::getSalutation)),
+                    Template.compile(pick(configured, defaults, NotificationTemplateProperties.DigestTemplate::getBody)),
+                    Template.compile(pick(configured, defaults, NotificationTemplateProperties.DigestTemplate::getItem)),
+                    pick(configured, defaults, NotificationTemplateProperties.DigestTemplate::getSeparator)));
+        }
+        log.info("Compiled notification templates for {} kinds", compiled.size());
+    }
+    
+    /**
+     * Renders the recipient-independent part of every channel's message for a release.
+     * Results are cached, keyed on the release version, kind and custom message.
+     */
+    public RenderedRelease render(WatchRelease release, Notification.NotificationKind kind, String customMessage) {
+        Notification.NotificationKind effectiveKind = kind != null ? kind : Notification.NotificationKind.NEW_RELEASE;
+        RenderKey key = new RenderKey(release.getId(), release.getUpdatedAt(), effectiveKind, customMessage);
+        
+        RenderedRelease cached = renderCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        
+        Map<String, String> values = releaseValues(release, customMessage);
+        Map<Notification.NotificationType, RenderedMessage> messages = new EnumMap<>(Notification.NotificationType.class);
+        compiled.get(effectiveKind).forEach((channel, message) -> messages.put(channel, new RenderedMessage(
+                message.subject().render(values::get),
+                message.salutation(),
+                message.body().render(values::get))));
+        
+        RenderedRelease rendered = new RenderedRelease(messages);
+        renderCache.put(key, rendered);
+        return rendered;
+    }
+    
+    /**
+     * Renders one channel's digest of several releases, listed in the given order. A
+     * digest of a single release is rendered as that release's own message instead.
+     */
+    public RenderedMessage renderDigest(Notification.NotificationType channel, List<DigestItem> items) {
+        if (items.size() == 1) {
+            return render(items.get(0).release(), items.get(0).kind(), null).forChannel(channel);
+        }
+        
+        CompiledDigest digest = compiledDigests.get(channel);
+        StringBuilder rendered = new StringBuilder(items.size() * 96);
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                rendered.append(digest.separator());
+            }
+            Map<String, String> values = releaseValues(items.get(i).release(), null);
+            values.put("kindLabel", KIND_LABELS.get(items.get(i).kind()));
+            digest.item().renderInto(rendered, values::get);
+        }
+        
+        Map<String, String> values = Map.of("count", String.valueOf(items.size()), "items", rendered.toString());
+        return new RenderedMessage(digest.subject().render(values::get), digest.salutation(),
+                digest.body().render(values::get));
+    }
+    
+    private Map<String, String> releaseValues(WatchRelease release, String customMessage) {
+        Map<String, String> values = new HashMap<>();
+        values.put("watchName", release.getWatchName());
+        values.put("brand", release.getBrand());
+        values.put("modelNumber", release.getModelNumber());
+        values.put("description", release.getDescription());
+        values.put("currency", release.getCurrency());
+        values.put("price", release.getPrice() != null ? release.getPrice().toString() : null);
+        values.put("productUrl", release.getProductUrl());
+        values.put("imageUrl", release.getImageUrl());
+        values.put("limitedQuantity", release.getLimitedQuantity() != null ? release.getLimitedQuantity().toString() : null);
+        values.put("customMessage", customMessage);
+        return values;
+    }
+    
+    private static <T extends NotificationTemplateProperties.ChannelTemplate> String pick(T configured, T defaults,
+                                                                                          Function<T, String> field) {
+        String value = configured != null ? field.apply(configured) : null;
+        return value != null ? value : Objects.requireNonNullElse(field.apply(defaults), "");
+    }
+    
+    private static NotificationTemplateProperties.ChannelTemplate defaultTemplate(Notification.NotificationKind kind,
+                                                                                  Notification.NotificationType channel) {
+        NotificationTemplateProperties.ChannelTemplate template = new NotificationTemplateProperties.ChannelTemplate();
+        switch (channel) {
+            case EMAIL -> {
+                template.setSalutation("Dear {firstName},\n\n");
+                switch (kind) {
+                    case NEW_RELEASE -> {
+                        template.setSubject("New Watch Release: {watchName}");
+                        template.setBody(DEFAULT_EMAIL_BODY.formatted("We're excited to announce a new watch release!"));
+                    }
+                    case REMINDER -> {
+                        template.setSubject("Upcoming Watch Release: {watchName}");
+                        template.setBody(DEFAULT_EMAIL_BODY.formatted("A watch release you follow is coming up soon!"));
+                    }
+                    case LIMITED_EDITION -> {
+                        template.setSubject("Limited Edition Release: {watchName}");
+                        template.setBody(DEFAULT_EMAIL_BODY.formatted("We're excited to announce a new limited edition release!"));
+                    }
+                }
+            }
+            case SMS -> {
+                template.setSubject("New Watch Release");
+                template.setBody(DEFAULT_SMS_BODY.formatted(switch (kind) {
+                    case NEW_RELEASE -> "New watch release";
+                    case REMINDER -> "Coming soon";
+                    case LIMITED_EDITION -> "Limited edition release";
+                    case DIGEST -> throw new IllegalArgumentException("Digests use the digest templates");
+                }));
+            }
+            case PUSH -> {
+                template.setSubject("New Watch Release");
+                template.setBody(switch (kind) {
+                    case NEW_RELEASE -> "New {brand} watch: {watchName} is now available!";
+                    case REMINDER -> "Coming soon from {brand}: {watchName}";
+                    case LIMITED_EDITION -> "Limited edition {brand} watch: {watchName}[ - only {limitedQuantity} pieces]";
+                    case DIGEST -> throw new IllegalArgumentException("Digests use the digest templates");
+                });
+            }
+        }
+        return template;
+    }
+    
+    private static NotificationTemplateProperties.DigestTemplate defaultDigestTemplate(Notification.NotificationType channel) {
+        NotificationTemplateProperties.DigestTemplate template = new NotificationTemplateProperties.DigestTemplate();
+        switch (channel) {
+            case EMAIL -> {
+                template.setSubject("{count} New Watch Releases");
+                template.setSalutation("Dear {firstName},\n\n");
+                template.setBody("Here are the latest releases from the brands you follow:\n\n{items}\n\n" +
+                        "Best regards,\nWatch Notification Service");
+                template.setItem("{kindLabel}: {watchName} by {brand}[ ({modelNumber})][ - {currency} {price}]" +
+                        "[\nLearn more: {productUrl}]");
+                template.setSeparator("\n\n");
+            }
+            case SMS -> {
+                template.setSubject("New Watch Releases");
+                template.setBody("{count} new watch releases: {items}");
+                template.setItem("{watchName} by {brand}");
+                template.setSeparator("; ");
+            }
+            case PUSH -> {
+                template.setSubject("New Watch Releases");
+                template.setBody("{count} new watches from brands you follow: {items}");
+                template.setItem("{brand} {watchName}");
+                template.setSeparator(", ");
+            }
+        }
+        return template;
+    }
+    
+    /**
+     * The rendered, recipient-independent messages of one release for every channel.
+     */
+    public record RenderedRelease(Map<Notification.NotificationType, RenderedMessage> messages) {
+        
+        public RenderedMessage forChannel(Notification.NotificationType channel) {
+            return messages.get(channel);
+        }
+    }
+    
+    /**
+     * A rendered subject and body plus the salutation still to be filled in per recipient.
+     */
+    public record RenderedMessage(String subject, Template salutation, String body) {
+        
+        public String bodyFor(String firstName) {
+            if (salutation.isEmpty()) {
+                return body;
+            }
+            StringBuilder content = new StringBuilder(body.length() + 32);
+            salutation.renderInto(content, name -> "firstName".equals(name) ? firstName : null);
+            return content.append(body).toString();
+        }
+    }
+    
+    /**
+     * One release in a digest and the kind of notification it was queued as.
+     */
+    public record DigestItem(WatchRelease release, Notification.NotificationKind kind) {
+    }
+    
+    private record CompiledMessage(Template subject, Template salutation, Template body) {
+    }
+    
+    private record CompiledDigest(Template subject, Template salutation, Template body, Template item, String separator) {
+    }
+    
+    private record RenderKey(Long releaseId, Object version, Notification.NotificationKind kind, String customMessage) {
+    }
+    
+    /**
+     * A template parsed once into literal, placeholder and optional segments.
+     */
+    public static final class Template {
+        
+        private final List<Object> segments;
+        
+        private Template(List<Object> segments) {
+            this.segments = segments;
+        }
+        
+        static Template compile(String source) {
+            Deque<List<Object>> stack = new ArrayDeque<>();
+            stack.push(new ArrayList<>());
+            StringBuilder literal = new StringBuilder();
+            
+            for (int i = 0; i < source.length(); i++) {
+                char c = source.charAt(i);
+                if (c == '{') {
+                    int end = source.indexOf('}', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unclosed placeholder in template: " + source);
+                    }
+                    flushLiteral(literal, stack.peek());
+                    stack.peek().add(new Placeholder(source.substring(i + 1, end).trim()));
+                    i = end;
+                } else if (c == '[') {
+                    flushLiteral(literal, stack.peek());
+                    stack.push(new ArrayList<>());
+                } else if (c == ']' && stack.size() > 1) {
+                    flushLiteral(literal, stack.peek());
+                    Section section = new Section(stack.pop());
+                    stack.peek().add(section);
+                } else {
+                    literal.append(c);
+                }
+            }
+            
+            if (stack.size() > 1) {
+                throw new IllegalArgumentException("Unclosed optional section in template: " + source);
+            }
+            flushLiteral(literal, stack.peek());
+            return new Template(stack.pop());
+        }
+        
+        public boolean isEmpty() {
+            return segments.isEmpty();
+        }
+        
+        String render(Function<String, String> values) {
+            StringBuilder out = new StringBuilder(128);
+            renderInto(out, values);
+            return out.toString();
+        }
+        
+        void renderInto(StringBuilder out, Function<String, String> values) {
+            renderSegments(segments, out, values);
+        }
+        
+        private static void renderSegments(List<Object> segments, StringBuilder out, Function<String, String> values) {
+            for (Object segment : segments) {
+                if (segment instanceof String text) {
+                    out.append(text);
+                } else if (segment instanceof Placeholder placeholder) {
+                    String value = values.apply(placeholder.name());
+                    if (value != null) {
+                        out.append(value);
+                    }
+                } else if (segment instanceof Section section && allPresent(section.segments(), values)) {
+                    renderSegments(section.segments(), out, values);
+                }
+            }
+        }
+        
+        private static boolean allPresent(List<Object> segments, Function<String, String> values) {
+            for (Object segment : segments) {
+                if (segment instanceof Placeholder placeholder) {
+                    String value = values.apply(placeholder.name());
+                    if (value == null || value.isBlank()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        
+        private static void flushLiteral(StringBuilder literal, List<Object> target) {
+            if (!literal.isEmpty()) {
+                target.add(literal.toString());
+                literal.setLength(0);
+            }
+        }
+        
+        private record Placeholder(String name) {
+        }
+        
+        private record Section(List<Object> segments) {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.WatchRelease;
+import com.watchnotify.repository.NotificationDigestEntryRepository;
+import com.watchnotify.repository.NotificationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Per-release delivery index that is checked before a notification is queued, so a
+ * recipient is never sent the same (release, channel, kind) more often than the dedup
+ * policy allows. It keeps one bitmap of user ids per channel and repeat number, loaded
+ * from {@code notifications} and the buffered digest entries when a fan-out starts;
+ * the unique indexes on both tables remain the backstop for anything the bitmaps cannot
+ * see.
+ *
+ * <p>Only deliveries that were sent or are still on their way count. Cancelling a
+ * notification or moving it to {@code DEAD_LETTER} clears its dedup sequence, so a later
+ * fan-out of the same release may notify that user again.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDedupIndex {
+    
+    private final NotificationRepository notificationRepository;
+    private final NotificationDigestEntryRepository digestEntryRepository;
+    private final NotificationHorizons notificationHorizons;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${app.notification.dedup.max-reminders-per-release:1}")
+    private int maxRemindersPerRelease;
+    
+    /**
+     * Loads the deliveries already recorded for a release and kind. The returned index is
+     * meant to be used by a single fan-out, which holds the release's fan-out lease.
+     */
+    public ReleaseDeliveries open(WatchRelease release, Notification.NotificationKind kind) {
+        Long releaseId = release.getId();
+        ReleaseDeliveries deliveries = new ReleaseDeliveries(maxDeliveries(kind));
+        
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> keys = notificationRepository.streamDeliveryKeys(releaseId, kind,
+                    notificationHorizons.since(release.getCreatedAt()))) {
+                keys.forEach(key -> deliveries.mark(
+                        (Long) key[0], (Notification.NotificationType) key[1], (Integer) key[2]));
+            }
+            try (Stream<Object[]> keys = digestEntryRepository.streamDeliveryKeys(releaseId, kind)) {
+                keys.forEach(key -> deliveries.mark(
+                        (Long) key[0], (Notification.NotificationType) key[1], (Integer) key[2]));
+            }
+        });
+        
+        log.debug("Loaded {} existing {} deliveries for watch release {}", deliveries.size(), kind, releaseId);
+        return deliveries;
+    }
+    
+    private int maxDeliveries(Notification.NotificationKind kind) {
+        return kind == Notification.NotificationKind.REMINDER ? maxRemindersPerRelease : 1;
+    }
+    
+    /**
+     * Bitmaps of the users already notified about one release, per channel and repeat number.
+     */
+    public static class ReleaseDeliveries {
+        
+        private final int maxDeliveries;
+        
+        private final Map<Notification.NotificationType, BitSet[]> delivered = 
+                new EnumMap<>(Notification.NotificationType.class);
+        
+        private long size;
+        
+        ReleaseDeliveries(int maxDeliveries) {
+            this.maxDeliveries = maxDeliveries;
+            for (Notification.NotificationType type : Notification.NotificationType.values()) {
+                BitSet[] bySequence = new BitSet[maxDeliveries];
+                for (int i = 0; i < maxDeliveries; i++) {
+                    bySequence[i] = new BitSet();
+                }
+                delivered.put(type, bySequence);
+            }
+        }
+        
+        /**
+         * Reserves the next allowed delivery of a channel to a user.
+         *
+         * @return the dedup sequence number to store on the notification, or -1 if the
+         *         user has already received as many as the policy allows
+         */
+        public synchronized int reserve(Long userId, Notification.NotificationType type) {
+            if (userId == null || userId > Integer.MAX_VALUE) {
+                // Outside what a BitSet can index; leave it to the unique index
+                return 0;
+            }
+            
+            BitSet[] bySequence = delivered.get(type);
+            for (int sequence = 0; sequence < maxDeliveries; sequence++) {
+                if (!bySequence[sequence].get(userId.intValue())) {
+                    bySequence[sequence].set(userId.intValue());
+                    size++;
+                    return sequence;
+                }
+            }
+            return -1;
+        }
+        
+        synchronized void mark(Long userId, Notification.NotificationType type, Integer sequence) {
+            if (userId != null && userId <= Integer.MAX_VALUE && type != null 
+                    && sequence != null && sequence >= 0 && sequence < maxDeliveries) {
+                delivered.get(type)[sequence].set(userId.intValue());
+                size++;
+            }
+        }
+        
+        public synchronized long size() {
+            return size;
+        }
+    }
+}
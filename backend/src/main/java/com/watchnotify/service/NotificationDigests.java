@@ -0,0 +1,238 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.RecipientDto;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationDigestEntry;
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+import com.watchnotify.repository.NotificationDigestEntryRepository;
+import com.watchnotify.repository.UserRepository;
+import com.watchnotify.repository.WatchReleaseRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Digest delivery: for users who opted in on a channel, fan-outs buffer one entry per
+ * release in {@code notification_digest_entries} instead of queueing a notification.
+ * Once a user's oldest buffered entry on a channel is older than {@code window}, all of
+ * that user's entries on the channel are rendered into one digest and queued in the
+ * outbox like any other notification, so a busy week of drops costs one message per
+ * user and channel per window rather than one per release.
+ *
+ * <p>Entries count as deliveries in the dedup index, so a release reaches a user once
+ * whether it went out on its own or in a digest. Digests of several releases have kind
+ * {@code DIGEST} and no watch release; a digest that ends up holding a single release
+ * is queued as that release's own notification. Digests of paused jobs' entries wait
+ * until the job is resumed, and cancelling a job drops its entries that are still
+ * waiting.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDigests {
+    
+    private final NotificationDigestEntryRepository digestEntryRepository;
+    private final UserRepository userRepository;
+    private final WatchReleaseRepository watchReleaseRepository;
+    private final MessageTemplateEngine messageTemplateEngine;
+    private final NotificationMetrics notificationMetrics;
+    private final DeliveryCounters deliveryCounters;
+    private final TransactionTemplate transactionTemplate;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // Only stops new entries from being buffered; entries already buffered are still sent
+    @Value("${app.notification.digest.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.notification.digest.window:3600000}")
+    private long window;
+    
+    @Value("${app.notification.digest.batch-size:500}")
+    private int batchSize;
+    
+    /**
+     * Whether a recipient's notifications on a channel go into digests.
+     */
+    public boolean wants(RecipientDto recipient, Notification.NotificationType channel) {
+        if (!enabled) {
+            return false;
+        }
+        return Boolean.TRUE.equals(switch (channel) {
+            case EMAIL -> recipient.getEmailDigestEnabled();
+            case SMS -> recipient.getSmsDigestEnabled();
+            case PUSH -> recipient.getPushDigestEnabled();
+        });
+    }
+    
+    /**
+     * Stores entries buffered by a fan-out. Entries another node already stored are
+     * skipped; any other failure is thrown, so the fan-out does not checkpoint past them.
+     */
+    public void buffer(List<NotificationDigestEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> persistAll(entries));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Batch insert of {} digest entries failed, retrying individually", entries.size());
+            for (NotificationDigestEntry entry : entries) {
+                try {
+                    entry.setId(null);
+                    transactionTemplate.executeWithoutResult(status -> persistAll(List.of(entry)));
+                } catch (DataIntegrityViolationException duplicate) {
+                    log.info("Skipping duplicate {} digest entry for user {} and watch release {}",
+                            entry.getNotificationType(), entry.getUserId(), entry.getWatchReleaseId());
+                }
+            }
+        }
+    }
+    
+    // Flushed on commit, where constraint violations are translated to DataIntegrityViolationException
+    private void persistAll(List<NotificationDigestEntry> entries) {
+        entries.forEach(entityManager::persist);
+    }
+    
+    /**
+     * Queues every digest that is due, {@code batch-size} users at a time.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.digest.flush-interval:60000}")
+    public void sendDueDigests() {
+        LocalDateTime dueBefore = LocalDateTime.now().minusNanos(window * 1_000_000);
+        int queued = 0;
+        int batch;
+        do {
+            int[] counts = transactionTemplate.execute(status -> sendBatch(dueBefore));
+            batch = counts[0];
+            queued += counts[1];
+        } while (batch > 0);
+        
+        if (queued > 0) {
+            log.info("Queued {} notification digests", queued);
+        }
+    }
+    
+    // Returns [digests handled, digests queued]
+    private int[] sendBatch(LocalDateTime dueBefore) {
+        List<Object[]> due = digestEntryRepository.findDueGroups(dueBefore, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            return new int[]{0, 0};
+        }
+        Set<Long> userIds = due.stream().map(row -> (Long) row[0]).collect(Collectors.toSet());
+        
+        // Entries locked by another node are skipped; that node sends them
+        Map<DigestKey, List<NotificationDigestEntry>> digests = new LinkedHashMap<>();
+        for (NotificationDigestEntry entry : digestEntryRepository.lockPendingForUsers(userIds)) {
+            digests.computeIfAbsent(new DigestKey(entry.getUserId(), entry.getNotificationType()),
+                    key -> new ArrayList<>()).add(entry);
+        }
+        // A user's other channel may not be due yet
+        digests.values().removeIf(entries -> entries.stream()
+                .allMatch(entry -> entry.getCreatedAt().isAfter(dueBefore)));
+        if (digests.isEmpty()) {
+            return new int[]{0, 0};
+        }
+        
+        Map<Long, RecipientDto> recipients = userRepository.findActiveRecipientsByIdIn(userIds).stream()
+                .collect(Collectors.toMap(RecipientDto::getId, Function.identity()));
+        Set<Long> releaseIds = digests.values().stream()
+                .flatMap(List::stream)
+                .map(NotificationDigestEntry::getWatchReleaseId)
+                .collect(Collectors.toSet());
+        Map<Long, WatchRelease> releases = watchReleaseRepository.findAllById(releaseIds).stream()
+                .collect(Collectors.toMap(WatchRelease::getId, Function.identity()));
+        
+        List<Notification> queued = new ArrayList<>();
+        List<NotificationDigestEntry> undeliverable = new ArrayList<>();
+        digests.forEach((key, entries) -> {
+            Notification digest = digest(recipients.get(key.userId()), key.channel(), entries, releases);
+            if (digest == null) {
+                undeliverable.addAll(entries);
+                return;
+            }
+            entityManager.persist(digest);
+            entries.forEach(entry -> entry.setDigestNotificationId(digest.getId()));
+            queued.add(digest);
+        });
+        
+        if (!undeliverable.isEmpty()) {
+            log.debug("Dropping {} digest entries of inactive users or disabled channels", undeliverable.size());
+            digestEntryRepository.deleteAllInBatch(undeliverable);
+        }
+        deliveryCounters.recordCreated(queued);
+        queued.forEach(digest -> notificationMetrics.recordQueued(digest.getNotificationType(),
+                digest.getNotificationKind()));
+        return new int[]{digests.size(), queued.size()};
+    }
+    
+    // Null if the user can no longer be reached on the channel
+    private Notification digest(RecipientDto recipient, Notification.NotificationType channel,
+                                List<NotificationDigestEntry> entries, Map<Long, WatchRelease> releases) {
+        String address = recipient != null ? address(recipient, channel) : null;
+        if (address == null) {
+            return null;
+        }
+        
+        // A release buffered more than once (e.g. a second reminder) is listed once
+        List<MessageTemplateEngine.DigestItem> items = new ArrayList<>();
+        Set<Long> listed = new HashSet<>();
+        for (NotificationDigestEntry entry : entries) {
+            WatchRelease release = releases.get(entry.getWatchReleaseId());
+            if (release != null && listed.add(release.getId())) {
+                items.add(new MessageTemplateEngine.DigestItem(release, entry.getNotificationKind()));
+            }
+        }
+        if (items.isEmpty()) {
+            return null;
+        }
+        
+        MessageTemplateEngine.RenderedMessage message = messageTemplateEngine.renderDigest(channel, items);
+        Notification notification = new Notification();
+        if (items.size() == 1) {
+            notification.setWatchRelease(items.get(0).release());
+            notification.setNotificationKind(items.get(0).kind());
+            notification.setJobId(entries.get(0).getJobId());
+        } else {
+            notification.setNotificationKind(Notification.NotificationKind.DIGEST);
+        }
+        notification.setNotificationType(channel);
+        notification.setStatus(Notification.NotificationStatus.PENDING);
+        notification.setSubject(message.subject());
+        notification.setMessage(message.bodyFor(recipient.getFirstName()));
+        notification.setRecipient(address);
+        notification.setNextAttemptAt(LocalDateTime.now());
+        notification.setUser(entityManager.getReference(User.class, recipient.getId()));
+        return notification;
+    }
+    
+    private static String address(RecipientDto recipient, Notification.NotificationType channel) {
+        return switch (channel) {
+            case EMAIL -> Boolean.TRUE.equals(recipient.getEmailNotificationsEnabled()) ? recipient.getEmail() : null;
+            case SMS -> Boolean.TRUE.equals(recipient.getSmsNotificationsEnabled()) ? recipient.getPhoneNumber() : null;
+            case PUSH -> Boolean.TRUE.equals(recipient.getPushNotificationsEnabled()) ? recipient.getEmail() : null;
+        };
+    }
+    
+    private record DigestKey(Long userId, Notification.NotificationType channel) {
+    }
+}
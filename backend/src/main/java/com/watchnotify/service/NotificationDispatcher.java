@@ -0,0 +1,262 @@
+package com.watchnotify.service;
+
+import com.watchnotify.config.ChannelLimitsProperties;
+import com.watchnotify.model.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs per-recipient, per-channel sends concurrently. Each channel is a bulkhead with
+ * its own executor, sized to its maximum concurrency, so a hanging provider can only
+ * tie up its own threads. Within a channel, a {@link ChannelGovernor} applies the
+ * provider rate cap and a concurrency limit that backs off when the provider errors or
+ * slows down, and a {@link ChannelCircuitBreaker} refuses sends outright while the
+ * provider is down. Submitting a send blocks while the channel is saturated, which
+ * pushes back on whoever is reading its outbox.
+ */
+@Component
+@DependsOn("notificationWriter") // drain in-flight sends before the writer's shutdown flush
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDispatcher {
+    
+    private final ChannelLimitsProperties channelLimits;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${app.notification.dispatch.executor:platform}")
+    private String executorType;
+    
+    private final Map<Notification.NotificationType, Channel> channels = 
+            new EnumMap<>(Notification.NotificationType.class);
+    
+    @PostConstruct
+    void start() {
+        boolean virtual = useVirtualThreads();
+        for (Notification.NotificationType type : Notification.NotificationType.values()) {
+            ChannelLimitsProperties.Limits limits = channelLimits.forChannel(type);
+            ChannelCircuitBreaker circuitBreaker =
+                    new ChannelCircuitBreaker(type, channelLimits.circuitBreakerFor(type));
+            Channel channel = new Channel(new ChannelGovernor(type, limits), circuitBreaker,
+                    createExecutor(type, virtual, limits.getMaxConcurrency()),
+                    messageCounter(type, "sent"), messageCounter(type, "failed"), latencyTimer(type));
+            registerGauges(type, channel);
+            channels.put(type, channel);
+            log.info("{} dispatch: {} msg/s, concurrency {}..{} on {} threads", type,
+                    limits.getRate() > 0 ? limits.getRate() : "unlimited",
+                    limits.getMinConcurrency(), limits.getMaxConcurrency(), virtual ? "virtual" : "platform");
+        }
+    }
+    
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        channels.values().forEach(channel -> channel.executor().shutdown());
+        for (Map.Entry<Notification.NotificationType, Channel> entry : channels.entrySet()) {
+            ExecutorService executor = entry.getValue().executor();
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("{} dispatch did not drain within 30 seconds, forcing shutdown", entry.getKey());
+                executor.shutdownNow();
+            }
+        }
+    }
+    
+    /**
+     * Opens a new batch that tracks the sends of a single outbox batch or fan-out.
+     */
+    public DispatchBatch newBatch() {
+        return new DispatchBatch();
+    }
+    
+    /**
+     * Whether the channel's circuit would currently let a send through.
+     */
+    public boolean isAvailable(Notification.NotificationType type) {
+        return channels.get(type).circuitBreaker().isAvailable();
+    }
+    
+    /**
+     * When sends refused by the channel's open circuit should be attempted again.
+     */
+    public LocalDateTime retryAt(Notification.NotificationType type) {
+        return channels.get(type).circuitBreaker().retryAt();
+    }
+    
+    private Counter messageCounter(Notification.NotificationType type, String outcome) {
+        return Counter.builder("notification.dispatch.messages")
+                .description("Messages handed to the channel provider")
+                .tag("channel", type.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+    
+    private Timer latencyTimer(Notification.NotificationType type) {
+        return Timer.builder("notification.dispatch.latency")
+                .description("Time from submitting a send until it completes, including waiting for channel capacity")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+    }
+    
+    private void registerGauges(Notification.NotificationType type, Channel channel) {
+        ChannelGovernor governor = channel.governor();
+        Gauge.builder("notification.dispatch.concurrency.limit", governor, ChannelGovernor::concurrencyLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+        Gauge.builder("notification.dispatch.in.flight", governor, ChannelGovernor::inFlight)
+                .description("Sends currently in progress")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+        Gauge.builder("notification.dispatch.rate", governor, ChannelGovernor::rate)
+                .description("Messages completed per second over the last second")
+                .baseUnit("messages")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+        Gauge.builder("notification.dispatch.rate.limit", governor, ChannelGovernor::rateLimit)
+                .description("Configured provider rate cap in messages per second, 0 if unlimited")
+                .baseUnit("messages")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+        Gauge.builder("notification.dispatch.circuit.state", channel.circuitBreaker(),
+                        circuitBreaker -> circuitBreaker.state().ordinal())
+                .description("Circuit state: 0 closed, 1 half-open, 2 open")
+                .tag("channel", type.name())
+                .register(meterRegistry);
+    }
+    
+    private boolean useVirtualThreads() {
+        if (!"virtual".equalsIgnoreCase(executorType)) {
+            return false;
+        }
+        if (Runtime.version().feature() < 21) {
+            log.warn("Virtual threads are not available on Java {}, falling back to platform threads",
+                    Runtime.version().feature());
+            return false;
+        }
+        return true;
+    }
+    
+    private ExecutorService createExecutor(Notification.NotificationType type, boolean virtual, int threads) {
+        if (virtual) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not create virtual thread executor", e);
+            }
+        }
+        // The governor never admits more sends than max-concurrency, so the pool never queues
+        return Executors.newFixedThreadPool(threads, namedThreadFactory(type));
+    }
+    
+    private ThreadFactory namedThreadFactory(Notification.NotificationType type) {
+        AtomicInteger counter = new AtomicInteger();
+        String prefix = "notification-dispatch-" + type.name().toLowerCase() + "-";
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Tracks the outstanding sends of one batch so the caller can wait for them.
+     */
+    public class DispatchBatch {
+        
+        private final AtomicInteger pending = new AtomicInteger();
+        
+        /**
+         * Submits a send of {@code messages} messages for the given channel, blocking
+         * while that channel is at its concurrency limit or out of rate tokens. The send
+         * returns how many of its messages failed; an exception counts as all of them.
+         *
+         * @return {@code false} if the channel's circuit is open and the send was not
+         *         submitted; the caller should retry it at {@link #retryAt}
+         */
+        public boolean submit(Notification.NotificationType type, int messages, IntSupplier send) {
+            Channel channel = channels.get(type);
+            ChannelGovernor governor = channel.governor();
+            ChannelCircuitBreaker circuitBreaker = channel.circuitBreaker();
+            if (!circuitBreaker.tryAcquire()) {
+                return false;
+            }
+            
+            long submitted = System.nanoTime();
+            try {
+                governor.acquire(messages);
+            } catch (InterruptedException e) {
+                circuitBreaker.abandon();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for " + type + " dispatch capacity", e);
+            }
+            
+            pending.incrementAndGet();
+            try {
+                channel.executor().execute(() -> {
+                    long started = System.nanoTime();
+                    int failures = messages;
+                    try {
+                        failures = send.getAsInt();
+                    } catch (Exception e) {
+                        log.error("Unhandled error in {} dispatch", type, e);
+                    } finally {
+                        governor.release(messages, failures, System.nanoTime() - started);
+                        circuitBreaker.record(messages > 0 && failures >= messages);
+                        channel.latency().record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                        channel.sent().increment(messages - failures);
+                        channel.failed().increment(failures);
+                        complete();
+                    }
+                });
+            } catch (RuntimeException e) {
+                governor.release(messages, 0, 0);
+                circuitBreaker.abandon();
+                complete();
+                throw e;
+            }
+            return true;
+        }
+        
+        /**
+         * Blocks until every send submitted to this batch has finished.
+         */
+        public void awaitCompletion() throws InterruptedException {
+            synchronized (this) {
+                while (pending.get() > 0) {
+                    wait();
+                }
+            }
+        }
+        
+        private void complete() {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+    
+    private record Channel(ChannelGovernor governor, ChannelCircuitBreaker circuitBreaker, ExecutorService executor,
+                           Counter sent, Counter failed, Timer latency) {
+    }
+}
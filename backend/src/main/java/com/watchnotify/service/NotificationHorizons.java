@@ -0,0 +1,63 @@
+package com.watchnotify.service;
+
+import com.watchnotify.repository.NotificationRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Lower bounds on {@code created_at} for the queries that would otherwise read every
+ * monthly partition of the notifications table. Given as a parameter, the bound lets
+ * PostgreSQL prune the partitions that cannot hold a matching row when the query starts.
+ *
+ * <p>Outbox queries only read {@code PENDING} rows, which are bounded by the oldest one,
+ * looked up at most every {@code horizon-refresh-interval}. Queries about one release or
+ * one job are bounded by when it was created, since its notifications come after it.
+ * Every bound is moved back by {@code horizon-margin} to allow for clock skew between
+ * nodes and for transactions that insert rows stamped before they commit.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationHorizons {
+    
+    // Bound for a release or job without a creation time, older than any partition
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    private final NotificationRepository notificationRepository;
+    
+    @Value("${app.notification.partitions.horizon-margin:3600000}")
+    private long horizonMargin;
+    
+    @Value("${app.notification.partitions.horizon-refresh-interval:60000}")
+    private long horizonRefreshInterval;
+    
+    private LocalDateTime pending;
+    private LocalDateTime pendingRefreshedAt;
+    
+    /**
+     * Earliest {@code created_at} a {@code PENDING} notification may have.
+     */
+    public synchronized LocalDateTime pending() {
+        LocalDateTime now = LocalDateTime.now();
+        if (pendingRefreshedAt == null || pendingRefreshedAt.plus(Duration.ofMillis(horizonRefreshInterval)).isBefore(now)) {
+            // Rows queued after this lookup are created after now, so now bounds them when nothing is pending
+            LocalDateTime earliest = notificationRepository.findEarliestPendingCreatedAt()
+                    .filter(createdAt -> createdAt.isBefore(now))
+                    .orElse(now);
+            pending = since(earliest);
+            pendingRefreshedAt = now;
+        }
+        return pending;
+    }
+    
+    /**
+     * Earliest {@code created_at} of a notification queued for something created at
+     * {@code createdAt}.
+     */
+    public LocalDateTime since(LocalDateTime createdAt) {
+        return createdAt != null ? createdAt.minus(Duration.ofMillis(horizonMargin)) : BEGINNING;
+    }
+}
@@ -0,0 +1,322 @@
+package com.watchnotify.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watchnotify.dto.NotificationJobDto;
+import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationJob;
+import com.watchnotify.repository.NotificationDigestEntryRepository;
+import com.watchnotify.repository.NotificationJobRepository;
+import com.watchnotify.repository.NotificationRepository;
+import com.watchnotify.repository.WatchReleaseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Lifecycle of fan-out jobs: submission, the claim a node takes before running one,
+ * checkpoints, and pausing, resuming and cancelling. The fan-out itself is run by
+ * {@link NotificationService#runJob}.
+ *
+ * <p>Pausing stops the fan-out at its next checkpoint and holds the job's queued
+ * notifications back from the outbox; resuming releases them and, if not every
+ * recipient had been queued, queues the job to continue from its checkpoint.
+ * Cancelling stops the fan-out the same way and moves every notification of the job
+ * still {@code PENDING} to {@code CANCELLED} in one update, dropping the job's digest
+ * entries that are still waiting for their digest.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationJobService {
+    
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 255;
+    
+    private final NotificationJobRepository notificationJobRepository;
+    private final NotificationRepository notificationRepository;
+    private final NotificationDigestEntryRepository digestEntryRepository;
+    private final WatchReleaseRepository watchReleaseRepository;
+    private final FanoutLeaseService fanoutLeaseService;
+    private final DeliveryCounters deliveryCounters;
+    private final NotificationHorizons notificationHorizons;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    
+    // A running job that has not checkpointed for this long is taken over by another node
+    @Value("${app.notification.jobs.stale-after:300000}")
+    private long staleAfter;
+    
+    /**
+     * Queues a fan-out of {@code request}. The caller starts it with
+     * {@link NotificationService#runJob}; otherwise the recovery sweep will.
+     *
+     * @throws IllegalArgumentException if the watch release does not exist
+     */
+    public NotificationJobDto submit(NotificationRequestDto request) {
+        if (request.getWatchReleaseId() == null || !watchReleaseRepository.existsById(request.getWatchReleaseId())) {
+            throw new IllegalArgumentException("Watch release not found: " + request.getWatchReleaseId());
+        }
+        NotificationJob job = transactionTemplate.execute(status -> notificationJobRepository.save(
+                newJob(request, NotificationJob.JobState.QUEUED, false)));
+        log.info("Queued fan-out job {} for watch release {}", job.getId(), job.getWatchReleaseId());
+        return toDto(job);
+    }
+    
+    /**
+     * Records a scheduled fan-out that this node has already claimed the release's lease for.
+     */
+    NotificationJob startScheduled(NotificationRequestDto request) {
+        LocalDateTime now = LocalDateTime.now();
+        NotificationJob job = newJob(request, NotificationJob.JobState.RUNNING, true);
+        job.setOwner(fanoutLeaseService.getNodeId());
+        job.setStartedAt(now);
+        job.setHeartbeatAt(now);
+        return transactionTemplate.execute(status -> notificationJobRepository.save(job));
+    }
+    
+    private NotificationJob newJob(NotificationRequestDto request, NotificationJob.JobState state, boolean scheduled) {
+        NotificationJob job = new NotificationJob();
+        job.setWatchReleaseId(request.getWatchReleaseId());
+        job.setKind(kindOf(request));
+        job.setState(state);
+        job.setScheduled(scheduled);
+        job.setUpdatedAt(LocalDateTime.now());
+        try {
+            job.setRequest(objectMapper.writeValueAsString(request));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize notification request", e);
+        }
+        return job;
+    }
+    
+    /**
+     * Claims a queued job, or a running one whose owner stopped checkpointing, for this node.
+     */
+    Optional<NotificationJob> claim(Long jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(status -> notificationJobRepository.claim(
+                jobId, fanoutLeaseService.getNodeId(), now, now.minus(Duration.ofMillis(staleAfter))));
+        if (claimed == null || claimed == 0) {
+            return Optional.empty();
+        }
+        return notificationJobRepository.findById(jobId);
+    }
+    
+    /**
+     * Ids of the jobs the recovery sweep should try to run.
+     */
+    public List<Long> findRunnableJobIds() {
+        return notificationJobRepository.findRunnableIds(LocalDateTime.now().minus(Duration.ofMillis(staleAfter)));
+    }
+    
+    NotificationRequestDto requestOf(NotificationJob job) {
+        try {
+            return objectMapper.readValue(job.getRequest(), NotificationRequestDto.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read the request of fan-out job " + job.getId(), e);
+        }
+    }
+    
+    /**
+     * Records that every recipient up to {@code lastRecipientId} has been queued.
+     *
+     * @return false if the job is no longer running on this node, i.e. the fan-out should stop
+     */
+    boolean checkpoint(Long jobId, Long lastRecipientId, long recipients, long queued) {
+        Integer updated = transactionTemplate.execute(status -> notificationJobRepository.checkpoint(
+                jobId, fanoutLeaseService.getNodeId(), lastRecipientId, recipients, queued, LocalDateTime.now()));
+        return updated != null && updated > 0;
+    }
+    
+    /**
+     * Puts a claimed job back in the queue, e.g. because another fan-out of its release is
+     * still running.
+     */
+    void requeue(Long jobId) {
+        update(jobId, job -> job.getState() == NotificationJob.JobState.RUNNING, job -> {
+            job.setState(NotificationJob.JobState.QUEUED);
+            job.setOwner(null);
+        });
+    }
+    
+    void complete(Long jobId) {
+        update(jobId, job -> true, job -> {
+            job.setCompletedAt(LocalDateTime.now());
+            if (job.getState() == NotificationJob.JobState.RUNNING) {
+                job.setState(NotificationJob.JobState.COMPLETED);
+            }
+        });
+    }
+    
+    void fail(Long jobId, Exception error) {
+        String message = String.valueOf(error.getMessage());
+        update(jobId, job -> job.getState() == NotificationJob.JobState.RUNNING, job -> {
+            job.setState(NotificationJob.JobState.FAILED);
+            job.setErrorMessage(message.length() > MAX_ERROR_MESSAGE_LENGTH
+                    ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH) : message);
+        });
+    }
+    
+    /**
+     * Called by the node running a job once it has stopped because the job was paused or
+     * cancelled, to apply the hold or cancellation to the rows it queued since.
+     */
+    void stopped(Long jobId) {
+        transactionTemplate.executeWithoutResult(status -> notificationJobRepository.findById(jobId).ifPresent(job -> {
+            if (job.getState() == NotificationJob.JobState.PAUSED) {
+                notificationRepository.holdPendingForJob(jobId, notificationHorizons.since(job.getCreatedAt()));
+            } else if (job.getState() == NotificationJob.JobState.CANCELLED) {
+                cancelPending(job);
+            }
+        }));
+    }
+    
+    /**
+     * @throws IllegalStateException if the job is not queued, running or completed
+     */
+    public NotificationJobDto pause(Long jobId) {
+        NotificationJob job = transition(jobId, NotificationJobService::isActive, paused -> {
+            paused.setState(NotificationJob.JobState.PAUSED);
+            int held = notificationRepository.holdPendingForJob(jobId, notificationHorizons.since(paused.getCreatedAt()));
+            log.info("Paused fan-out job {}, holding {} queued notifications", jobId, held);
+        });
+        return toDto(job);
+    }
+    
+    /**
+     * Releases a paused job's held notifications. A job that had not queued every
+     * recipient is queued again; the caller starts it with {@link NotificationService#runJob}.
+     *
+     * @throws IllegalStateException if the job is not paused
+     */
+    public NotificationJobDto resume(Long jobId) {
+        NotificationJob job = transition(jobId, paused -> paused.getState() == NotificationJob.JobState.PAUSED, paused -> {
+            paused.setState(paused.getCompletedAt() != null
+                    ? NotificationJob.JobState.COMPLETED : NotificationJob.JobState.QUEUED);
+            paused.setOwner(null);
+            int released = notificationRepository.releaseHeldForJob(jobId, LocalDateTime.now(),
+                    notificationHorizons.since(paused.getCreatedAt()));
+            log.info("Resumed fan-out job {}, releasing {} held notifications", jobId, released);
+        });
+        return toDto(job);
+    }
+    
+    /**
+     * @throws IllegalStateException if the job already failed or was cancelled
+     */
+    public NotificationJobDto cancel(Long jobId) {
+        NotificationJob job = transition(jobId,
+                cancelled -> isActive(cancelled) || cancelled.getState() == NotificationJob.JobState.PAUSED,
+                cancelled -> {
+                    cancelled.setState(NotificationJob.JobState.CANCELLED);
+                    int count = cancelPending(cancelled);
+                    log.info("Cancelled fan-out job {} and {} of its queued notifications", jobId, count);
+                });
+        return toDto(job);
+    }
+    
+    private int cancelPending(NotificationJob job) {
+        Long jobId = job.getId();
+        LocalDateTime createdSince = notificationHorizons.since(job.getCreatedAt());
+        List<Object[]> byUser = notificationRepository.countPendingByUserForJob(jobId, createdSince);
+        List<Object[]> byRelease = notificationRepository.countPendingByReleaseForJob(jobId, createdSince);
+        int cancelled = notificationRepository.cancelPendingForJob(jobId, LocalDateTime.now(), createdSince);
+        digestEntryRepository.deletePendingForJob(jobId);
+        deliveryCounters.recordStatusChanges(DeliveryCounter.Scope.USER, byUser,
+                Notification.NotificationStatus.PENDING, Notification.NotificationStatus.CANCELLED);
+        deliveryCounters.recordStatusChanges(DeliveryCounter.Scope.RELEASE, byRelease,
+                Notification.NotificationStatus.PENDING, Notification.NotificationStatus.CANCELLED);
+        return cancelled;
+    }
+    
+    private static boolean isActive(NotificationJob job) {
+        return job.getState() == NotificationJob.JobState.QUEUED
+                || job.getState() == NotificationJob.JobState.RUNNING
+                || job.getState() == NotificationJob.JobState.COMPLETED;
+    }
+    
+    // Applies a client's state change, which must be allowed in the job's current state
+    private NotificationJob transition(Long jobId, Predicate<NotificationJob> allowed, Consumer<NotificationJob> change) {
+        return transactionTemplate.execute(status -> {
+            NotificationJob job = notificationJobRepository.lockById(jobId)
+                    .orElseThrow(() -> new IllegalArgumentException("Fan-out job not found: " + jobId));
+            if (!allowed.test(job)) {
+                throw new IllegalStateException("Fan-out job " + jobId + " is " + job.getState());
+            }
+            change.accept(job);
+            job.setUpdatedAt(LocalDateTime.now());
+            return job;
+        });
+    }
+    
+    // Applies the running node's state change, unless a client has changed the state since
+    private void update(Long jobId, Predicate<NotificationJob> applies, Consumer<NotificationJob> change) {
+        transactionTemplate.executeWithoutResult(status -> notificationJobRepository.lockById(jobId)
+                .filter(applies)
+                .ifPresent(job -> {
+                    change.accept(job);
+                    job.setUpdatedAt(LocalDateTime.now());
+                }));
+    }
+    
+    /**
+     * @throws IllegalArgumentException if there is no such job
+     */
+    public NotificationJobDto getJob(Long jobId) {
+        return notificationJobRepository.findById(jobId)
+                .map(this::toDto)
+                .orElseThrow(() -> new IllegalArgumentException("Fan-out job not found: " + jobId));
+    }
+    
+    private NotificationJobDto toDto(NotificationJob job) {
+        Map<Notification.NotificationStatus, Long> counts = new EnumMap<>(Notification.NotificationStatus.class);
+        LocalDateTime lastSentAt = null;
+        for (Object[] row : notificationRepository.countByJob(job.getId())) {
+            counts.put((Notification.NotificationStatus) row[0], (Long) row[1]);
+            LocalDateTime sentAt = (LocalDateTime) row[2];
+            if (sentAt != null && (lastSentAt == null || sentAt.isAfter(lastSentAt))) {
+                lastSentAt = sentAt;
+            }
+        }
+        long sent = counts.getOrDefault(Notification.NotificationStatus.SENT, 0L);
+        long failed = counts.getOrDefault(Notification.NotificationStatus.FAILED, 0L)
+                + counts.getOrDefault(Notification.NotificationStatus.DEAD_LETTER, 0L);
+        long remaining = counts.getOrDefault(Notification.NotificationStatus.PENDING, 0L);
+        
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime fanOutEnd = job.getCompletedAt() != null ? job.getCompletedAt()
+                : job.getState() == NotificationJob.JobState.RUNNING ? now : job.getUpdatedAt();
+        LocalDateTime sendEnd = remaining == 0 && lastSentAt != null ? lastSentAt : now;
+        
+        return new NotificationJobDto(job.getId(), job.getWatchReleaseId(), job.getKind(), job.getState(),
+                job.getRecipientsResolved(), job.getNotificationsQueued(), sent, failed,
+                counts.getOrDefault(Notification.NotificationStatus.CANCELLED, 0L), remaining,
+                perSecond(job.getRecipientsResolved(), job.getStartedAt(), fanOutEnd),
+                perSecond(sent + failed, job.getStartedAt(), sendEnd),
+                job.getErrorMessage(), job.getCreatedAt(), job.getStartedAt(), job.getCompletedAt());
+    }
+    
+    private static Double perSecond(long count, LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !to.isAfter(from)) {
+            return null;
+        }
+        return count / (Duration.between(from, to).toMillis() / 1000d);
+    }
+    
+    private static Notification.NotificationKind kindOf(NotificationRequestDto request) {
+        return request.getKind() != null ? request.getKind() : Notification.NotificationKind.NEW_RELEASE;
+    }
+}
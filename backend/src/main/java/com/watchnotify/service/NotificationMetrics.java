@@ -0,0 +1,279 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.repository.NotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of the notification pipeline, from scheduler run through fan-out to the
+ * provider send. Meters are tagged by {@code channel} and {@code kind} where they
+ * apply; the ones recorded per recipient or per message are registered up front so
+ * the hot paths only do a map lookup. Dispatch-level meters (governor, circuit
+ * breaker, time waiting for channel capacity) live in {@link NotificationDispatcher}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationMetrics {
+    
+    private static final Notification.NotificationKind DEFAULT_KIND = Notification.NotificationKind.NEW_RELEASE;
+    private static final List<String> FAN_OUT_OUTCOMES = List.of("completed", "failed", "stopped", "skipped");
+    
+    private final MeterRegistry meterRegistry;
+    private final NotificationRepository notificationRepository;
+    private final NotificationHorizons notificationHorizons;
+    
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Timer>> sent =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Timer>> failed =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Counter>> retries =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Counter>> deadLetters =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Counter>> queued =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Counter>> duplicates =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Map<Notification.NotificationKind, Counter>> digested =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, Counter> deferred =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationType, AtomicLong> queueDepth =
+            new EnumMap<>(Notification.NotificationType.class);
+    private final Map<Notification.NotificationKind, Counter> recipients =
+            new EnumMap<>(Notification.NotificationKind.class);
+    private final Map<Notification.NotificationKind, Map<String, Timer>> fanOutDurations =
+            new EnumMap<>(Notification.NotificationKind.class);
+    
+    // Scheduled jobs are few and each always fans out one kind, so their meters are
+    // registered on a job's first run and reused from then on.
+    private final Map<String, JobMeters> jobs = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void register() {
+        for (Notification.NotificationType channel : Notification.NotificationType.values()) {
+            Map<Notification.NotificationKind, Timer> sentByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Timer> failedByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Counter> retriesByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Counter> deadLettersByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Counter> queuedByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Counter> duplicatesByKind = new EnumMap<>(Notification.NotificationKind.class);
+            Map<Notification.NotificationKind, Counter> digestedByKind = new EnumMap<>(Notification.NotificationKind.class);
+            for (Notification.NotificationKind kind : Notification.NotificationKind.values()) {
+                sentByKind.put(kind, sendTimer(channel, kind, "sent"));
+                failedByKind.put(kind, sendTimer(channel, kind, "failed"));
+                retriesByKind.put(kind, Counter.builder("notification.retries")
+                        .description("Failed sends rescheduled for another attempt")
+                        .tag("channel", channel.name())
+                        .tag("kind", kind.name())
+                        .register(meterRegistry));
+                deadLettersByKind.put(kind, Counter.builder("notification.dead.letters")
+                        .description("Notifications moved to DEAD_LETTER after their last attempt")
+                        .tag("channel", channel.name())
+                        .tag("kind", kind.name())
+                        .register(meterRegistry));
+                queuedByKind.put(kind, fanOutCounter(channel, kind, "queued"));
+                duplicatesByKind.put(kind, fanOutCounter(channel, kind, "duplicate"));
+                digestedByKind.put(kind, fanOutCounter(channel, kind, "digested"));
+            }
+            sent.put(channel, sentByKind);
+            failed.put(channel, failedByKind);
+            retries.put(channel, retriesByKind);
+            deadLetters.put(channel, deadLettersByKind);
+            queued.put(channel, queuedByKind);
+            duplicates.put(channel, duplicatesByKind);
+            digested.put(channel, digestedByKind);
+            
+            deferred.put(channel, Counter.builder("notification.deferred")
+                    .description("Claimed notifications put back because the channel's circuit was open")
+                    .tag("channel", channel.name())
+                    .register(meterRegistry));
+            
+            AtomicLong depth = new AtomicLong();
+            queueDepth.put(channel, depth);
+            Gauge.builder("notification.outbox.depth", depth, AtomicLong::get)
+                    .description("PENDING outbox rows, refreshed every queue-depth-interval")
+                    .tag("channel", channel.name())
+                    .register(meterRegistry);
+        }
+        
+        for (Notification.NotificationKind kind : Notification.NotificationKind.values()) {
+            recipients.put(kind, Counter.builder("notification.fanout.recipients")
+                    .description("Recipients resolved by fan-outs")
+                    .tag("kind", kind.name())
+                    .register(meterRegistry));
+            
+            Map<String, Timer> durationsByOutcome = new HashMap<>();
+            for (String outcome : FAN_OUT_OUTCOMES) {
+                durationsByOutcome.put(outcome, Timer.builder("notification.fanout.duration")
+                        .description("Time to resolve recipients and queue their notifications for one release")
+                        .tag("kind", kind.name())
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+            }
+            fanOutDurations.put(kind, durationsByOutcome);
+        }
+    }
+    
+    private Timer sendTimer(Notification.NotificationType channel, Notification.NotificationKind kind, String outcome) {
+        return Timer.builder("notification.send")
+                .description("Duration of the provider call that carried each message")
+                .tag("channel", channel.name())
+                .tag("kind", kind.name())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+    
+    private Counter fanOutCounter(Notification.NotificationType channel, Notification.NotificationKind kind,
+                                  String outcome) {
+        return Counter.builder("notification.fanout.notifications")
+                .description("Outbox rows written by fan-outs, deliveries buffered for digests and deliveries skipped as duplicates")
+                .tag("channel", channel.name())
+                .tag("kind", kind.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Records the provider call that carried {@code notification}. Messages sent together
+     * in one call, such as an SMTP connection batch, each record the whole call.
+     */
+    public void recordSend(Notification notification, long durationNanos, boolean success) {
+        Map<Notification.NotificationType, Map<Notification.NotificationKind, Timer>> timers = success ? sent : failed;
+        timers.get(notification.getNotificationType()).get(kindOf(notification))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    public void recordRetry(Notification notification) {
+        retries.get(notification.getNotificationType()).get(kindOf(notification)).increment();
+    }
+    
+    public void recordDeadLetter(Notification notification) {
+        deadLetters.get(notification.getNotificationType()).get(kindOf(notification)).increment();
+    }
+    
+    public void recordDeferred(Notification.NotificationType channel, int notifications) {
+        deferred.get(channel).increment(notifications);
+    }
+    
+    public void recordQueued(Notification.NotificationType channel, Notification.NotificationKind kind) {
+        queued.get(channel).get(kind).increment();
+    }
+    
+    public void recordDuplicate(Notification.NotificationType channel, Notification.NotificationKind kind) {
+        duplicates.get(channel).get(kind).increment();
+    }
+    
+    public void recordDigested(Notification.NotificationType channel, Notification.NotificationKind kind) {
+        digested.get(channel).get(kind).increment();
+    }
+    
+    public void recordRecipients(Notification.NotificationKind kind, long count) {
+        recipients.get(kind).increment(count);
+    }
+    
+    /**
+     * Records a fan-out's duration. The outcome is {@code completed}, {@code failed},
+     * {@code stopped} when its job was paused or cancelled, or {@code skipped} when the
+     * release's lease was held elsewhere.
+     */
+    public void recordFanOut(Notification.NotificationKind kind, String outcome, long durationNanos) {
+        fanOutDurations.get(kind).get(outcome).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Starts timing a run of a scheduled job. A run lasts until every fan-out it tracks
+     * has finished; starting a run while an earlier run of the same job is still going
+     * counts as an overlap.
+     */
+    public JobRun startJob(String job, Notification.NotificationKind kind) {
+        JobMeters meters = jobs.computeIfAbsent(job, name -> new JobMeters(
+                Timer.builder("notification.scheduler.run")
+                        .description("Time from a scheduled run starting until the fan-outs it started have finished")
+                        .tag("job", name)
+                        .tag("kind", kind.name())
+                        .register(meterRegistry),
+                Counter.builder("notification.scheduler.overlaps")
+                        .description("Scheduled runs started while the previous run's fan-outs were still in progress")
+                        .tag("job", name)
+                        .tag("kind", kind.name())
+                        .register(meterRegistry),
+                new AtomicInteger()));
+        if (meters.active().getAndIncrement() > 0) {
+            meters.overlaps().increment();
+            log.warn("Scheduled job {} started while its previous run is still in progress", job);
+        }
+        return new JobRun(meters.run(), meters.active(), System.nanoTime());
+    }
+    
+    @Scheduled(fixedDelayString = "${app.notification.metrics.queue-depth-interval:15000}")
+    public void refreshQueueDepth() {
+        Map<Notification.NotificationType, Long> pending = new EnumMap<>(Notification.NotificationType.class);
+        for (Object[] row : notificationRepository.countPendingByChannel(notificationHorizons.pending())) {
+            pending.put((Notification.NotificationType) row[0], (Long) row[1]);
+        }
+        queueDepth.forEach((channel, depth) -> depth.set(pending.getOrDefault(channel, 0L)));
+    }
+    
+    private static Notification.NotificationKind kindOf(Notification notification) {
+        return notification.getNotificationKind() != null ? notification.getNotificationKind() : DEFAULT_KIND;
+    }
+    
+    private record JobMeters(Timer run, Counter overlaps, AtomicInteger active) {
+    }
+    
+    /**
+     * One run of a scheduled job and the fan-outs it started.
+     */
+    public static class JobRun {
+        
+        private final Timer timer;
+        private final AtomicInteger active;
+        private final long started;
+        private final List<CompletableFuture<?>> fanOuts = new ArrayList<>();
+        
+        private JobRun(Timer timer, AtomicInteger active, long started) {
+            this.timer = timer;
+            this.active = active;
+            this.started = started;
+        }
+        
+        public void track(CompletableFuture<?> fanOut) {
+            fanOuts.add(fanOut);
+        }
+        
+        /**
+         * Ends the run once its tracked fan-outs have finished, successfully or not.
+         */
+        public void finish() {
+            CompletableFuture.allOf(fanOuts.toArray(CompletableFuture[]::new)).whenComplete((result, error) -> {
+                timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                active.decrementAndGet();
+            });
+        }
+    }
+}
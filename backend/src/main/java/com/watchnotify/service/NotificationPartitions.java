@@ -0,0 +1,291 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.RollupWatermark;
+import com.watchnotify.repository.RollupWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Maintains the monthly partitions of the notifications table on PostgreSQL, created by
+ * {@code database/schema/10_notification_partitions.sql}.
+ *
+ * <p>Each run creates the partitions of the current month and the next
+ * {@code months-ahead} months, so inserts never fall through to the default partition,
+ * and archives every partition whose month ended more than {@code retention-months}
+ * ago. Archiving detaches the partition, so queries stop reading it, streams it with
+ * {@code COPY} to a gzipped CSV file in {@code archive-dir}, takes its rows off the
+ * delivery counters and drops it. A partition the analytics rollup has not passed yet is
+ * kept. Partitions left detached by a failed run are archived again by the next one;
+ * the file is written under a temporary name and only renamed once it is complete.
+ *
+ * <p>Every partition is recorded in {@code notification_partition_archives} before it is
+ * detached, and only detached tables recorded there without an archive are archived, so
+ * another table that happens to be named like a partition is never dropped.
+ *
+ * <p>A run holds a session advisory lock, so only one node maintains the partitions at a
+ * time. Disabled by default, since the H2 development database is not partitioned.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationPartitions {
+    
+    private static final String PARTITION_PREFIX = "notifications_p";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+    
+    // Key of the advisory lock held while a node maintains the partitions
+    private static final long MAINTENANCE_LOCK = 0x6e6f7469L;
+    
+    private static final String ATTACHED_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'notifications'::regclass " +
+            "AND c.relname ~ '^notifications_p[0-9]{6}$' ORDER BY c.relname";
+    
+    // Partitions this job detached and has not archived yet
+    private static final String DETACHED_PARTITIONS = "SELECT a.partition_name " +
+            "FROM notification_partition_archives a JOIN pg_class c ON c.relname = a.partition_name " +
+            "AND c.relnamespace = current_schema()::regnamespace " +
+            "WHERE a.archived_at IS NULL AND c.relkind = 'r' AND NOT c.relispartition ORDER BY a.partition_name";
+    
+    private static final String RECORD_DETACHED = "INSERT INTO notification_partition_archives " +
+            "(partition_name, detached_at) VALUES (?, ?) " +
+            "ON CONFLICT (partition_name) DO UPDATE SET detached_at = EXCLUDED.detached_at";
+    
+    private static final String RECORD_ARCHIVED = "UPDATE notification_partition_archives " +
+            "SET archived_at = ?, archived_rows = ?, archive_file = ? WHERE partition_name = ?";
+    
+    private final DataSource dataSource;
+    private final DeliveryCounters deliveryCounters;
+    private final RollupWatermarkRepository watermarkRepository;
+    
+    @Value("${app.notification.partitions.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.notification.partitions.months-ahead:3}")
+    private int monthsAhead;
+    
+    @Value("${app.notification.partitions.retention-months:12}")
+    private int retentionMonths;
+    
+    @Value("${app.notification.partitions.archive-dir:archive/notifications}")
+    private String archiveDir;
+    
+    // Bounds the wait for the table lock that creating and detaching partitions take
+    @Value("${app.notification.partitions.lock-timeout:5000}")
+    private long lockTimeout;
+    
+    @Scheduled(fixedDelayString = "${app.notification.partitions.maintenance-interval:3600000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            if (!isPartitioned(connection)) {
+                log.warn("The notifications table is not partitioned, apply database/schema/10_notification_partitions.sql");
+                return;
+            }
+            if (!tryLock(connection)) {
+                log.debug("Notification partitions are being maintained by another node");
+                return;
+            }
+            
+            try {
+                execute(connection, "SET lock_timeout = " + lockTimeout);
+                createAhead(connection);
+                archiveExpired(connection);
+            } finally {
+                execute(connection, "RESET lock_timeout");
+                unlock(connection);
+            }
+        } catch (Exception e) {
+            log.error("Notification partition maintenance failed, retrying on the next run", e);
+        }
+    }
+    
+    private void createAhead(Connection connection) throws SQLException {
+        List<String> attached = partitions(connection, ATTACHED_PARTITIONS);
+        YearMonth current = YearMonth.now();
+        for (int ahead = 0; ahead <= monthsAhead; ahead++) {
+            YearMonth month = current.plusMonths(ahead);
+            String partition = partitionName(month);
+            if (attached.contains(partition)) {
+                continue;
+            }
+            // Fails while notifications_default holds rows of the month; archiving still runs
+            try {
+                execute(connection, "CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF notifications " +
+                        "FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+                log.info("Created notification partition {}", partition);
+            } catch (SQLException e) {
+                log.error("Could not create notification partition {}, move its rows out of notifications_default " +
+                        "if it holds any: {}", partition, e.getMessage());
+            }
+        }
+    }
+    
+    private void archiveExpired(Connection connection) throws SQLException, IOException {
+        YearMonth oldestKept = YearMonth.now().minusMonths(retentionMonths);
+        LocalDateTime rolledUpTo = watermarkRepository.findById(NotificationRollup.WATERMARK)
+                .map(RollupWatermark::getWatermark)
+                .orElse(null);
+        
+        for (String partition : partitions(connection, ATTACHED_PARTITIONS)) {
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+            if (rolledUpTo != null && month.plusMonths(1).atDay(1).atStartOfDay().isAfter(rolledUpTo)) {
+                log.warn("Keeping expired notification partition {} until the analytics rollup has passed it", partition);
+                continue;
+            }
+            recordDetached(connection, partition);
+            execute(connection, "ALTER TABLE notifications DETACH PARTITION " + partition);
+            log.info("Detached expired notification partition {}", partition);
+        }
+        
+        for (String partition : partitions(connection, DETACHED_PARTITIONS)) {
+            archive(connection, partition);
+        }
+    }
+    
+    // A run that dies after taking the counts off but before the drop takes them off again on
+    // the next run; counter reconciliation corrects that
+    private void archive(Connection connection, String partition) throws SQLException, IOException {
+        Path directory = Path.of(archiveDir);
+        Files.createDirectories(directory);
+        Path archive = directory.resolve(partition + ".csv.gz");
+        Path incomplete = directory.resolve(partition + ".csv.gz.part");
+        
+        long rows;
+        try (FileOutputStream file = new FileOutputStream(incomplete.toFile())) {
+            GZIPOutputStream out = new GZIPOutputStream(new BufferedOutputStream(file, ARCHIVE_BUFFER_SIZE),
+                    ARCHIVE_BUFFER_SIZE);
+            rows = connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyOut("COPY " + partition + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+            out.finish();
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(incomplete, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        takeOffCounters(connection, partition, DeliveryCounter.Scope.USER, "user_id");
+        takeOffCounters(connection, partition, DeliveryCounter.Scope.RELEASE, "watch_release_id");
+        dropArchived(connection, partition, rows, archive);
+        log.info("Archived {} notifications of partition {} to {}", rows, partition, archive);
+    }
+    
+    private static void recordDetached(Connection connection, String partition) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(RECORD_DETACHED)) {
+            statement.setString(1, partition);
+            statement.setObject(2, LocalDateTime.now());
+            statement.executeUpdate();
+        }
+    }
+    
+    // Drops the partition and marks it archived in one transaction
+    private static void dropArchived(Connection connection, String partition, long rows, Path archive)
+            throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(RECORD_ARCHIVED)) {
+            execute(connection, "DROP TABLE " + partition);
+            statement.setObject(1, LocalDateTime.now());
+            statement.setLong(2, rows);
+            statement.setString(3, archive.toString());
+            statement.setString(4, partition);
+            statement.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+    
+    private void takeOffCounters(Connection connection, String partition, DeliveryCounter.Scope scope,
+                                 String column) throws SQLException {
+        String sql = "SELECT " + column + ", notification_type, status, COUNT(*) FROM " + partition +
+                " WHERE " + column + " IS NOT NULL AND notification_type IS NOT NULL AND status IS NOT NULL " +
+                "GROUP BY " + column + ", notification_type, status";
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(sql)) {
+            while (rows.next()) {
+                deliveryCounters.recordArchived(scope, rows.getLong(1),
+                        Notification.NotificationType.valueOf(rows.getString(2)),
+                        Notification.NotificationStatus.valueOf(rows.getString(3)), rows.getLong(4));
+            }
+        }
+    }
+    
+    private static boolean isPartitioned(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(
+                     "SELECT relkind FROM pg_class WHERE oid = to_regclass('notifications')")) {
+            return rows.next() && "p".equals(rows.getString(1));
+        }
+    }
+    
+    private static boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, MAINTENANCE_LOCK);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() && rows.getBoolean(1);
+            }
+        }
+    }
+    
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, MAINTENANCE_LOCK);
+            statement.execute();
+        }
+    }
+    
+    private static List<String> partitions(Connection connection, String sql) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(sql)) {
+            while (rows.next()) {
+                partitions.add(rows.getString(1));
+            }
+        }
+        return partitions;
+    }
+    
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+    
+    private static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_MONTH);
+    }
+}
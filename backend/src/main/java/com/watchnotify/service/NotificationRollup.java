@@ -0,0 +1,202 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationDailyRollup;
+import com.watchnotify.model.NotificationHourlyRollup;
+import com.watchnotify.model.RollupWatermark;
+import com.watchnotify.repository.NotificationDailyRollupRepository;
+import com.watchnotify.repository.NotificationHourlyRollupRepository;
+import com.watchnotify.repository.NotificationRepository;
+import com.watchnotify.repository.RollupWatermarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps the hourly and daily notification rollups that the analytics views read up to
+ * date incrementally, so dashboards do not aggregate the notifications table.
+ *
+ * <p>Each run recomputes the hourly buckets from the watermark up to the current hour,
+ * each with a range scan on {@code created_at}, replaces their rollup rows and then
+ * re-sums the days they fall on. Replacing whole buckets keeps runs idempotent. The
+ * watermark then moves up to the first bucket that may still change: one that ends
+ * within {@code settle-delay} of now, since its rows may not all be committed yet, or
+ * one that still has {@code PENDING} rows and ended less than {@code max-open-hours}
+ * ago. Older buckets are never scanned again; a notification that settles after that
+ * stays counted as {@code PENDING}.
+ *
+ * <p>The watermark row is locked for the duration of a run and advanced in the same
+ * transaction as the rollup rows, so a run that dies rolls back entirely and the next
+ * run, on this node or another, picks up from the last committed watermark.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationRollup {
+    
+    static final String WATERMARK = "notification_rollup";
+    
+    private final NotificationRepository notificationRepository;
+    private final NotificationHourlyRollupRepository hourlyRollupRepository;
+    private final NotificationDailyRollupRepository dailyRollupRepository;
+    private final RollupWatermarkRepository watermarkRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${app.analytics.rollup.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${app.analytics.rollup.max-hours-per-run:48}")
+    private int maxHoursPerRun;
+    
+    @Value("${app.analytics.rollup.settle-delay:300000}")
+    private long settleDelay;
+    
+    @Value("${app.analytics.rollup.max-open-hours:2}")
+    private long maxOpenHours;
+    
+    /**
+     * Rolls up everything created since the watermark, in batches of at most
+     * {@code max-hours-per-run} hours until it has caught up with the current hour.
+     */
+    @Scheduled(initialDelayString = "${app.analytics.rollup.interval:300000}",
+               fixedDelayString = "${app.analytics.rollup.interval:300000}")
+    public void rollUp() {
+        if (!enabled) {
+            return;
+        }
+        
+        try {
+            initializeWatermark();
+            Boolean caughtUp;
+            do {
+                LocalDateTime now = LocalDateTime.now();
+                caughtUp = transactionTemplate.execute(status -> rollUpBatch(now));
+            } while (Boolean.FALSE.equals(caughtUp));
+        } catch (Exception e) {
+            log.error("Notification rollup failed, retrying from the last watermark on the next run", e);
+        }
+    }
+    
+    // The first run starts at the hour of the oldest notification
+    private void initializeWatermark() {
+        if (watermarkRepository.existsById(WATERMARK)) {
+            return;
+        }
+        LocalDateTime start = notificationRepository.findEarliestCreatedAt()
+                .orElseGet(LocalDateTime::now)
+                .truncatedTo(ChronoUnit.HOURS);
+        try {
+            watermarkRepository.saveAndFlush(new RollupWatermark(WATERMARK, start, LocalDateTime.now()));
+            log.info("Starting notification rollup at {}", start);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Rollup watermark was created by another node");
+        }
+    }
+    
+    /**
+     * @return whether the batch reached the current hour, or {@code null} if another node
+     *         is running the rollup
+     */
+    private Boolean rollUpBatch(LocalDateTime now) {
+        Optional<RollupWatermark> locked = watermarkRepository.lockByName(WATERMARK);
+        if (locked.isEmpty()) {
+            log.debug("Notification rollup is running on another node");
+            return null;
+        }
+        
+        RollupWatermark watermark = locked.get();
+        LocalDateTime settled = now.minus(Duration.ofMillis(settleDelay));
+        LocalDateTime forcedClosed = now.minusHours(maxOpenHours);
+        
+        // A batch that reaches the buckets which may still be open runs through to the current
+        // hour, so a batch that stops short of it always moves the watermark
+        LocalDateTime mayBeOpen = (settled.isBefore(forcedClosed) ? settled : forcedClosed)
+                .truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime end = watermark.getWatermark().plusHours(maxHoursPerRun);
+        boolean caughtUp = end.isAfter(mayBeOpen);
+        if (caughtUp) {
+            end = now.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        }
+        
+        LocalDateTime next = null;
+        Set<LocalDate> days = new TreeSet<>();
+        for (LocalDateTime bucket = watermark.getWatermark(); bucket.isBefore(end); bucket = bucket.plusHours(1)) {
+            boolean pending = rollUpHour(bucket);
+            days.add(bucket.toLocalDate());
+            
+            LocalDateTime bucketEnd = bucket.plusHours(1);
+            boolean open = bucketEnd.isAfter(settled) || (pending && bucketEnd.isAfter(forcedClosed));
+            if (open && next == null) {
+                next = bucket;
+            }
+        }
+        days.forEach(this::rollUpDay);
+        
+        if (next == null) {
+            next = end;
+        }
+        log.debug("Rolled up notifications from {} to {}, watermark now {}", watermark.getWatermark(), end, next);
+        watermark.setWatermark(next);
+        watermark.setUpdatedAt(now);
+        return caughtUp;
+    }
+    
+    // Replaces the bucket's rollup rows; returns whether any of its notifications are still pending
+    private boolean rollUpHour(LocalDateTime bucket) {
+        hourlyRollupRepository.deleteBucket(bucket);
+        
+        boolean pending = false;
+        List<NotificationHourlyRollup> rows = new ArrayList<>();
+        for (Object[] row : notificationRepository.rollUp(bucket, bucket.plusHours(1))) {
+            Notification.NotificationStatus status = (Notification.NotificationStatus) row[2];
+            pending |= status == Notification.NotificationStatus.PENDING;
+            rows.add(new NotificationHourlyRollup(null, bucket,
+                    (Notification.NotificationType) row[0], (Notification.NotificationKind) row[1], status,
+                    toLong(row[3]), toLong(row[4]), toLong(row[5]),
+                    toSeconds(row[6]), toSeconds(row[7]), toSeconds(row[8])));
+        }
+        hourlyRollupRepository.saveAll(rows);
+        return pending;
+    }
+    
+    private void rollUpDay(LocalDate day) {
+        hourlyRollupRepository.flush();
+        dailyRollupRepository.deleteDay(day);
+        
+        List<NotificationDailyRollup> rows = new ArrayList<>();
+        for (Object[] row : hourlyRollupRepository.sumBuckets(day.atStartOfDay(), day.plusDays(1).atStartOfDay())) {
+            rows.add(new NotificationDailyRollup(null, day,
+                    (Notification.NotificationType) row[0], (Notification.NotificationKind) row[1],
+                    (Notification.NotificationStatus) row[2],
+                    toLong(row[3]), toLong(row[4]), toLong(row[5]),
+                    toDouble(row[6]), toDouble(row[7]), toDouble(row[8])));
+        }
+        dailyRollupRepository.saveAll(rows);
+    }
+    
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+    
+    private static Double toSeconds(Object nanos) {
+        return nanos != null ? ((Number) nanos).doubleValue() / 1_000_000_000d : null;
+    }
+    
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -0,0 +1,51 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers an already rendered notification over its channel. Any exception
+ * thrown here is treated as a failed attempt by the caller.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationSender {
+    
+    private final JavaMailSender emailSender;
+    
+    public void send(Notification notification) {
+        switch (notification.getNotificationType()) {
+            case EMAIL -> sendEmail(notification);
+            case SMS -> sendSms(notification);
+            case PUSH -> sendPush(notification);
+        }
+    }
+    
+    private void sendEmail(Notification notification) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(notification.getRecipient());
+        message.setSubject(notification.getSubject());
+        message.setText(notification.getMessage());
+        
+        emailSender.send(message);
+        
+        log.info("Email notification sent to: {}", notification.getRecipient());
+    }
+    
+    private void sendSms(Notification notification) {
+        // This would integrate with an SMS service like Twilio
+        log.info("SMS notification would be sent to: {} with content: {}", 
+                notification.getRecipient(), notification.getMessage());
+    }
+    
+    private void sendPush(Notification notification) {
+        // This would integrate with a push notification service like Firebase
+        log.info("Push notification would be sent to user: {} with content: {}", 
+                notification.getRecipient(), notification.getMessage());
+    }
+}
@@ -1,7 +1,15 @@
 package com.watchnotify.service;
 
+import com.watchnotify.dto.DeliveryStatsDto;
+import com.watchnotify.dto.NotificationDto;
 import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.dto.NotificationSummaryDto;
+import com.watchnotify.dto.RecipientDto;
+import com.watchnotify.model.DeliveryCounter;
+import com.watchnotify.model.FanoutLease;
 import com.watchnotify.model.Notification;
+import com.watchnotify.model.NotificationDigestEntry;
+import com.watchnotify.model.NotificationJob;
 import com.watchnotify.model.User;
 import com.watchnotify.model.WatchRelease;
 import com.watchnotify.repository.NotificationRepository;
@@ -9,15 +17,16 @@ import com.watchnotify.repository.UserRepository;
 import com.watchnotify.repository.WatchReleaseRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -28,215 +37,321 @@ public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
     private final WatchReleaseRepository watchReleaseRepository;
-    private final JavaMailSender emailSender;
+    private final WatchReleaseService watchReleaseService;
+    private final RecipientReader recipientReader;
+    private final NotificationWriter notificationWriter;
+    private final MessageTemplateEngine messageTemplateEngine;
+    private final FanoutLeaseService fanoutLeaseService;
+    private final NotificationJobService notificationJobService;
+    private final NotificationDedupIndex notificationDedupIndex;
+    private final NotificationDigests notificationDigests;
+    private final NotificationMetrics notificationMetrics;
+    private final DeliveryCounters deliveryCounters;
     
+    /**
+     * Runs a fan-out job: fans its watch release out to every matching recipient.
+     * Recipients are streamed in chunks and one {@code PENDING} outbox row is written per
+     * recipient and channel; the actual sends are made by the outbox worker, which claims
+     * those rows in batches. The job only runs if this node can claim both the job and
+     * the release's fan-out lease, and recipients who already got this release on a
+     * channel are skipped for that channel. Recipients who opted into digests on a channel
+     * get a digest entry there instead of a row. After every chunk the queued rows are flushed
+     * and the job checkpointed, and the fan-out stops if the job has been paused or
+     * cancelled in the meantime. A job that resumes starts after its checkpoint.
+     */
     @Async
-    public void sendWatchReleaseNotifications(NotificationRequestDto request) {
-        try {
-            WatchRelease watchRelease = watchReleaseRepository.findById(request.getWatchReleaseId())
-                    .orElseThrow(() -> new RuntimeException("Watch release not found"));
-            
-            List<User> targetUsers = getTargetUsers(request);
-            
-            for (User user : targetUsers) {
-                sendNotificationToUser(user, watchRelease, request);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Void> runJob(Long jobId) {
+        long started = System.nanoTime();
+        Optional<NotificationJob> claimed = notificationJobService.claim(jobId);
+        if (claimed.isEmpty()) {
+            log.debug("Fan-out job {} is not runnable or was claimed elsewhere", jobId);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        NotificationJob job = claimed.get();
+        NotificationRequestDto request = notificationJobService.requestOf(job);
+        FanoutLease.LeaseType leaseType = FanoutLease.LeaseType.of(job.getKind());
+        if (!fanoutLeaseService.tryClaim(job.getWatchReleaseId(), leaseType, Boolean.TRUE.equals(job.getScheduled()))) {
+            if (Boolean.TRUE.equals(job.getScheduled())) {
+                // The next scheduler run starts a new job if the announcement is still due
+                notificationJobService.fail(jobId, new IllegalStateException("Fan-out lease not available"));
+            } else {
+                log.info("Fan-out job {} waits for the running fan-out of watch release {}", jobId, job.getWatchReleaseId());
+                notificationJobService.requeue(jobId);
             }
-            
-            // Mark the release as notified
-            watchRelease.setIsNotified(true);
-            watchRelease.setNotificationSentAt(LocalDateTime.now());
-            watchReleaseRepository.save(watchRelease);
-            
-            log.info("Sent notifications for watch release: {} to {} users", 
-                    watchRelease.getWatchName(), targetUsers.size());
-                    
-        } catch (Exception e) {
-            log.error("Error sending watch release notifications", e);
-            throw new RuntimeException("Failed to send notifications", e);
+            notificationMetrics.recordFanOut(job.getKind(), "skipped", System.nanoTime() - started);
+            return CompletableFuture.completedFuture(null);
         }
+        
+        fanOut(job, request);
+        return CompletableFuture.completedFuture(null);
     }
     
+    /**
+     * Scheduler entry point. Unlike on-demand sends, an announcement that has already
+     * completed anywhere in the cluster is not fanned out again. The returned future
+     * completes once the fan-out has finished, so the scheduler can time its runs.
+     */
     @Async
-    public void sendNotificationToUser(User user, WatchRelease watchRelease, NotificationRequestDto request) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Void> sendScheduledNotifications(NotificationRequestDto request) {
+        Notification.NotificationKind kind = request.getKind() != null
+                ? request.getKind() : Notification.NotificationKind.NEW_RELEASE;
+        FanoutLease.LeaseType leaseType = FanoutLease.LeaseType.of(kind);
+        long started = System.nanoTime();
+        
+        if (!fanoutLeaseService.tryClaim(request.getWatchReleaseId(), leaseType, true)) {
+            log.info("Skipping {} fan-out of watch release {}: lease not available", leaseType, request.getWatchReleaseId());
+            notificationMetrics.recordFanOut(kind, "skipped", System.nanoTime() - started);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        NotificationJob job;
         try {
-            // Send email notification
-            if (request.getSendEmail() && user.getEmailNotificationsEnabled()) {
-                sendEmailNotification(user, watchRelease, request.getCustomMessage());
-            }
-            
-            // Send SMS notification
-            if (request.getSendSms() && user.getSmsNotificationsEnabled() && user.getPhoneNumber() != null) {
-                sendSmsNotification(user, watchRelease, request.getCustomMessage());
-            }
-            
-            // Send push notification
-            if (request.getSendPush() && user.getPushNotificationsEnabled()) {
-                sendPushNotification(user, watchRelease, request.getCustomMessage());
-            }
-            
-        } catch (Exception e) {
-            log.error("Error sending notification to user: {}", user.getEmail(), e);
-            saveFailedNotification(user, watchRelease, "Failed to send notification: " + e.getMessage());
+            job = notificationJobService.startScheduled(request);
+        } catch (RuntimeException e) {
+            fanoutLeaseService.fail(request.getWatchReleaseId(), leaseType);
+            throw e;
         }
+        fanOut(job, request);
+        return CompletableFuture.completedFuture(null);
     }
     
-    private void sendEmailNotification(User user, WatchRelease watchRelease, String customMessage) {
+    // Runs with the job claimed and the release's lease held by this node
+    private void fanOut(NotificationJob job, NotificationRequestDto request) {
+        Long jobId = job.getId();
+        Long releaseId = job.getWatchReleaseId();
+        Notification.NotificationKind kind = job.getKind();
+        FanoutLease.LeaseType leaseType = FanoutLease.LeaseType.of(kind);
+        long started = System.nanoTime();
+        
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setTo(user.getEmail());
-            message.setSubject("New Watch Release: " + watchRelease.getWatchName());
-            
-            String emailContent = buildEmailContent(user, watchRelease, customMessage);
-            message.setText(emailContent);
+            WatchRelease watchRelease = watchReleaseRepository.findById(releaseId)
+                    .orElseThrow(() -> new RuntimeException("Watch release not found"));
             
-            emailSender.send(message);
+            // Everything but the salutation is rendered once for the whole fan-out
+            MessageTemplateEngine.RenderedRelease messages = messageTemplateEngine.render(
+                    watchRelease, kind, request.getCustomMessage());
             
-            saveNotification(user, watchRelease, Notification.NotificationType.EMAIL, 
-                    "New Watch Release: " + watchRelease.getWatchName(), emailContent, user.getEmail());
+            // Loaded while holding the lease, so it sees every delivery made by earlier fan-outs
+            NotificationDedupIndex.ReleaseDeliveries deliveries = notificationDedupIndex.open(watchRelease, kind);
+            long delivered = deliveries.size();
             
-            log.info("Email notification sent to: {}", user.getEmail());
+            List<NotificationDigestEntry> digestEntries = new ArrayList<>();
+            long recipientCount = recipientReader.forEachChunk(request, job.getLastRecipientId(), recipients -> {
+                fanoutLeaseService.renew(releaseId, leaseType);
+                long queuedBefore = deliveries.size();
+                for (RecipientDto recipient : recipients) {
+                    queueNotificationsForUser(recipient, watchRelease, messages, deliveries, digestEntries,
+                            kind, request, jobId);
+                }
+                
+                // The checkpoint may only cover rows and digest entries that are stored
+                notificationWriter.flush();
+                notificationDigests.buffer(digestEntries);
+                digestEntries.clear();
+                if (!notificationJobService.checkpoint(jobId, recipients.get(recipients.size() - 1).getId(),
+                        recipients.size(), deliveries.size() - queuedBefore)) {
+                    throw new FanOutStopped();
+                }
+            });
             
-        } catch (Exception e) {
-            log.error("Failed to send email notification to: {}", user.getEmail(), e);
-            saveFailedNotification(user, watchRelease, "Email sending failed: " + e.getMessage());
-        }
-    }
-    
-    private void sendSmsNotification(User user, WatchRelease watchRelease, String customMessage) {
-        try {
-            // This would integrate with an SMS service like Twilio
-            String smsContent = buildSmsContent(user, watchRelease, customMessage);
+            // Reminders do not count as the release announcement
+            if (leaseType == FanoutLease.LeaseType.ANNOUNCEMENT) {
+                watchReleaseService.markAsNotified(releaseId);
+            }
+            fanoutLeaseService.complete(releaseId, leaseType);
+            notificationJobService.complete(jobId);
+            notificationMetrics.recordRecipients(kind, recipientCount);
+            notificationMetrics.recordFanOut(kind, "completed", System.nanoTime() - started);
             
-            // Placeholder for SMS sending logic
-            log.info("SMS notification would be sent to: {} with content: {}", user.getPhoneNumber(), smsContent);
+            log.info("Fan-out job {} queued {} notifications for watch release: {} to {} users",
+                    jobId, deliveries.size() - delivered, watchRelease.getWatchName(), recipientCount);
             
-            saveNotification(user, watchRelease, Notification.NotificationType.SMS, 
-                    "New Watch Release", smsContent, user.getPhoneNumber());
+        } catch (FanOutStopped stopped) {
+            fanoutLeaseService.fail(releaseId, leaseType);
+            notificationJobService.stopped(jobId);
+            notificationMetrics.recordFanOut(kind, "stopped", System.nanoTime() - started);
+            log.info("Fan-out job {} for watch release {} stopped at its checkpoint", jobId, releaseId);
             
         } catch (Exception e) {
-            log.error("Failed to send SMS notification to: {}", user.getPhoneNumber(), e);
-            saveFailedNotification(user, watchRelease, "SMS sending failed: " + e.getMessage());
+            fanoutLeaseService.fail(releaseId, leaseType);
+            notificationJobService.fail(jobId, e);
+            notificationMetrics.recordFanOut(kind, "failed", System.nanoTime() - started);
+            log.error("Error in fan-out job {} for watch release {}", jobId, releaseId, e);
+            throw new RuntimeException("Failed to send notifications", e);
         }
     }
     
-    private void sendPushNotification(User user, WatchRelease watchRelease, String customMessage) {
+    private void queueNotificationsForUser(RecipientDto user, WatchRelease watchRelease,
+                                           MessageTemplateEngine.RenderedRelease messages,
+                                           NotificationDedupIndex.ReleaseDeliveries deliveries,
+                                           List<NotificationDigestEntry> digestEntries,
+                                           Notification.NotificationKind kind, NotificationRequestDto request,
+                                           Long jobId) {
         try {
-            // This would integrate with a push notification service like Firebase
-            String pushContent = buildPushContent(user, watchRelease, customMessage);
+            // Queue email notification
+            if (request.getSendEmail() && user.getEmailNotificationsEnabled()) {
+                queueNotification(user, watchRelease, Notification.NotificationType.EMAIL, messages, deliveries, digestEntries, kind, user.getEmail(), jobId);
+            }
             
-            // Placeholder for push notification logic
-            log.info("Push notification would be sent to user: {} with content: {}", user.getEmail(), pushContent);
+            // Queue SMS notification
+            if (request.getSendSms() && user.getSmsNotificationsEnabled() && user.getPhoneNumber() != null) {
+                queueNotification(user, watchRelease, Notification.NotificationType.SMS, messages, deliveries, digestEntries, kind, user.getPhoneNumber(), jobId);
+            }
             
-            saveNotification(user, watchRelease, Notification.NotificationType.PUSH, 
-                    "New Watch Release", pushContent, user.getEmail());
+            // Queue push notification
+            if (request.getSendPush() && user.getPushNotificationsEnabled()) {
+                queueNotification(user, watchRelease, Notification.NotificationType.PUSH, messages, deliveries, digestEntries, kind, user.getEmail(), jobId);
+            }
             
         } catch (Exception e) {
-            log.error("Failed to send push notification to user: {}", user.getEmail(), e);
-            saveFailedNotification(user, watchRelease, "Push notification failed: " + e.getMessage());
+            log.error("Error queueing notification for user: {}", user.getEmail(), e);
+            saveFailedNotification(user, watchRelease, "Failed to queue notification: " + e.getMessage(), jobId);
         }
     }
     
-    private String buildEmailContent(User user, WatchRelease watchRelease, String customMessage) {
-        StringBuilder content = new StringBuilder();
-        content.append("Dear ").append(user.getFirstName()).append(",\n\n");
-        
-        if (customMessage != null && !customMessage.trim().isEmpty()) {
-            content.append(customMessage).append("\n\n");
-        }
-        
-        content.append("We're excited to announce a new watch release!\n\n");
-        content.append("Watch: ").append(watchRelease.getWatchName()).append("\n");
-        content.append("Brand: ").append(watchRelease.getBrand()).append("\n");
-        
-        if (watchRelease.getModelNumber() != null) {
-            content.append("Model: ").append(watchRelease.getModelNumber()).append("\n");
-        }
-        
-        if (watchRelease.getPrice() != null) {
-            content.append("Price: ").append(watchRelease.getCurrency()).append(" ").append(watchRelease.getPrice()).append("\n");
+    private void queueNotification(RecipientDto user, WatchRelease watchRelease, Notification.NotificationType type, 
+                                   MessageTemplateEngine.RenderedRelease messages,
+                                   NotificationDedupIndex.ReleaseDeliveries deliveries,
+                                   List<NotificationDigestEntry> digestEntries,
+                                   Notification.NotificationKind kind, String recipient, Long jobId) {
+        int dedupSequence = deliveries.reserve(user.getId(), type);
+        if (dedupSequence < 0) {
+            log.debug("Skipping duplicate {} {} notification for user {}", kind, type, user.getId());
+            notificationMetrics.recordDuplicate(type, kind);
+            return;
         }
         
-        if (watchRelease.getDescription() != null) {
-            content.append("Description: ").append(watchRelease.getDescription()).append("\n");
-        }
-        
-        if (watchRelease.getProductUrl() != null) {
-            content.append("Learn more: ").append(watchRelease.getProductUrl()).append("\n");
-        }
-        
-        content.append("\nBest regards,\nWatch Notification Service");
-        
-        return content.toString();
-    }
-    
-    private String buildSmsContent(User user, WatchRelease watchRelease, String customMessage) {
-        StringBuilder content = new StringBuilder();
-        content.append("New watch release: ").append(watchRelease.getWatchName());
-        content.append(" by ").append(watchRelease.getBrand());
-        
-        if (watchRelease.getPrice() != null) {
-            content.append(" - ").append(watchRelease.getCurrency()).append(" ").append(watchRelease.getPrice());
+        if (notificationDigests.wants(user, type)) {
+            NotificationDigestEntry entry = new NotificationDigestEntry();
+            entry.setUserId(user.getId());
+            entry.setWatchReleaseId(watchRelease.getId());
+            entry.setNotificationType(type);
+            entry.setNotificationKind(kind);
+            entry.setDedupSequence(dedupSequence);
+            entry.setJobId(jobId);
+            digestEntries.add(entry);
+            notificationMetrics.recordDigested(type, kind);
+            return;
         }
         
-        if (customMessage != null && !customMessage.trim().isEmpty()) {
-            content.append(" - ").append(customMessage);
-        }
+        MessageTemplateEngine.RenderedMessage message = messages.forChannel(type);
         
-        return content.toString();
-    }
-    
-    private String buildPushContent(User user, WatchRelease watchRelease, String customMessage) {
-        return "New " + watchRelease.getBrand() + " watch: " + watchRelease.getWatchName() + " is now available!";
-    }
-    
-    private List<User> getTargetUsers(NotificationRequestDto request) {
-        if (request.getCategories() != null && !request.getCategories().isEmpty()) {
-            return userRepository.findActiveUsersWithPreferences(request.getCategories().stream().toList());
-        } else if (request.getBrands() != null && !request.getBrands().isEmpty()) {
-            return userRepository.findActiveUsersForEmailNotifications(request.getBrands().stream().toList());
-        } else {
-            return userRepository.findByIsActiveTrue();
-        }
-    }
-    
-    private void saveNotification(User user, WatchRelease watchRelease, Notification.NotificationType type, 
-                                String subject, String message, String recipient) {
         Notification notification = new Notification();
-        notification.setUser(user);
         notification.setWatchRelease(watchRelease);
+        notification.setJobId(jobId);
         notification.setNotificationType(type);
-        notification.setStatus(Notification.NotificationStatus.SENT);
-        notification.setSubject(subject);
-        notification.setMessage(message);
+        notification.setNotificationKind(kind);
+        notification.setDedupSequence(dedupSequence);
+        notification.setStatus(Notification.NotificationStatus.PENDING);
+        notification.setSubject(message.subject());
+        notification.setMessage(message.bodyFor(user.getFirstName()));
         notification.setRecipient(recipient);
-        notification.setSentAt(LocalDateTime.now());
+        notification.setNextAttemptAt(LocalDateTime.now());
+        notification.setUser(userReference(user));
         
-        notificationRepository.save(notification);
+        notificationWriter.write(notification);
+        notificationMetrics.recordQueued(type, kind);
     }
     
-    private void saveFailedNotification(User user, WatchRelease watchRelease, String errorMessage) {
+    private void saveFailedNotification(RecipientDto user, WatchRelease watchRelease, String errorMessage, Long jobId) {
         Notification notification = new Notification();
-        notification.setUser(user);
         notification.setWatchRelease(watchRelease);
+        notification.setJobId(jobId);
         notification.setStatus(Notification.NotificationStatus.FAILED);
         notification.setErrorMessage(errorMessage);
+        notification.setUser(userReference(user));
         
-        notificationRepository.save(notification);
+        notificationWriter.write(notification);
     }
     
-    public List<Notification> getUserNotifications(Long userId) {
-        return notificationRepository.findByUserId(userId);
+    // The writer re-attaches this as a proper reference when it flushes the batch
+    private User userReference(RecipientDto recipient) {
+        User user = new User();
+        user.setId(recipient.getId());
+        return user;
     }
     
-    public List<Notification> getNotificationsByStatus(Notification.NotificationStatus status) {
-        return notificationRepository.findByStatus(status);
+    public List<NotificationDto> getUserNotifications(Long userId) {
+        return notificationRepository.findViewsByUserId(userId);
     }
     
-    public List<Notification> getNotificationsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return notificationRepository.findNotificationsByDateRange(startDate, endDate);
+    /**
+     * A user's notifications, newest first, optionally narrowed to one status and/or
+     * channel. Pages on (createdAt, id).
+     */
+    public KeysetPager<NotificationSummaryDto, InboxKey> userInbox(Long userId, Notification.NotificationStatus status,
+                                                                  Notification.NotificationType type) {
+        return new KeysetPager<>(
+                (before, page) -> notificationRepository.findInbox(
+                        userId, status, type, before.createdAt(), before.id(), page),
+                item -> new InboxKey(item.getCreatedAt(), item.getId()),
+                InboxKey.NEWEST,
+                InboxKey::encode,
+                InboxKey::decode);
+    }
+    
+    public List<NotificationDto> getNotificationsByStatus(Notification.NotificationStatus status) {
+        return notificationsByStatus(status).all();
+    }
+    
+    public KeysetPager<NotificationDto, Long> notificationsByStatus(Notification.NotificationStatus status) {
+        return KeysetPager.byId((afterId, page) -> notificationRepository.findViewsByStatus(status, afterId, page),
+                NotificationDto::getId);
+    }
+    
+    public List<NotificationDto> getNotificationsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        return notificationsByDateRange(startDate, endDate).all();
+    }
+    
+    public KeysetPager<NotificationDto, Long> notificationsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        return KeysetPager.byId(
+                (afterId, page) -> notificationRepository.findViewsByDateRange(startDate, endDate, afterId, page),
+                NotificationDto::getId);
+    }
+    
+    /**
+     * Keyset position in a user's inbox; pages continue with rows strictly older than it.
+     */
+    public record InboxKey(LocalDateTime createdAt, Long id) {
+        
+        // Sorts after every stored row while staying within the database's timestamp range
+        static final InboxKey NEWEST = new InboxKey(LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+        
+        String encode() {
+            return createdAt + "|" + id;
+        }
+        
+        static InboxKey decode(String value) {
+            int separator = value.lastIndexOf('|');
+            return new InboxKey(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1)));
+        }
+    }
+    
+    // Thrown out of the recipient loop when the job is no longer running on this node
+    private static class FanOutStopped extends RuntimeException {
+        
+        private static final long serialVersionUID = 1L;
+        
+        FanOutStopped() {
+            super(null, null, false, false);
+        }
     }
     
     public Long getNotificationCountForUser(Long userId) {
-        return notificationRepository.countSentNotificationsByUser(userId);
+        return deliveryCounters.count(DeliveryCounter.Scope.USER, userId, Notification.NotificationStatus.SENT);
+    }
+    
+    public DeliveryStatsDto getUserDeliveryStats(Long userId) {
+        return new DeliveryStatsDto(DeliveryCounter.Scope.USER, userId,
+                deliveryCounters.breakdown(DeliveryCounter.Scope.USER, userId));
+    }
+    
+    public DeliveryStatsDto getReleaseDeliveryStats(Long releaseId) {
+        return new DeliveryStatsDto(DeliveryCounter.Scope.RELEASE, releaseId,
+                deliveryCounters.breakdown(DeliveryCounter.Scope.RELEASE, releaseId));
     }
 }
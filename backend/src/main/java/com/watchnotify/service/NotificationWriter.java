@@ -0,0 +1,192 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for notification outcomes. Rows are queued by the dispatch
+ * threads and persisted in JDBC batches, either once a full batch has accumulated
+ * or on a fixed flush interval, whichever comes first.
+ *
+ * <p>The user and watch release on a queued notification only need to carry their
+ * ids; they are re-attached as references inside the flush transaction.
+ *
+ * <p>Rows another node already stored are skipped. Rows that fail for any other reason,
+ * such as a lost connection, are kept and written first by the next flush, and
+ * {@link #flush()} throws, so a fan-out does not checkpoint past rows that are not stored.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationWriter {
+    
+    private final TransactionTemplate transactionTemplate;
+    private final DeliveryCounters deliveryCounters;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${app.notification.writer.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${app.notification.writer.capacity:10000}")
+    private int capacity;
+    
+    private BlockingQueue<Notification> buffer;
+    
+    // Rows of a failed flush, written before the buffer; guarded by flushLock
+    private final Deque<Notification> retries = new ArrayDeque<>();
+    
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    @PostConstruct
+    void init() {
+        buffer = new LinkedBlockingQueue<>(capacity);
+    }
+    
+    /**
+     * Queues a notification for the next batch, blocking while the buffer is full.
+     */
+    public void write(Notification notification) {
+        try {
+            buffer.put(notification);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while buffering notification", e);
+        }
+        
+        if (buffer.size() >= batchSize && flushLock.tryLock()) {
+            try {
+                drain(false);
+            } catch (RuntimeException e) {
+                log.warn("Could not write a batch of notifications, retrying on the next flush", e);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Persists everything currently buffered.
+     *
+     * @throws RuntimeException if some rows could not be stored; they are kept for the next flush
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            drain(true);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${app.notification.writer.flush-interval:1000}")
+    public void flushOnInterval() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not write {} buffered notifications, retrying on the next flush", pending(), e);
+        }
+    }
+    
+    @PreDestroy
+    void flushOnShutdown() {
+        log.info("Flushing {} buffered notifications before shutdown", pending());
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Lost {} buffered notifications that could not be written before shutdown", pending(), e);
+        }
+    }
+    
+    private int pending() {
+        return buffer.size() + retries.size();
+    }
+    
+    private void drain(boolean includePartialBatch) {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        while (retries.size() + buffer.size() >= batchSize || (includePartialBatch && pending() > 0)) {
+            while (batch.size() < batchSize && !retries.isEmpty()) {
+                batch.add(retries.poll());
+            }
+            buffer.drainTo(batch, batchSize - batch.size());
+            persistBatch(batch);
+            batch.clear();
+        }
+    }
+    
+    private void persistBatch(List<Notification> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> persistAll(batch));
+            deliveryCounters.recordCreated(batch);
+            log.debug("Persisted batch of {} notifications", batch.size());
+        } catch (DataIntegrityViolationException e) {
+            // Fall back to row-at-a-time so a duplicate or bad row does not drop the whole batch
+            log.warn("Batch insert of {} notifications failed, retrying individually", batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                Notification notification = batch.get(i);
+                try {
+                    notification.setId(null);
+                    transactionTemplate.executeWithoutResult(status -> persistAll(List.of(notification)));
+                    deliveryCounters.recordCreated(List.of(notification));
+                } catch (DataIntegrityViolationException duplicate) {
+                    // Another node already recorded this delivery (unique delivery index)
+                    log.info("Skipping duplicate {} notification for user {} and watch release {}",
+                            notification.getNotificationType(),
+                            notification.getUser() != null ? notification.getUser().getId() : null,
+                            notification.getWatchRelease() != null ? notification.getWatchRelease().getId() : null);
+                } catch (RuntimeException rowError) {
+                    keepForRetry(batch.subList(i, batch.size()));
+                    throw rowError;
+                }
+            }
+        } catch (RuntimeException e) {
+            keepForRetry(batch);
+            throw e;
+        }
+    }
+    
+    // Ids handed out by the rolled-back insert are discarded, so the next attempt persists the rows anew
+    private void keepForRetry(List<Notification> notifications) {
+        for (int i = notifications.size() - 1; i >= 0; i--) {
+            Notification notification = notifications.get(i);
+            notification.setId(null);
+            retries.addFirst(notification);
+        }
+    }
+    
+    private void persistAll(List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (notification.getUser() != null) {
+                notification.setUser(entityManager.getReference(User.class, notification.getUser().getId()));
+            }
+            if (notification.getWatchRelease() != null) {
+                notification.setWatchRelease(
+                        entityManager.getReference(WatchRelease.class, notification.getWatchRelease().getId()));
+            }
+            entityManager.persist(notification);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
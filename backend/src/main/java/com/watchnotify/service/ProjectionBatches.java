@@ -0,0 +1,36 @@
+package com.watchnotify.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Fills the element collections of projected DTOs with one {@code IN} query per batch
+ * of owner ids, instead of one query per owner.
+ */
+final class ProjectionBatches {
+    
+    static final int BATCH_SIZE = 1000;
+    
+    private ProjectionBatches() {
+    }
+    
+    /**
+     * Runs {@code loader} for each batch of owner ids and adds every returned
+     * {@code [ownerId, value]} row to the set picked from the owner's DTO.
+     */
+    static <T> void fill(Map<Long, T> owners,
+                         Function<T, Set<String>> collection,
+                         Function<Collection<Long>, List<Object[]>> loader) {
+        List<Long> ids = new ArrayList<>(owners.keySet());
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            for (Object[] row : loader.apply(batch)) {
+                collection.apply(owners.get((Long) row[0])).add((String) row[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.dto.RecipientDto;
+import com.watchnotify.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.BatchIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Streams the recipients of a notification request in chunks ordered by user id, so a
+ * fan-out never holds more than one chunk in memory and can resume after the last user
+ * id it finished. When the {@link AudienceIndex} is
+ * available the matching ids are resolved in memory and only those rows are loaded;
+ * otherwise the recipient queries are keyset-paginated.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RecipientReader {
+    
+    private final UserRepository userRepository;
+    private final AudienceIndex audienceIndex;
+    
+    @Value("${app.notification.fanout.chunk-size:500}")
+    private int chunkSize;
+    
+    /**
+     * Reads every recipient matching the request and hands them to the consumer
+     * one chunk at a time.
+     *
+     * @return the total number of recipients read
+     */
+    public long forEachChunk(NotificationRequestDto request, Consumer<List<RecipientDto>> chunkConsumer) {
+        return forEachChunk(request, 0L, chunkConsumer);
+    }
+    
+    /**
+     * Like {@link #forEachChunk(NotificationRequestDto, Consumer)}, but starts after user
+     * id {@code afterId}, e.g. to resume a fan-out from its last checkpoint.
+     */
+    public long forEachChunk(NotificationRequestDto request, long afterId,
+                             Consumer<List<RecipientDto>> chunkConsumer) {
+        Optional<RoaringBitmap> audience = audienceIndex.resolve(request);
+        if (audience.isPresent()) {
+            RoaringBitmap remaining = afterId > 0 ? RoaringBitmap.remove(audience.get(), 0L, afterId + 1) : audience.get();
+            return forEachIndexedChunk(request, remaining, chunkConsumer);
+        }
+        
+        Pageable chunk = PageRequest.of(0, chunkSize);
+        long total = 0;
+        long lastId = afterId;
+        
+        while (true) {
+            List<RecipientDto> recipients = readChunk(request, lastId, chunk);
+            if (recipients.isEmpty()) {
+                break;
+            }
+            
+            chunkConsumer.accept(recipients);
+            total += recipients.size();
+            lastId = recipients.get(recipients.size() - 1).getId();
+            
+            if (recipients.size() < chunkSize) {
+                break;
+            }
+        }
+        
+        log.debug("Read {} recipients for watch release {} in chunks of {}", 
+                total, request.getWatchReleaseId(), chunkSize);
+        return total;
+    }
+    
+    private long forEachIndexedChunk(NotificationRequestDto request, RoaringBitmap audience,
+                                     Consumer<List<RecipientDto>> chunkConsumer) {
+        BatchIterator ids = audience.getBatchIterator();
+        int[] buffer = new int[chunkSize];
+        List<Long> chunkIds = new ArrayList<>(chunkSize);
+        long total = 0;
+        
+        while (ids.hasNext()) {
+            int count = ids.nextBatch(buffer);
+            chunkIds.clear();
+            for (int i = 0; i < count; i++) {
+                chunkIds.add((long) buffer[i]);
+            }
+            
+            // Re-checks isActive in case the index lags a concurrent update
+            List<RecipientDto> recipients = userRepository.findActiveRecipientsByIdIn(chunkIds);
+            if (!recipients.isEmpty()) {
+                chunkConsumer.accept(recipients);
+                total += recipients.size();
+            }
+        }
+        
+        log.debug("Read {} of {} indexed recipients for watch release {} in chunks of {}", 
+                total, audience.getLongCardinality(), request.getWatchReleaseId(), chunkSize);
+        return total;
+    }
+    
+    private List<RecipientDto> readChunk(NotificationRequestDto request, Long afterId, Pageable chunk) {
+        if (request.getCategories() != null && !request.getCategories().isEmpty()) {
+            return userRepository.findActiveRecipientsWithPreferencesAfter(
+                    request.getCategories().stream().toList(), afterId, chunk);
+        } else if (request.getBrands() != null && !request.getBrands().isEmpty()) {
+            return userRepository.findActiveEmailRecipientsWithPreferencesAfter(
+                    request.getBrands().stream().toList(), afterId, chunk);
+        } else {
+            return userRepository.findActiveRecipientsAfter(afterId, chunk);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.watchnotify.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watchnotify.dto.UserDto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the rows of a user import one at a time, from CSV with a header row or from
+ * NDJSON with one {@link UserDto} object per line. Only the current row is held in
+ * memory, and a row longer than {@link #MAX_ROW_LENGTH} characters is skipped and
+ * reported instead of being buffered.
+ *
+ * <p>CSV columns are matched to the {@link UserDto} properties ignoring case,
+ * underscores and dashes, so {@code first_name} and {@code firstName} both work.
+ * Preferences are separated by semicolons. Unknown columns are ignored.
+ */
+final class UserImportReader {
+    
+    static final int MAX_ROW_LENGTH = 64 * 1024;
+    
+    private static final Map<String, BiConsumer<UserDto, String>> COLUMNS = Map.ofEntries(
+            Map.entry("firstname", (user, value) -> user.setFirstName(value)),
+            Map.entry("lastname", (user, value) -> user.setLastName(value)),
+            Map.entry("email", (user, value) -> user.setEmail(value)),
+            Map.entry("phonenumber", (user, value) -> user.setPhoneNumber(value)),
+            Map.entry("isactive", (user, value) -> user.setIsActive(flag("isActive", value, user.getIsActive()))),
+            Map.entry("emailnotificationsenabled", (user, value) -> user.setEmailNotificationsEnabled(
+                    flag("emailNotificationsEnabled", value, user.getEmailNotificationsEnabled()))),
+            Map.entry("smsnotificationsenabled", (user, value) -> user.setSmsNotificationsEnabled(
+                    flag("smsNotificationsEnabled", value, user.getSmsNotificationsEnabled()))),
+            Map.entry("pushnotificationsenabled", (user, value) -> user.setPushNotificationsEnabled(
+                    flag("pushNotificationsEnabled", value, user.getPushNotificationsEnabled()))),
+            Map.entry("emaildigestenabled", (user, value) -> user.setEmailDigestEnabled(
+                    flag("emailDigestEnabled", value, user.getEmailDigestEnabled()))),
+            Map.entry("smsdigestenabled", (user, value) -> user.setSmsDigestEnabled(
+                    flag("smsDigestEnabled", value, user.getSmsDigestEnabled()))),
+            Map.entry("pushdigestenabled", (user, value) -> user.setPushDigestEnabled(
+                    flag("pushDigestEnabled", value, user.getPushDigestEnabled()))),
+            Map.entry("preferences", (user, value) -> user.setPreferences(preferences(value))));
+    
+    private static final List<String> REQUIRED_COLUMNS = List.of("firstname", "lastname", "email");
+    
+    /**
+     * One row read from the upload: either a user or the reason it could not be read.
+     */
+    record Row(long number, UserDto user, String error) {
+    }
+    
+    private final Reader in;
+    private final ObjectMapper objectMapper;
+    private final boolean csv;
+    private final StringBuilder field = new StringBuilder();
+    
+    // CSV header, normalized; null for NDJSON
+    private List<String> columns;
+    private long rowNumber;
+    private int rowLength;
+    
+    private UserImportReader(Reader in, ObjectMapper objectMapper, boolean csv) {
+        this.in = in;
+        this.objectMapper = objectMapper;
+        this.csv = csv;
+    }
+    
+    static UserImportReader csv(Reader in) throws IOException {
+        UserImportReader reader = new UserImportReader(in, null, true);
+        reader.readHeader();
+        return reader;
+    }
+    
+    static UserImportReader ndjson(Reader in, ObjectMapper objectMapper) {
+        return new UserImportReader(in, objectMapper, false);
+    }
+    
+    /**
+     * Reads the next row, skipping blank lines.
+     *
+     * @return the row, or null at the end of the upload
+     */
+    Row next() throws IOException {
+        return csv ? nextCsvRow() : nextJsonRow();
+    }
+    
+    private void readHeader() throws IOException {
+        List<String> header = readRecord();
+        while (header != null && isBlank(header)) {
+            header = readRecord();
+        }
+        if (header == null || rowLength > MAX_ROW_LENGTH) {
+            throw new IllegalArgumentException("CSV upload has no header row");
+        }
+        
+        columns = header.stream().map(UserImportReader::normalize).toList();
+        List<String> missing = REQUIRED_COLUMNS.stream().filter(column -> !columns.contains(column)).toList();
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("CSV header is missing the columns " + missing);
+        }
+    }
+    
+    private Row nextCsvRow() throws IOException {
+        List<String> fields = readRecord();
+        while (fields != null && isBlank(fields) && rowLength <= MAX_ROW_LENGTH) {
+            fields = readRecord();
+        }
+        if (fields == null) {
+            return null;
+        }
+        
+        long number = ++rowNumber;
+        if (rowLength > MAX_ROW_LENGTH) {
+            return new Row(number, null, "Row is longer than " + MAX_ROW_LENGTH + " characters");
+        }
+        if (fields.size() != columns.size()) {
+            return new Row(number, null, "Expected " + columns.size() + " fields, found " + fields.size());
+        }
+        
+        UserDto user = new UserDto();
+        try {
+            for (int i = 0; i < fields.size(); i++) {
+                BiConsumer<UserDto, String> setter = COLUMNS.get(columns.get(i));
+                if (setter != null) {
+                    setter.accept(user, blankToNull(fields.get(i)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return new Row(number, user, e.getMessage());
+        }
+        return new Row(number, user, null);
+    }
+    
+    private Row nextJsonRow() throws IOException {
+        String line = readLine();
+        while (line != null && line.isBlank() && rowLength <= MAX_ROW_LENGTH) {
+            line = readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        
+        long number = ++rowNumber;
+        if (rowLength > MAX_ROW_LENGTH) {
+            return new Row(number, null, "Row is longer than " + MAX_ROW_LENGTH + " characters");
+        }
+        try {
+            UserDto user = objectMapper.readValue(line, UserDto.class);
+            if (user == null) {
+                return new Row(number, null, "Row is not a JSON object");
+            }
+            user.setId(null);
+            return new Row(number, user, null);
+        } catch (JsonProcessingException e) {
+            return new Row(number, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+    
+    // One CSV record, which may span lines inside quotes; null at the end of the input
+    private List<String> readRecord() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        
+        List<String> fields = new ArrayList<>();
+        rowLength = 0;
+        field.setLength(0);
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                append((char) c);
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else if (c == ',') {
+                if (++rowLength <= MAX_ROW_LENGTH) {
+                    fields.add(field.toString());
+                }
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                append((char) c);
+                fieldStarted = true;
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        field.setLength(0);
+        return fields;
+    }
+    
+    private String readLine() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        
+        rowLength = 0;
+        field.setLength(0);
+        while (c != -1 && c != '\n') {
+            if (c != '\r') {
+                append((char) c);
+            }
+            c = in.read();
+        }
+        String line = field.toString();
+        field.setLength(0);
+        return line;
+    }
+    
+    // Counts every character but stops buffering once the row is too long
+    private void append(char c) {
+        if (++rowLength <= MAX_ROW_LENGTH) {
+            field.append(c);
+        }
+    }
+    
+    private static boolean isBlank(List<String> fields) {
+        return fields.stream().allMatch(String::isBlank);
+    }
+    
+    private static String normalize(String column) {
+        return column.strip().replace("_", "").replace("-", "").toLowerCase(Locale.ROOT);
+    }
+    
+    private static String blankToNull(String value) {
+        String stripped = value.strip();
+        return stripped.isEmpty() ? null : stripped;
+    }
+    
+    // Blank keeps the UserDto default
+    private static Boolean flag(String column, String value, Boolean defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "yes", "1" -> true;
+            case "false", "no", "0" -> false;
+            default -> throw new IllegalArgumentException("Invalid value for " + column + ": " + value);
+        };
+    }
+    
+    private static Set<String> preferences(String value) {
+        if (value == null) {
+            return new LinkedHashSet<>();
+        }
+        return Arrays.stream(value.split(";"))
+                .map(String::strip)
+                .filter(preference -> !preference.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
@@ -0,0 +1,242 @@
+package com.watchnotify.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.watchnotify.dto.UserDto;
+import com.watchnotify.dto.UserImportResultDto;
+import com.watchnotify.model.User;
+import com.watchnotify.repository.UserRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users in bulk from a streamed CSV or NDJSON upload, keyed on email: unknown
+ * emails are created and known ones updated, preferences included.
+ *
+ * <p>Rows are read one at a time and written in batches of {@code batch-size}, each in
+ * its own transaction: one query looks up the batch's emails, then users and
+ * {@code user_preferences} are written with JDBC batches. Memory use therefore depends
+ * on the batch size and not on the size of the upload. A batch the database rejects is
+ * retried row by row, so a bad row is reported without failing its neighbours, and
+ * batches committed before a later failure stay imported.
+ *
+ * <p>The audience index is updated after each batch commits. Imported users have no
+ * notifications yet, so the delivery counters are unaffected.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserImportService {
+    
+    public static final String CSV = "text/csv";
+    
+    private static final String INSERT_USER = "INSERT INTO users (first_name, last_name, email, phone_number, " +
+            "is_active, email_notifications_enabled, sms_notifications_enabled, push_notifications_enabled, " +
+            "email_digest_enabled, sms_digest_enabled, push_digest_enabled, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String UPDATE_USER = "UPDATE users SET first_name = ?, last_name = ?, phone_number = ?, " +
+            "is_active = ?, email_notifications_enabled = ?, sms_notifications_enabled = ?, " +
+            "push_notifications_enabled = ?, email_digest_enabled = ?, sms_digest_enabled = ?, " +
+            "push_digest_enabled = ?, updated_at = ? WHERE id = ?";
+    
+    private static final String DELETE_PREFERENCES = "DELETE FROM user_preferences WHERE user_id = ?";
+    
+    private static final String INSERT_PREFERENCE = "INSERT INTO user_preferences (user_id, preference) VALUES (?, ?)";
+    
+    private final UserRepository userRepository;
+    private final AudienceIndex audienceIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    
+    @Value("${app.users.import.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${app.users.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+    
+    /**
+     * Imports every row of the upload, reporting the rows that were rejected.
+     *
+     * @throws IllegalArgumentException if the content type is not supported or the CSV
+     *                                  header lacks a required column
+     */
+    public UserImportResultDto importUsers(InputStream body, MediaType contentType) throws IOException {
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        BufferedReader in = new BufferedReader(new InputStreamReader(body, charset));
+        UserImportReader reader;
+        if (contentType.isCompatibleWith(MediaType.parseMediaType(CSV))) {
+            reader = UserImportReader.csv(in);
+        } else if (contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)) {
+            reader = UserImportReader.ndjson(in, objectMapper);
+        } else {
+            throw new IllegalArgumentException("Unsupported import content type " + contentType);
+        }
+        
+        UserImportResultDto result = new UserImportResultDto();
+        Map<String, UserImportReader.Row> batch = new LinkedHashMap<>();
+        UserImportReader.Row row;
+        while ((row = reader.next()) != null) {
+            result.setRows(result.getRows() + 1);
+            if (row.user() != null && row.user().getEmail() != null) {
+                row.user().setEmail(row.user().getEmail().strip());
+            }
+            String error = row.error() != null ? row.error() : validate(row.user());
+            if (error != null) {
+                reject(result, row, error);
+                continue;
+            }
+            
+            // A repeated email updates the earlier row, so that row has to be written first
+            String email = row.user().getEmail();
+            if (batch.size() >= batchSize || batch.containsKey(email)) {
+                write(new ArrayList<>(batch.values()), result);
+                batch.clear();
+            }
+            batch.put(email, row);
+        }
+        if (!batch.isEmpty()) {
+            write(new ArrayList<>(batch.values()), result);
+        }
+        
+        log.info("Imported users: {} rows, {} created, {} updated, {} rejected",
+                result.getRows(), result.getCreated(), result.getUpdated(), result.getFailed());
+        return result;
+    }
+    
+    private void write(List<UserImportReader.Row> rows, UserImportResultDto result) {
+        try {
+            int[] counts = transactionTemplate.execute(status -> upsert(rows));
+            result.setCreated(result.getCreated() + counts[0]);
+            result.setUpdated(result.getUpdated() + counts[1]);
+        } catch (DataAccessException e) {
+            if (rows.size() == 1) {
+                reject(result, rows.get(0), "Rejected by the database: " + e.getMostSpecificCause().getMessage());
+                return;
+            }
+            log.warn("Import batch of {} users failed, retrying row by row: {}",
+                    rows.size(), e.getMostSpecificCause().getMessage());
+            rows.forEach(row -> write(List.of(row), result));
+        }
+    }
+    
+    // Returns [created, updated]
+    private int[] upsert(List<UserImportReader.Row> rows) {
+        Map<String, Long> ids = idsByEmail(rows.stream().map(row -> row.user().getEmail()).toList());
+        Set<Long> existingIds = new HashSet<>(ids.values());
+        LocalDateTime now = LocalDateTime.now();
+        
+        List<Object[]> inserts = new ArrayList<>();
+        List<String> insertedEmails = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        for (UserImportReader.Row row : rows) {
+            UserDto user = row.user();
+            Long id = ids.get(user.getEmail());
+            if (id == null) {
+                inserts.add(new Object[]{user.getFirstName(), user.getLastName(), user.getEmail(),
+                        user.getPhoneNumber(), user.getIsActive(), user.getEmailNotificationsEnabled(),
+                        user.getSmsNotificationsEnabled(), user.getPushNotificationsEnabled(), user.getEmailDigestEnabled(),
+                        user.getSmsDigestEnabled(), user.getPushDigestEnabled(), now, now});
+                insertedEmails.add(user.getEmail());
+            } else {
+                updates.add(new Object[]{user.getFirstName(), user.getLastName(), user.getPhoneNumber(),
+                        user.getIsActive(), user.getEmailNotificationsEnabled(), user.getSmsNotificationsEnabled(),
+                        user.getPushNotificationsEnabled(), user.getEmailDigestEnabled(), user.getSmsDigestEnabled(),
+                        user.getPushDigestEnabled(), now, id});
+            }
+        }
+        
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_USER, inserts);
+            ids.putAll(idsByEmail(insertedEmails));
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_USER, updates);
+            jdbcTemplate.batchUpdate(DELETE_PREFERENCES,
+                    existingIds.stream().map(id -> new Object[]{id}).toList());
+        }
+        
+        List<Object[]> preferences = new ArrayList<>();
+        for (UserImportReader.Row row : rows) {
+            Long id = ids.get(row.user().getEmail());
+            if (row.user().getPreferences() != null) {
+                row.user().getPreferences().forEach(preference -> preferences.add(new Object[]{id, preference}));
+            }
+            audienceIndex.userSaved(toEntity(row.user(), id));
+        }
+        if (!preferences.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PREFERENCE, preferences);
+        }
+        return new int[]{inserts.size(), updates.size()};
+    }
+    
+    private Map<String, Long> idsByEmail(List<String> emails) {
+        Map<String, Long> ids = new HashMap<>();
+        for (Object[] row : userRepository.findIdsByEmailIn(emails)) {
+            ids.put((String) row[0], (Long) row[1]);
+        }
+        return ids;
+    }
+    
+    private String validate(UserDto user) {
+        Set<ConstraintViolation<UserDto>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+    
+    private void reject(UserImportResultDto result, UserImportReader.Row row, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < maxReportedErrors) {
+            String email = row.user() != null ? row.user().getEmail() : null;
+            result.getErrors().add(new UserImportResultDto.RowError(row.number(), email, message));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+    
+    private static User toEntity(UserDto dto, Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(dto.getEmail());
+        user.setPhoneNumber(dto.getPhoneNumber());
+        user.setIsActive(dto.getIsActive());
+        user.setEmailNotificationsEnabled(dto.getEmailNotificationsEnabled());
+        user.setSmsNotificationsEnabled(dto.getSmsNotificationsEnabled());
+        user.setPushNotificationsEnabled(dto.getPushNotificationsEnabled());
+        user.setEmailDigestEnabled(dto.getEmailDigestEnabled());
+        user.setSmsDigestEnabled(dto.getSmsDigestEnabled());
+        user.setPushDigestEnabled(dto.getPushDigestEnabled());
+        user.setPreferences(dto.getPreferences());
+        return user;
+    }
+}
@@ -8,9 +8,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -19,21 +22,25 @@ import java.util.stream.Collectors;
 public class UserService {
     
     private final UserRepository userRepository;
+    private final AudienceIndex audienceIndex;
     
     public List<UserDto> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return allUsers().all();
+    }
+    
+    public KeysetPager<UserDto, Long> allUsers() {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findAllUserViews(afterId, page)),
+                UserDto::getId);
     }
     
     public Optional<UserDto> getUserById(Long id) {
-        return userRepository.findById(id)
-                .map(this::convertToDto);
+        return userRepository.findUserViewById(id)
+                .map(user -> withPreferences(List.of(user)).get(0));
     }
     
     public Optional<UserDto> getUserByEmail(String email) {
-        return userRepository.findByEmail(email)
-                .map(this::convertToDto);
+        return userRepository.findUserViewByEmail(email)
+                .map(user -> withPreferences(List.of(user)).get(0));
     }
     
     public UserDto createUser(UserDto userDto) {
@@ -43,6 +50,7 @@ public class UserService {
         
         User user = convertToEntity(userDto);
         User savedUser = userRepository.save(user);
+        audienceIndex.userSaved(savedUser);
         log.info("Created new user with ID: {}", savedUser.getId());
         return convertToDto(savedUser);
     }
@@ -59,9 +67,16 @@ public class UserService {
         existingUser.setEmailNotificationsEnabled(userDto.getEmailNotificationsEnabled());
         existingUser.setSmsNotificationsEnabled(userDto.getSmsNotificationsEnabled());
         existingUser.setPushNotificationsEnabled(userDto.getPushNotificationsEnabled());
+        existingUser.setEmailDigestEnabled(userDto.getEmailDigestEnabled());
+        existingUser.setSmsDigestEnabled(userDto.getSmsDigestEnabled());
+        existingUser.setPushDigestEnabled(userDto.getPushDigestEnabled());
         existingUser.setPreferences(userDto.getPreferences());
+        // Changing only the preferences does not update the users row, and other nodes'
+        // audience indexes pick up changes from updated_at
+        existingUser.setUpdatedAt(LocalDateTime.now());
         
         User updatedUser = userRepository.save(existingUser);
+        audienceIndex.userSaved(updatedUser);
         log.info("Updated user with ID: {}", updatedUser.getId());
         return convertToDto(updatedUser);
     }
@@ -71,40 +86,64 @@ public class UserService {
             throw new RuntimeException("User not found with ID: " + id);
         }
         userRepository.deleteById(id);
+        audienceIndex.userDeleted(id);
         log.info("Deleted user with ID: {}", id);
     }
     
     public List<UserDto> getActiveUsers() {
-        return userRepository.findByIsActiveTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return activeUsers().all();
+    }
+    
+    public KeysetPager<UserDto, Long> activeUsers() {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findActiveUserViews(afterId, page)),
+                UserDto::getId);
     }
     
     public List<UserDto> getUsersForEmailNotifications() {
-        return userRepository.findByEmailNotificationsEnabledTrueAndIsActiveTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return emailNotificationUsers().all();
+    }
+    
+    public KeysetPager<UserDto, Long> emailNotificationUsers() {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findEmailUserViews(afterId, page)),
+                UserDto::getId);
     }
     
     public List<UserDto> getUsersForSmsNotifications() {
-        return userRepository.findBySmsNotificationsEnabledTrueAndIsActiveTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return smsNotificationUsers().all();
+    }
+    
+    public KeysetPager<UserDto, Long> smsNotificationUsers() {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findSmsUserViews(afterId, page)),
+                UserDto::getId);
     }
     
     public List<UserDto> getUsersForPushNotifications() {
-        return userRepository.findByPushNotificationsEnabledTrueAndIsActiveTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return pushNotificationUsers().all();
+    }
+    
+    public KeysetPager<UserDto, Long> pushNotificationUsers() {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findPushUserViews(afterId, page)),
+                UserDto::getId);
     }
     
     public List<UserDto> getUsersWithPreferences(List<String> categories) {
-        return userRepository.findActiveUsersWithPreferences(categories).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return usersWithPreferences(categories).all();
+    }
+    
+    public KeysetPager<UserDto, Long> usersWithPreferences(List<String> categories) {
+        return KeysetPager.byId((afterId, page) -> withPreferences(userRepository.findActiveUserViewsWithPreferences(categories, afterId, page)),
+                UserDto::getId);
+    }
+    
+    // Loads the preferences of all given users with one query per batch of ids
+    private List<UserDto> withPreferences(List<UserDto> users) {
+        Map<Long, UserDto> byId = new LinkedHashMap<>();
+        users.forEach(user -> byId.put(user.getId(), user));
+        ProjectionBatches.fill(byId, UserDto::getPreferences, userRepository::findPreferencesByUserIdIn);
+        return users;
     }
     
-    private UserDto convertToDto(User user) {
+    UserDto convertToDto(User user) {
         UserDto dto = new UserDto();
         dto.setId(user.getId());
         dto.setFirstName(user.getFirstName());
@@ -115,7 +154,10 @@ public class UserService {
         dto.setEmailNotificationsEnabled(user.getEmailNotificationsEnabled());
         dto.setSmsNotificationsEnabled(user.getSmsNotificationsEnabled());
         dto.setPushNotificationsEnabled(user.getPushNotificationsEnabled());
-        dto.setPreferences(user.getPreferences());
+        dto.setEmailDigestEnabled(user.getEmailDigestEnabled());
+        dto.setSmsDigestEnabled(user.getSmsDigestEnabled());
+        dto.setPushDigestEnabled(user.getPushDigestEnabled());
+        dto.setPreferences(user.getPreferences() != null ? new HashSet<>(user.getPreferences()) : null);
         return dto;
     }
     
@@ -130,6 +172,9 @@ public class UserService {
         user.setEmailNotificationsEnabled(dto.getEmailNotificationsEnabled());
         user.setSmsNotificationsEnabled(dto.getSmsNotificationsEnabled());
         user.setPushNotificationsEnabled(dto.getPushNotificationsEnabled());
+        user.setEmailDigestEnabled(dto.getEmailDigestEnabled());
+        user.setSmsDigestEnabled(dto.getSmsDigestEnabled());
+        user.setPushDigestEnabled(dto.getPushDigestEnabled());
         user.setPreferences(dto.getPreferences());
         return user;
     }
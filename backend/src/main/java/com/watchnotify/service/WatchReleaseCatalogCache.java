@@ -0,0 +1,163 @@
+package com.watchnotify.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.watchnotify.dto.WatchReleaseDto;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the catalog reads the storefront polls: a release by id,
+ * upcoming and limited-edition releases, and releases by brand.
+ *
+ * <p>Entries are bounded in number and expire after a TTL. Concurrent misses for the
+ * same key share a single load. Each entry carries a strong ETag computed from its JSON
+ * form once, when it is loaded, so conditional requests are answered without
+ * re-serializing. Writes evict exactly the entries the old and new state of the
+ * release can appear in, both immediately and again after the transaction commits so
+ * that a concurrent read cannot re-cache the pre-commit state.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WatchReleaseCatalogCache {
+    
+    private final ObjectMapper objectMapper;
+    
+    @Value("${app.catalog.cache.max-entries:1000}")
+    private long maxEntries;
+    
+    @Value("${app.catalog.cache.ttl:60000}")
+    private long ttl;
+    
+    private Cache<CatalogKey, Entry<?>> cache;
+    
+    @PostConstruct
+    void createCache() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .recordStats()
+                .build();
+        log.info("Catalog cache: {} entries, TTL {} ms", maxEntries, ttl);
+    }
+    
+    /**
+     * Returns the cached entry for {@code key}, loading it with {@code loader} on a miss.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Entry<T> get(CatalogKey key, Supplier<T> loader) {
+        return (Entry<T>) cache.get(key, k -> {
+            T value = loader.get();
+            return new Entry<>(value, etag(value));
+        });
+    }
+    
+    /**
+     * Evicts every entry that {@code before} or {@code after} (either may be null) of a
+     * single release can be part of.
+     */
+    public void evict(WatchReleaseDto before, WatchReleaseDto after) {
+        evictAll(List.of(new Change(before, after)));
+    }
+    
+    /**
+     * Evicts the entries of many changed releases at once, with one invalidation and one
+     * after-commit callback for all of them.
+     */
+    public void evictAll(Collection<Change> changes) {
+        Set<CatalogKey> keys = new HashSet<>();
+        // A release that became past within the last TTL may still sit in a cached upcoming list
+        LocalDateTime upcomingSince = LocalDateTime.now().minus(Duration.ofMillis(ttl));
+        for (Change change : changes) {
+            for (WatchReleaseDto release : new WatchReleaseDto[] {change.before(), change.after()}) {
+                if (release == null) {
+                    continue;
+                }
+                if (release.getId() != null) {
+                    keys.add(CatalogKey.byId(release.getId()));
+                }
+                if (release.getBrand() != null) {
+                    keys.add(CatalogKey.byBrand(release.getBrand()));
+                }
+                if (Boolean.TRUE.equals(release.getIsLimitedEdition())) {
+                    keys.add(CatalogKey.LIMITED_EDITION);
+                }
+                if (release.getReleaseDate() != null && !release.getReleaseDate().isBefore(upcomingSince)) {
+                    keys.add(CatalogKey.UPCOMING);
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        
+        cache.invalidateAll(keys);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidateAll(keys);
+                }
+            });
+        }
+    }
+    
+    private String etag(Object value) {
+        Object body = value instanceof Optional<?> optional ? optional.orElse(null) : value;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(body));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not compute catalog ETag", e);
+        }
+    }
+    
+    /**
+     * The state of one release before and after a write; either may be null.
+     */
+    public record Change(WatchReleaseDto before, WatchReleaseDto after) {
+    }
+    
+    /**
+     * A cached value and the strong ETag of its JSON representation.
+     */
+    public record Entry<T>(T value, String etag) {
+    }
+    
+    /**
+     * Identifies one cached catalog read.
+     */
+    public record CatalogKey(String query, Object argument) {
+        
+        static final CatalogKey UPCOMING = new CatalogKey("upcoming", null);
+        static final CatalogKey LIMITED_EDITION = new CatalogKey("limited-edition", null);
+        
+        static CatalogKey byId(Long id) {
+            return new CatalogKey("id", id);
+        }
+        
+        static CatalogKey byBrand(String brand) {
+            return new CatalogKey("brand", brand);
+        }
+    }
+}
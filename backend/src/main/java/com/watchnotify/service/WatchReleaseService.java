@@ -9,9 +9,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -20,28 +22,41 @@ import java.util.stream.Collectors;
 public class WatchReleaseService {
     
     private final WatchReleaseRepository watchReleaseRepository;
+    private final WatchReleaseCatalogCache catalogCache;
     
     public List<WatchReleaseDto> getAllWatchReleases() {
-        return watchReleaseRepository.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return allWatchReleases().all();
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> allWatchReleases() {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findAllReleaseViews(afterId, page)),
+                WatchReleaseDto::getId);
     }
     
     public Optional<WatchReleaseDto> getWatchReleaseById(Long id) {
-        return watchReleaseRepository.findById(id)
-                .map(this::convertToDto);
+        return cachedWatchReleaseById(id).value();
+    }
+    
+    public WatchReleaseCatalogCache.Entry<Optional<WatchReleaseDto>> cachedWatchReleaseById(Long id) {
+        return catalogCache.get(WatchReleaseCatalogCache.CatalogKey.byId(id),
+                () -> watchReleaseRepository.findReleaseViewById(id)
+                        .map(release -> withCollections(List.of(release)).get(0)));
     }
     
     public WatchReleaseDto createWatchRelease(WatchReleaseDto watchReleaseDto) {
         WatchRelease watchRelease = convertToEntity(watchReleaseDto);
         WatchRelease savedRelease = watchReleaseRepository.save(watchRelease);
         log.info("Created new watch release with ID: {}", savedRelease.getId());
-        return convertToDto(savedRelease);
+        WatchReleaseDto created = convertToDto(savedRelease);
+        catalogCache.evict(null, created);
+        return created;
     }
     
     public WatchReleaseDto updateWatchRelease(Long id, WatchReleaseDto watchReleaseDto) {
         WatchRelease existingRelease = watchReleaseRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Watch release not found with ID: " + id));
+        WatchReleaseDto before = convertToDto(existingRelease);
         
         existingRelease.setWatchName(watchReleaseDto.getWatchName());
         existingRelease.setBrand(watchReleaseDto.getBrand());
@@ -59,45 +74,91 @@ public class WatchReleaseService {
         
         WatchRelease updatedRelease = watchReleaseRepository.save(existingRelease);
         log.info("Updated watch release with ID: {}", updatedRelease.getId());
-        return convertToDto(updatedRelease);
+        WatchReleaseDto updated = convertToDto(updatedRelease);
+        catalogCache.evict(before, updated);
+        return updated;
     }
     
     public void deleteWatchRelease(Long id) {
-        if (!watchReleaseRepository.existsById(id)) {
-            throw new RuntimeException("Watch release not found with ID: " + id);
-        }
-        watchReleaseRepository.deleteById(id);
+        WatchRelease existingRelease = watchReleaseRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Watch release not found with ID: " + id));
+        WatchReleaseDto before = convertToDto(existingRelease);
+        watchReleaseRepository.delete(existingRelease);
+        catalogCache.evict(before, null);
         log.info("Deleted watch release with ID: {}", id);
     }
     
     public List<WatchReleaseDto> getUnnotifiedReleases() {
-        return watchReleaseRepository.findByIsNotifiedFalse().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return unnotifiedReleases().all();
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> unnotifiedReleases() {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findUnnotifiedReleaseViews(afterId, page)),
+                WatchReleaseDto::getId);
     }
     
     public List<WatchReleaseDto> getReleasesByBrand(String brand) {
-        return watchReleaseRepository.findByBrand(brand).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return cachedReleasesByBrand(brand).value();
+    }
+    
+    public WatchReleaseCatalogCache.Entry<List<WatchReleaseDto>> cachedReleasesByBrand(String brand) {
+        return catalogCache.get(WatchReleaseCatalogCache.CatalogKey.byBrand(brand),
+                () -> List.copyOf(releasesByBrand(brand).all()));
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> releasesByBrand(String brand) {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findReleaseViewsByBrand(brand, afterId, page)),
+                WatchReleaseDto::getId);
     }
     
     public List<WatchReleaseDto> getReleasesByBrands(List<String> brands) {
-        return watchReleaseRepository.findByBrandIn(brands).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return releasesByBrands(brands).all();
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> releasesByBrands(List<String> brands) {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findReleaseViewsByBrandIn(brands, afterId, page)),
+                WatchReleaseDto::getId);
     }
     
     public List<WatchReleaseDto> getUpcomingReleases() {
-        return watchReleaseRepository.findUpcomingReleases(LocalDateTime.now()).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return cachedUpcomingReleases().value();
+    }
+    
+    public WatchReleaseCatalogCache.Entry<List<WatchReleaseDto>> cachedUpcomingReleases() {
+        return catalogCache.get(WatchReleaseCatalogCache.CatalogKey.UPCOMING,
+                () -> List.copyOf(upcomingReleases().all()));
+    }
+    
+    /**
+     * Upcoming releases in release date order, paged on (releaseDate, id).
+     */
+    public KeysetPager<WatchReleaseDto, ReleaseDateKey> upcomingReleases() {
+        LocalDateTime now = LocalDateTime.now();
+        return new KeysetPager<>(
+                (after, page) -> withCollections(watchReleaseRepository.findUpcomingReleaseViews(
+                        now, after.releaseDate(), after.id(), page)),
+                release -> new ReleaseDateKey(release.getReleaseDate(), release.getId()),
+                new ReleaseDateKey(now, 0L),
+                ReleaseDateKey::encode,
+                ReleaseDateKey::decode);
     }
     
     public List<WatchReleaseDto> getLimitedEditionReleases() {
-        return watchReleaseRepository.findByIsLimitedEditionTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return cachedLimitedEditionReleases().value();
+    }
+    
+    public WatchReleaseCatalogCache.Entry<List<WatchReleaseDto>> cachedLimitedEditionReleases() {
+        return catalogCache.get(WatchReleaseCatalogCache.CatalogKey.LIMITED_EDITION,
+                () -> List.copyOf(limitedEditionReleases().all()));
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> limitedEditionReleases() {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findLimitedEditionReleaseViews(afterId, page)),
+                WatchReleaseDto::getId);
     }
     
     public void markAsNotified(Long id) {
@@ -107,16 +168,46 @@ public class WatchReleaseService {
         release.setIsNotified(true);
         release.setNotificationSentAt(LocalDateTime.now());
         watchReleaseRepository.save(release);
+        catalogCache.evict(convertToDto(release), null);
         log.info("Marked watch release with ID: {} as notified", id);
     }
     
     public List<WatchReleaseDto> getReleasesByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return watchReleaseRepository.findByReleaseDateBetween(startDate, endDate).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return releasesByDateRange(startDate, endDate).all();
+    }
+    
+    public KeysetPager<WatchReleaseDto, Long> releasesByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        return KeysetPager.byId(
+                (afterId, page) -> withCollections(watchReleaseRepository.findReleaseViewsByReleaseDateBetween(startDate, endDate, afterId, page)),
+                WatchReleaseDto::getId);
+    }
+    
+    // Loads features and categories of all given releases with one query each per batch of ids
+    private List<WatchReleaseDto> withCollections(List<WatchReleaseDto> releases) {
+        Map<Long, WatchReleaseDto> byId = new LinkedHashMap<>();
+        releases.forEach(release -> byId.put(release.getId(), release));
+        ProjectionBatches.fill(byId, WatchReleaseDto::getFeatures, watchReleaseRepository::findFeaturesByReleaseIdIn);
+        ProjectionBatches.fill(byId, WatchReleaseDto::getCategories, watchReleaseRepository::findCategoriesByReleaseIdIn);
+        return releases;
+    }
+    
+    /**
+     * Keyset position of a release ordered by release date.
+     */
+    public record ReleaseDateKey(LocalDateTime releaseDate, Long id) {
+        
+        String encode() {
+            return releaseDate + "|" + id;
+        }
+        
+        static ReleaseDateKey decode(String value) {
+            int separator = value.lastIndexOf('|');
+            return new ReleaseDateKey(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1)));
+        }
     }
     
-    private WatchReleaseDto convertToDto(WatchRelease watchRelease) {
+    WatchReleaseDto convertToDto(WatchRelease watchRelease) {
         WatchReleaseDto dto = new WatchReleaseDto();
         dto.setId(watchRelease.getId());
         dto.setWatchName(watchRelease.getWatchName());
@@ -126,8 +217,8 @@ public class WatchReleaseService {
         dto.setReleaseDate(watchRelease.getReleaseDate());
         dto.setPrice(watchRelease.getPrice());
         dto.setCurrency(watchRelease.getCurrency());
-        dto.setFeatures(watchRelease.getFeatures());
-        dto.setCategories(watchRelease.getCategories());
+        dto.setFeatures(watchRelease.getFeatures() != null ? new HashSet<>(watchRelease.getFeatures()) : null);
+        dto.setCategories(watchRelease.getCategories() != null ? new HashSet<>(watchRelease.getCategories()) : null);
         dto.setImageUrl(watchRelease.getImageUrl());
         dto.setProductUrl(watchRelease.getProductUrl());
         dto.setIsLimitedEdition(watchRelease.getIsLimitedEdition());
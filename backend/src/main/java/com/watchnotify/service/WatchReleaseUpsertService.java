@@ -0,0 +1,321 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.WatchReleaseDto;
+import com.watchnotify.dto.WatchReleaseUpsertResultDto;
+import com.watchnotify.repository.WatchReleaseRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Upserts watch releases in bulk from a catalog feed, keyed on (brand, modelNumber).
+ *
+ * <p>Items are processed in batches of {@code batch-size}, each in its own transaction.
+ * A batch loads the stored releases it matches with one query, plus one per collection,
+ * and diffs every item against its stored release. Only new and changed releases are
+ * written, and only the features and categories that were added or removed, all with
+ * JDBC batches. Unchanged items cost no write and evict nothing from the catalog cache;
+ * changed ones evict only the entries they can appear in.
+ *
+ * <p>Like {@code PUT}, an item replaces every field of the stored release except its
+ * notification state. The feed key is unique, so when a concurrent feed stores one of
+ * a batch's new releases first the batch is diffed once more and updates it instead. A
+ * batch the database still rejects is retried item by item, so a bad item is reported
+ * without failing its neighbours.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WatchReleaseUpsertService {
+    
+    private static final String INSERT_RELEASE = "INSERT INTO watch_releases (watch_name, brand, model_number, " +
+            "description, release_date, price, currency, image_url, product_url, is_limited_edition, " +
+            "limited_quantity, is_notified, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String UPDATE_RELEASE = "UPDATE watch_releases SET watch_name = ?, description = ?, " +
+            "release_date = ?, price = ?, currency = ?, image_url = ?, product_url = ?, is_limited_edition = ?, " +
+            "limited_quantity = ?, updated_at = ? WHERE id = ?";
+    
+    private static final String INSERT_FEATURE = "INSERT INTO watch_features (watch_id, feature) VALUES (?, ?)";
+    
+    private static final String DELETE_FEATURE = "DELETE FROM watch_features WHERE watch_id = ? AND feature = ?";
+    
+    private static final String INSERT_CATEGORY = "INSERT INTO watch_categories (watch_id, category) VALUES (?, ?)";
+    
+    private static final String DELETE_CATEGORY = "DELETE FROM watch_categories WHERE watch_id = ? AND category = ?";
+    
+    private final WatchReleaseRepository watchReleaseRepository;
+    private final WatchReleaseCatalogCache catalogCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    
+    @Value("${app.catalog.bulk.batch-size:500}")
+    private int batchSize;
+    
+    public WatchReleaseUpsertResultDto upsert(List<WatchReleaseDto> releases) {
+        WatchReleaseUpsertResultDto result = new WatchReleaseUpsertResultDto();
+        result.setItems(releases.size());
+        Map<Key, Integer> seen = new HashMap<>();
+        List<Item> batch = new ArrayList<>();
+        for (int index = 0; index < releases.size(); index++) {
+            WatchReleaseDto release = releases.get(index);
+            if (release == null) {
+                reject(result, new Item(index, null, null), "Item is empty");
+                continue;
+            }
+            
+            Item item = new Item(index, new Key(strip(release.getBrand()), strip(release.getModelNumber())), release);
+            release.setBrand(item.key().brand());
+            release.setModelNumber(item.key().modelNumber());
+            String error = validate(release);
+            if (error != null) {
+                reject(result, item, error);
+                continue;
+            }
+            Integer first = seen.putIfAbsent(item.key(), index);
+            if (first != null) {
+                reject(result, item, "Duplicate of item " + first);
+                continue;
+            }
+            
+            batch.add(item);
+            if (batch.size() >= batchSize) {
+                write(batch, result);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, result);
+        }
+        
+        log.info("Upserted watch releases: {} items, {} created, {} updated, {} unchanged, {} rejected",
+                result.getItems(), result.getCreated(), result.getUpdated(), result.getUnchanged(), result.getFailed());
+        return result;
+    }
+    
+    private void write(List<Item> items, WatchReleaseUpsertResultDto result) {
+        try {
+            Outcome outcome = execute(items);
+            result.setCreated(result.getCreated() + outcome.created());
+            result.setUpdated(result.getUpdated() + outcome.updated());
+            result.setUnchanged(result.getUnchanged() + outcome.unchanged());
+            outcome.rejected().forEach((item, message) -> reject(result, item, message));
+        } catch (DataAccessException e) {
+            if (items.size() == 1) {
+                reject(result, items.get(0), "Rejected by the database: " + e.getMostSpecificCause().getMessage());
+                return;
+            }
+            log.warn("Upsert batch of {} watch releases failed, retrying item by item: {}",
+                    items.size(), e.getMostSpecificCause().getMessage());
+            items.forEach(item -> write(List.of(item), result));
+        }
+    }
+    
+    // The unique feed key fails the insert of a release another feed stored after this
+    // batch read the stored releases; read them again and diff against those
+    private Outcome execute(List<Item> items) {
+        try {
+            return transactionTemplate.execute(status -> apply(items));
+        } catch (DuplicateKeyException e) {
+            log.debug("Upsert batch of {} watch releases raced another feed, diffing again", items.size());
+            return transactionTemplate.execute(status -> apply(items));
+        }
+    }
+    
+    private Outcome apply(List<Item> items) {
+        Map<Key, List<WatchReleaseDto>> stored = stored(items);
+        LocalDateTime now = LocalDateTime.now();
+        
+        List<Item> inserted = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        Map<String, List<Object[]>> collectionWrites = new LinkedHashMap<>();
+        List<WatchReleaseCatalogCache.Change> changes = new ArrayList<>();
+        Map<Item, String> rejected = new LinkedHashMap<>();
+        int unchanged = 0;
+        
+        for (Item item : items) {
+            WatchReleaseDto release = item.release();
+            List<WatchReleaseDto> matches = stored.getOrDefault(item.key(), List.of());
+            if (matches.size() > 1) {
+                rejected.put(item, "Matches " + matches.size() + " stored releases");
+                continue;
+            }
+            if (matches.isEmpty()) {
+                inserted.add(item);
+                inserts.add(new Object[]{release.getWatchName(), release.getBrand(), release.getModelNumber(),
+                        release.getDescription(), release.getReleaseDate(), release.getPrice(), release.getCurrency(),
+                        release.getImageUrl(), release.getProductUrl(), release.getIsLimitedEdition(),
+                        release.getLimitedQuantity(), false, now, now});
+                continue;
+            }
+            
+            WatchReleaseDto before = matches.get(0);
+            Long id = before.getId();
+            boolean changed = fieldsDiffer(before, release);
+            changed |= diff(collectionWrites, id, before.getFeatures(), release.getFeatures(),
+                    INSERT_FEATURE, DELETE_FEATURE);
+            changed |= diff(collectionWrites, id, before.getCategories(), release.getCategories(),
+                    INSERT_CATEGORY, DELETE_CATEGORY);
+            if (!changed) {
+                unchanged++;
+                continue;
+            }
+            updates.add(new Object[]{release.getWatchName(), release.getDescription(), release.getReleaseDate(),
+                    release.getPrice(), release.getCurrency(), release.getImageUrl(), release.getProductUrl(),
+                    release.getIsLimitedEdition(), release.getLimitedQuantity(), now, id});
+            changes.add(new WatchReleaseCatalogCache.Change(before, withId(release, id)));
+        }
+        
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_RELEASE, inserts);
+            Map<Key, Long> ids = new HashMap<>();
+            for (Object[] row : watchReleaseRepository.findIdsByBrandInAndModelNumberIn(
+                    brands(inserted), modelNumbers(inserted))) {
+                ids.put(new Key((String) row[0], (String) row[1]), (Long) row[2]);
+            }
+            for (Item item : inserted) {
+                Long id = ids.get(item.key());
+                diff(collectionWrites, id, Set.of(), item.release().getFeatures(), INSERT_FEATURE, DELETE_FEATURE);
+                diff(collectionWrites, id, Set.of(), item.release().getCategories(), INSERT_CATEGORY, DELETE_CATEGORY);
+                changes.add(new WatchReleaseCatalogCache.Change(null, withId(item.release(), id)));
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_RELEASE, updates);
+        }
+        collectionWrites.forEach((sql, rows) -> jdbcTemplate.batchUpdate(sql, rows));
+        
+        catalogCache.evictAll(changes);
+        return new Outcome(inserts.size(), updates.size(), unchanged, rejected);
+    }
+    
+    // Stored releases of the batch's keys; more than one per key only if the unique feed key is missing
+    private Map<Key, List<WatchReleaseDto>> stored(List<Item> items) {
+        Set<Key> keys = items.stream().map(Item::key).collect(Collectors.toSet());
+        Map<Long, WatchReleaseDto> byId = new LinkedHashMap<>();
+        for (WatchReleaseDto release : watchReleaseRepository.findReleaseViewsByBrandInAndModelNumberIn(
+                brands(items), modelNumbers(items))) {
+            if (keys.contains(new Key(release.getBrand(), release.getModelNumber()))) {
+                byId.put(release.getId(), release);
+            }
+        }
+        ProjectionBatches.fill(byId, WatchReleaseDto::getFeatures, watchReleaseRepository::findFeaturesByReleaseIdIn);
+        ProjectionBatches.fill(byId, WatchReleaseDto::getCategories, watchReleaseRepository::findCategoriesByReleaseIdIn);
+        
+        Map<Key, List<WatchReleaseDto>> stored = new HashMap<>();
+        byId.values().forEach(release -> stored
+                .computeIfAbsent(new Key(release.getBrand(), release.getModelNumber()), key -> new ArrayList<>())
+                .add(release));
+        return stored;
+    }
+    
+    private static boolean fieldsDiffer(WatchReleaseDto before, WatchReleaseDto after) {
+        return !Objects.equals(before.getWatchName(), after.getWatchName())
+                || !Objects.equals(before.getDescription(), after.getDescription())
+                || !Objects.equals(before.getReleaseDate(), after.getReleaseDate())
+                || !samePrice(before.getPrice(), after.getPrice())
+                || !Objects.equals(before.getCurrency(), after.getCurrency())
+                || !Objects.equals(before.getImageUrl(), after.getImageUrl())
+                || !Objects.equals(before.getProductUrl(), after.getProductUrl())
+                || !Objects.equals(before.getIsLimitedEdition(), after.getIsLimitedEdition())
+                || !Objects.equals(before.getLimitedQuantity(), after.getLimitedQuantity());
+    }
+    
+    // The stored scale may differ from the submitted one
+    private static boolean samePrice(BigDecimal before, BigDecimal after) {
+        return before == null ? after == null : after != null && before.compareTo(after) == 0;
+    }
+    
+    // Queues the entries to delete and insert so the collection ends up as after; a null
+    // collection counts as empty
+    private static boolean diff(Map<String, List<Object[]>> writes, Long id, Set<String> before, Set<String> after,
+                                String insertSql, String deleteSql) {
+        Set<String> current = before != null ? before : Set.of();
+        Set<String> target = after != null ? after : Set.of();
+        boolean changed = false;
+        for (String value : current) {
+            if (!target.contains(value)) {
+                writes.computeIfAbsent(deleteSql, sql -> new ArrayList<>()).add(new Object[]{id, value});
+                changed = true;
+            }
+        }
+        for (String value : target) {
+            if (!current.contains(value)) {
+                writes.computeIfAbsent(insertSql, sql -> new ArrayList<>()).add(new Object[]{id, value});
+                changed = true;
+            }
+        }
+        return changed;
+    }
+    
+    private String validate(WatchReleaseDto release) {
+        Set<String> messages = validator.validate(release).stream()
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.toCollection(HashSet::new));
+        if (release.getModelNumber() == null || release.getModelNumber().isEmpty()) {
+            messages.add("Model number is required");
+        }
+        if (messages.isEmpty()) {
+            return null;
+        }
+        return messages.stream().sorted().collect(Collectors.joining("; "));
+    }
+    
+    private static void reject(WatchReleaseUpsertResultDto result, Item item, String message) {
+        result.setFailed(result.getFailed() + 1);
+        String brand = item.key() != null ? item.key().brand() : null;
+        String modelNumber = item.key() != null ? item.key().modelNumber() : null;
+        result.getErrors().add(new WatchReleaseUpsertResultDto.ItemError(item.index(), brand, modelNumber, message));
+    }
+    
+    private static WatchReleaseDto withId(WatchReleaseDto release, Long id) {
+        WatchReleaseDto copy = new WatchReleaseDto();
+        copy.setId(id);
+        copy.setBrand(release.getBrand());
+        copy.setReleaseDate(release.getReleaseDate());
+        copy.setIsLimitedEdition(release.getIsLimitedEdition());
+        return copy;
+    }
+    
+    private static List<String> brands(List<Item> items) {
+        return items.stream().map(item -> item.key().brand()).distinct().toList();
+    }
+    
+    private static List<String> modelNumbers(List<Item> items) {
+        return items.stream().map(item -> item.key().modelNumber()).distinct().toList();
+    }
+    
+    private static String strip(String value) {
+        return value != null ? value.strip() : null;
+    }
+    
+    private record Key(String brand, String modelNumber) {
+    }
+    
+    private record Item(int index, Key key, WatchReleaseDto release) {
+    }
+    
+    private record Outcome(int created, int updated, int unchanged, Map<Item, String> rejected) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+import com.watchnotify.repository.UserRepository;
+import com.watchnotify.repository.WatchReleaseRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Guards the DTO read paths against N+1 regressions: listing ten times as many
+ * users or releases, each with element collections, must not prepare more SQL
+ * statements. Both sizes stay inside a single keyset chunk so the count is
+ * independent of row volume.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({UserService.class, WatchReleaseService.class})
+class ReadPathStatementCountTest {
+
+    private static final int N = 20;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private WatchReleaseService watchReleaseService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WatchReleaseRepository watchReleaseRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private AudienceIndex audienceIndex;
+
+    @MockBean
+    private WatchReleaseCatalogCache watchReleaseCatalogCache;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getAllUsersPreparesSameStatementsRegardlessOfUserCount() {
+        seedUsers(0, N);
+        long small = statementsFor(() -> assertEquals(N, userService.getAllUsers().size()));
+
+        seedUsers(N, 10 * N);
+        long large = statementsFor(() -> assertEquals(10 * N, userService.getAllUsers().size()));
+
+        assertEquals(small, large);
+    }
+
+    @Test
+    void getAllWatchReleasesPreparesSameStatementsRegardlessOfReleaseCount() {
+        seedReleases(0, N);
+        long small = statementsFor(() -> assertEquals(N, watchReleaseService.getAllWatchReleases().size()));
+
+        seedReleases(N, 10 * N);
+        long large = statementsFor(() -> assertEquals(10 * N, watchReleaseService.getAllWatchReleases().size()));
+
+        assertEquals(small, large);
+    }
+
+    private long statementsFor(Runnable read) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        read.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void seedUsers(int from, int to) {
+        for (int i = from; i < to; i++) {
+            User user = new User();
+            user.setFirstName("First" + i);
+            user.setLastName("Last" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setPreferences(Set.of("Luxury", "Sports", "pref-" + i));
+            userRepository.save(user);
+        }
+    }
+
+    private void seedReleases(int from, int to) {
+        for (int i = from; i < to; i++) {
+            WatchRelease release = new WatchRelease();
+            release.setWatchName("Watch " + i);
+            release.setBrand(i % 2 == 0 ? "Rolex" : "Omega");
+            release.setPrice(BigDecimal.valueOf(1000 + i));
+            release.setReleaseDate(LocalDateTime.now().plusDays(i));
+            release.setFeatures(Set.of("Automatic", "feature-" + i));
+            release.setCategories(Set.of("Luxury", "category-" + i));
+            watchReleaseRepository.save(release);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.watchnotify.loadtest;
+
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency and failure behaviour of one simulated channel provider, read from
+ * {@code loadtest.<channel>.*}: {@code latency} (ms per message), {@code jitter}
+ * (ms, uniformly added on top), {@code connect-latency} (ms per connection, email only)
+ * and {@code failure-rate} (share of messages that fail).
+ */
+record ChannelProfile(double latencyMillis, double jitterMillis, double connectLatencyMillis, double failureRate) {
+    
+    static ChannelProfile from(Environment environment, String channel) {
+        String prefix = "loadtest." + channel + ".";
+        return new ChannelProfile(
+                environment.getProperty(prefix + "latency", Double.class, 5.0),
+                environment.getProperty(prefix + "jitter", Double.class, 0.0),
+                environment.getProperty(prefix + "connect-latency", Double.class, 0.0),
+                environment.getProperty(prefix + "failure-rate", Double.class, 0.0));
+    }
+    
+    void connect() {
+        pause(connectLatencyMillis);
+    }
+    
+    /**
+     * Waits for one message's latency.
+     *
+     * @return whether the message should fail
+     */
+    boolean deliver() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        pause(latencyMillis + (jitterMillis > 0 ? random.nextDouble(jitterMillis) : 0));
+        return failureRate > 0 && random.nextDouble() < failureRate;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%.1f ms%s, %.1f%% failures", latencyMillis,
+                jitterMillis > 0 ? String.format(" (+0..%.1f)", jitterMillis) : "", failureRate * 100);
+    }
+    
+    private static void pause(double millis) {
+        if (millis <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
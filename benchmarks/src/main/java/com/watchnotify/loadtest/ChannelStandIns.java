@@ -0,0 +1,96 @@
+package com.watchnotify.loadtest;
+
+import com.watchnotify.model.Notification;
+import com.watchnotify.service.NotificationSender;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process stand-ins for the channel providers. The mail sender replaces Spring
+ * Boot's, and the notification sender takes over SMS and push; both only wait and
+ * fail as their {@link ChannelProfile} says.
+ */
+@Configuration(proxyBeanMethods = false)
+class ChannelStandIns {
+    
+    @Bean
+    JavaMailSender mailSender(Environment environment) {
+        return new StandInMailSender(ChannelProfile.from(environment, "email"));
+    }
+    
+    @Bean
+    @Primary
+    NotificationSender standInNotificationSender(JavaMailSender mailSender, Environment environment) {
+        return new StandInNotificationSender(mailSender,
+                ChannelProfile.from(environment, "sms"), ChannelProfile.from(environment, "push"));
+    }
+    
+    /**
+     * Every {@code send} call is one SMTP connection: one connect latency plus one
+     * message latency per message.
+     */
+    static final class StandInMailSender extends JavaMailSenderImpl {
+        
+        private final ChannelProfile profile;
+        
+        StandInMailSender(ChannelProfile profile) {
+            this.profile = profile;
+        }
+        
+        @Override
+        public void send(SimpleMailMessage... messages) throws MailException {
+            profile.connect();
+            Map<Object, Exception> failures = new LinkedHashMap<>();
+            for (SimpleMailMessage message : messages) {
+                if (profile.deliver()) {
+                    failures.put(message, new MailSendException("Simulated delivery failure"));
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MailSendException(failures);
+            }
+        }
+        
+        @Override
+        public void send(MimeMessage... mimeMessages) throws MailException {
+            throw new UnsupportedOperationException("Only simple messages are sent");
+        }
+    }
+    
+    static final class StandInNotificationSender extends NotificationSender {
+        
+        private final ChannelProfile sms;
+        private final ChannelProfile push;
+        
+        StandInNotificationSender(JavaMailSender mailSender, ChannelProfile sms, ChannelProfile push) {
+            super(mailSender);
+            this.sms = sms;
+            this.push = push;
+        }
+        
+        @Override
+        public void send(Notification notification) {
+            ChannelProfile profile = switch (notification.getNotificationType()) {
+                case EMAIL -> null;
+                case SMS -> sms;
+                case PUSH -> push;
+            };
+            if (profile == null) {
+                super.send(notification);
+            } else if (profile.deliver()) {
+                throw new IllegalStateException("Simulated " + notification.getNotificationType() + " failure");
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.watchnotify.loadtest;
+
+import com.watchnotify.WatchNotificationServiceApplication;
+import com.watchnotify.dto.NotificationJobDto;
+import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.WatchRelease;
+import com.watchnotify.repository.WatchReleaseRepository;
+import com.watchnotify.service.AudienceIndex;
+import com.watchnotify.service.NotificationJobService;
+import com.watchnotify.service.NotificationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end fan-out throughput test. For each audience size it starts the service
+ * against a fresh database, seeds synthetic users, fans one release out to all of them
+ * and waits until the outbox has drained. Channel providers are replaced by
+ * {@link ChannelStandIns}, so no external service is needed.
+ *
+ * <p>Options are Spring properties, passed as {@code --name=value}:
+ * <ul>
+ *   <li>{@code loadtest.users}: comma-separated audience sizes (default {@code 10000,100000})</li>
+ *   <li>{@code loadtest.<channel>.latency}, {@code .jitter}, {@code .failure-rate} and
+ *       {@code loadtest.email.connect-latency}: provider profiles, see {@link ChannelProfile}</li>
+ *   <li>{@code loadtest.timeout}: maximum time (ms) to wait for one run (default 30 minutes)</li>
+ *   <li>{@code spring.datasource.*}: another database, e.g. a local PostgreSQL; the default is
+ *       a fresh in-memory H2 database per run</li>
+ * </ul>
+ * Any other service property (dispatch limits, outbox workers, ...) can be overridden the same way.
+ */
+public final class FanOutLoadTest {
+    
+    private static final int SEED_BATCH_SIZE = 5000;
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    // The outbox is drained once nothing is pending and no row has been written for this long
+    private static final long QUIET_PERIOD_MILLIS = 2500;
+    
+    private static final List<String> PREFERENCES = List.of(
+            "Swiss Luxury", "Nordic Time", "Alpine Works", "Meridian", "luxury", "sports", "dress", "diver",
+            "pilot", "chronograph", "field", "vintage", "gmt", "automatic");
+    
+    private FanOutLoadTest() {
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        String users = options.containsProperty("loadtest.users") ? options.getProperty("loadtest.users") : "10000,100000";
+        
+        List<RunResult> results = new ArrayList<>();
+        for (String size : users.split(",")) {
+            results.add(run(Integer.parseInt(size.trim()), args));
+        }
+        
+        System.out.println();
+        System.out.println(RunResult.HEADER);
+        results.forEach(System.out::println);
+    }
+    
+    private static RunResult run(int userCount, String[] args) throws InterruptedException {
+        try (ConfigurableApplicationContext context = start(userCount, args)) {
+            Environment environment = context.getEnvironment();
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            
+            System.out.printf("%nSeeding %,d users...%n", userCount);
+            seedUsers(jdbc, userCount);
+            context.getBean(AudienceIndex.class).rebuild();
+            WatchRelease release = context.getBean(WatchReleaseRepository.class).save(release());
+            
+            for (String channel : List.of("email", "sms", "push")) {
+                System.out.printf("  %-5s provider: %s%n", channel, ChannelProfile.from(environment, channel));
+            }
+            
+            Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            statistics.setStatisticsEnabled(true);
+            statistics.clear();
+            HeapSampler heap = HeapSampler.start();
+            
+            long started = System.nanoTime();
+            NotificationJobDto job = context.getBean(NotificationJobService.class).submit(request(release.getId()));
+            context.getBean(NotificationService.class).runJob(job.getId());
+            long timeout = environment.getProperty("loadtest.timeout", Long.class, TimeUnit.MINUTES.toMillis(30));
+            long finished = awaitDrained(jdbc, release.getId(), timeout);
+            boolean drained = finished >= 0;
+            long elapsedNanos = (drained ? finished : System.nanoTime()) - started;
+            
+            long peakHeap = heap.stop();
+            long writes = statistics.getEntityInsertCount() + statistics.getEntityUpdateCount()
+                    + statistics.getEntityDeleteCount();
+            return new RunResult(userCount, drained, elapsedNanos, countByStatus(jdbc), writes,
+                    latencies(context.getBean(MeterRegistry.class)), peakHeap);
+        }
+    }
+    
+    private static ConfigurableApplicationContext start(int userCount, String[] args) {
+        // Passed as command-line arguments so they win over application.yml; the caller's own arguments win over them
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + userCount + ";DB_CLOSE_DELAY=-1");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("spring.h2.console.enabled", "false");
+        properties.put("logging.level.com.watchnotify", "ERROR");
+        properties.put("logging.level.org.hibernate.SQL", "WARN");
+        properties.put("logging.level.org.hibernate.type.descriptor.sql.BasicBinder", "WARN");
+        properties.put("management.metrics.distribution.percentiles.notification.dispatch.latency", "0.5,0.99");
+        properties.put("management.metrics.distribution.expiry.notification.dispatch.latency", "24h");
+        properties.put("app.notification.retry.delay", "200");
+        properties.put("app.notification.retry.max-delay", "2000");
+        
+        List<String> arguments = new ArrayList<>();
+        SimpleCommandLinePropertySource overrides = new SimpleCommandLinePropertySource(args);
+        properties.forEach((name, value) -> {
+            if (!overrides.containsProperty(name)) {
+                arguments.add("--" + name + "=" + value);
+            }
+        });
+        arguments.addAll(List.of(args));
+        
+        return new SpringApplicationBuilder(WatchNotificationServiceApplication.class, ChannelStandIns.class)
+                // Sample data and the periodic release jobs would add notifications of their own
+                .initializers(context -> context.addBeanFactoryPostProcessor(beanFactory -> {
+                    BeanDefinitionRegistry registry = (BeanDefinitionRegistry) beanFactory;
+                    for (String bean : List.of("dataLoader", "notificationScheduler")) {
+                        if (registry.containsBeanDefinition(bean)) {
+                            registry.removeBeanDefinition(bean);
+                        }
+                    }
+                }))
+                .run(arguments.toArray(new String[0]));
+    }
+    
+    private static void seedUsers(JdbcTemplate jdbc, int userCount) {
+        Random random = new Random(42);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> users = new ArrayList<>(SEED_BATCH_SIZE);
+        List<Object[]> preferences = new ArrayList<>(SEED_BATCH_SIZE * 2);
+        
+        for (long id = 1; id <= userCount; id++) {
+            users.add(new Object[] {id, "User" + id, "Synthetic", "user" + id + "@example" + (id % 50) + ".com",
+                    random.nextInt(4) == 0 ? "+1555" + id : null, random.nextInt(10) != 0,
+                    random.nextInt(5) != 0, random.nextInt(3) == 0, random.nextBoolean(), now, now});
+            int preferenceCount = 1 + random.nextInt(3);
+            for (String preference : Set.copyOf(randomPreferences(random, preferenceCount))) {
+                preferences.add(new Object[] {id, preference});
+            }
+            
+            if (users.size() == SEED_BATCH_SIZE || id == userCount) {
+                jdbc.batchUpdate("INSERT INTO users (id, first_name, last_name, email, phone_number, is_active, " +
+                        "email_notifications_enabled, sms_notifications_enabled, push_notifications_enabled, " +
+                        "created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", users);
+                jdbc.batchUpdate("INSERT INTO user_preferences (user_id, preference) VALUES (?, ?)", preferences);
+                users.clear();
+                preferences.clear();
+            }
+        }
+    }
+    
+    private static List<String> randomPreferences(Random random, int count) {
+        List<String> picked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            picked.add(PREFERENCES.get(random.nextInt(PREFERENCES.size())));
+        }
+        return picked;
+    }
+    
+    private static WatchRelease release() {
+        WatchRelease release = new WatchRelease();
+        release.setWatchName("Load Test Chronograph");
+        release.setBrand("Swiss Luxury");
+        release.setModelNumber("LT-0001");
+        release.setDescription("Synthetic release for the fan-out load test");
+        release.setReleaseDate(LocalDateTime.now().plusDays(7));
+        release.setPrice(new BigDecimal("8500.00"));
+        release.setProductUrl("https://example.com/watches/load-test");
+        return release;
+    }
+    
+    private static NotificationRequestDto request(Long releaseId) {
+        NotificationRequestDto request = new NotificationRequestDto();
+        request.setWatchReleaseId(releaseId);
+        request.setSendEmail(true);
+        request.setSendSms(true);
+        request.setSendPush(true);
+        request.setKind(Notification.NotificationKind.NEW_RELEASE);
+        return request;
+    }
+    
+    /**
+     * Waits until the fan-out has finished and the outbox has drained.
+     *
+     * @return the {@link System#nanoTime()} at which the last row changed, or -1 on timeout
+     */
+    private static long awaitDrained(JdbcTemplate jdbc, Long releaseId, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        String lastState = null;
+        long lastChange = System.nanoTime();
+        
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+            List<String> leaseStates = jdbc.queryForList(
+                    "SELECT state FROM release_fanout_leases WHERE watch_release_id = ?", String.class, releaseId);
+            boolean fannedOut = !leaseStates.isEmpty() && !leaseStates.contains("NOTIFYING");
+            String state = jdbc.queryForObject("SELECT COUNT(*) || '/' || " +
+                    "COALESCE(SUM(CASE WHEN status = 'PENDING' THEN 1 ELSE 0 END), 0) FROM notifications", String.class);
+            
+            long now = System.nanoTime();
+            if (!state.equals(lastState)) {
+                lastState = state;
+                lastChange = now;
+            } else if (fannedOut && state.endsWith("/0")
+                    && now - lastChange >= TimeUnit.MILLISECONDS.toNanos(QUIET_PERIOD_MILLIS)) {
+                return lastChange;
+            }
+        }
+        return -1;
+    }
+    
+    private static Map<Notification.NotificationStatus, Long> countByStatus(JdbcTemplate jdbc) {
+        Map<Notification.NotificationStatus, Long> counts = new EnumMap<>(Notification.NotificationStatus.class);
+        jdbc.query("SELECT status, COUNT(*) FROM notifications GROUP BY status", row -> {
+            counts.put(Notification.NotificationStatus.valueOf(row.getString(1)), row.getLong(2));
+        });
+        return counts;
+    }
+    
+    private static Map<Notification.NotificationType, double[]> latencies(MeterRegistry registry) {
+        Map<Notification.NotificationType, double[]> latencies = new EnumMap<>(Notification.NotificationType.class);
+        for (Notification.NotificationType type : Notification.NotificationType.values()) {
+            Timer timer = registry.find("notification.dispatch.latency").tag("channel", type.name()).timer();
+            if (timer == null || timer.count() == 0) {
+                continue;
+            }
+            ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+            double[] millis = new double[2];
+            for (ValueAtPercentile percentile : percentiles) {
+                millis[percentile.percentile() < 0.9 ? 0 : 1] = percentile.value(TimeUnit.MILLISECONDS);
+            }
+            latencies.put(type, millis);
+        }
+        return latencies;
+    }
+    
+    /**
+     * Samples used heap every few milliseconds and keeps the maximum.
+     */
+    private static final class HeapSampler {
+        
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean running = true;
+        
+        private HeapSampler() {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            thread = new Thread(() -> {
+                while (running) {
+                    peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+        }
+        
+        static HeapSampler start() {
+            HeapSampler sampler = new HeapSampler();
+            sampler.thread.start();
+            return sampler;
+        }
+        
+        long stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            return peak.get();
+        }
+    }
+    
+    private record RunResult(int users, boolean drained, long elapsedNanos,
+                             Map<Notification.NotificationStatus, Long> byStatus, long writes,
+                             Map<Notification.NotificationType, double[]> latencies, long peakHeapBytes) {
+        
+        static final String HEADER = String.format("%10s %9s %12s %10s %10s %12s %-42s %10s",
+                "users", "elapsed", "notifications", "sent/s", "failed", "db writes/s",
+                "dispatch p50/p99 ms (EMAIL SMS PUSH)", "peak heap");
+        
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            long sent = byStatus.getOrDefault(Notification.NotificationStatus.SENT, 0L);
+            long total = byStatus.values().stream().mapToLong(Long::longValue).sum();
+            long failed = total - sent;
+            
+            StringBuilder percentiles = new StringBuilder();
+            for (Notification.NotificationType type : Notification.NotificationType.values()) {
+                double[] millis = latencies.get(type);
+                percentiles.append(millis == null ? "-" : String.format("%.1f/%.1f", millis[0], millis[1])).append(' ');
+            }
+            
+            return String.format("%,10d %8.1fs %,12d %,10.0f %,10d %,12.0f %-42s %,8d MB%s",
+                    users, seconds, total, sent / seconds, failed, writes / seconds, percentiles.toString().trim(),
+                    peakHeapBytes / (1024 * 1024), drained ? "" : "  timed out with " + byStatus);
+        }
+    }
+}
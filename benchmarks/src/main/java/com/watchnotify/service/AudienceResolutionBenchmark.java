@@ -0,0 +1,120 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.NotificationRequestDto;
+import com.watchnotify.model.User;
+import com.watchnotify.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the recipients of a category-targeted request over synthetic user sets:
+ * a linear scan over loaded users, as the original in-memory filtering did, against
+ * the {@link AudienceIndex} bitmaps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AudienceResolutionBenchmark {
+    
+    @Param({"10000", "100000", "1000000"})
+    private int users;
+    
+    private List<User> loadedUsers;
+    private AudienceIndex audienceIndex;
+    private NotificationRequestDto request;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        loadedUsers = SyntheticData.users(users);
+        
+        request = new NotificationRequestDto();
+        request.setCategories(Set.of("chronograph", "diver", "gmt"));
+        request.setSendEmail(true);
+        request.setSendSms(false);
+        request.setSendPush(true);
+        
+        audienceIndex = new AudienceIndex(repositoryOver(loadedUsers), new TransactionTemplate(new NoOpTransactionManager()));
+        Field enabled = AudienceIndex.class.getDeclaredField("enabled");
+        enabled.setAccessible(true);
+        enabled.setBoolean(audienceIndex, true);
+        audienceIndex.rebuild();
+    }
+    
+    @Benchmark
+    public int linearScan() {
+        Set<String> categories = request.getCategories();
+        int matches = 0;
+        for (User user : loadedUsers) {
+            if (!Boolean.TRUE.equals(user.getIsActive())) {
+                continue;
+            }
+            boolean reachable = Boolean.TRUE.equals(user.getEmailNotificationsEnabled())
+                    || Boolean.TRUE.equals(user.getPushNotificationsEnabled());
+            if (reachable && user.getPreferences().stream().anyMatch(categories::contains)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    @Benchmark
+    public int bitmapIndex() {
+        RoaringBitmap audience = audienceIndex.resolve(request).orElseThrow();
+        return audience.getCardinality();
+    }
+    
+    // Serves the two streams the index is rebuilt from; nothing else is called
+    private static UserRepository repositoryOver(List<User> users) {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[] {UserRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "streamAudienceFlags" -> users.stream().map(user -> new Object[] {
+                            user.getId(), user.getIsActive(), user.getEmailNotificationsEnabled(),
+                            user.getSmsNotificationsEnabled(), user.getPhoneNumber() != null,
+                            user.getPushNotificationsEnabled()});
+                    case "streamPreferences" -> users.stream().flatMap(user -> user.getPreferences().stream()
+                            .map(preference -> new Object[] {user.getId(), preference}));
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+    
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+        
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+        
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+        
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.watchnotify.service;
+
+import com.watchnotify.dto.UserDto;
+import com.watchnotify.dto.WatchReleaseDto;
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps lists of loaded entities to DTOs with the services' {@code convertToDto}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoMappingBenchmark {
+    
+    @Param({"100", "1000"})
+    private int size;
+    
+    private List<User> users;
+    private List<WatchRelease> releases;
+    private UserService userService;
+    private WatchReleaseService watchReleaseService;
+    
+    @Setup
+    public void setUp() {
+        users = SyntheticData.users(size);
+        releases = SyntheticData.releases(size);
+        // Only the mapping is exercised, which touches none of the collaborators
+        userService = new UserService(null, null);
+        watchReleaseService = new WatchReleaseService(null, null);
+    }
+    
+    @Benchmark
+    public List<UserDto> users() {
+        List<UserDto> dtos = new ArrayList<>(users.size());
+        for (User user : users) {
+            dtos.add(userService.convertToDto(user));
+        }
+        return dtos;
+    }
+    
+    @Benchmark
+    public List<WatchReleaseDto> watchReleases() {
+        List<WatchReleaseDto> dtos = new ArrayList<>(releases.size());
+        for (WatchRelease release : releases) {
+            dtos.add(watchReleaseService.convertToDto(release));
+        }
+        return dtos;
+    }
+}
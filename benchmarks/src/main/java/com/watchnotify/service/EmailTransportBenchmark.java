@@ -0,0 +1,102 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.Notification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a batch of emails to one domain through an in-process SMTP server: one
+ * connection per message with {@link NotificationSender}, against one connection for
+ * the whole batch with {@link BulkEmailTransport}. Scores are per message, so the
+ * inverse is the messages per second of a single sender.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailTransportBenchmark {
+    
+    private static final int BATCH_SIZE = 50;
+    
+    // Simulated round trip per SMTP reply
+    @Param({"0", "200"})
+    private long roundTripMicros;
+    
+    private SmtpSink smtpSink;
+    private NotificationSender notificationSender;
+    private BulkEmailTransport bulkEmailTransport;
+    private List<Notification> batch;
+    
+    @Setup
+    public void setUp() throws IOException, ReflectiveOperationException {
+        smtpSink = new SmtpSink(roundTripMicros);
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtpSink.port());
+        
+        notificationSender = new NotificationSender(mailSender);
+        bulkEmailTransport = new BulkEmailTransport(mailSender);
+        set(bulkEmailTransport, "messagesPerConnection", BATCH_SIZE);
+        set(bulkEmailTransport, "maxConnectionsPerDomain", 4);
+        
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Notification notification = new Notification();
+            notification.setNotificationType(Notification.NotificationType.EMAIL);
+            notification.setRecipient("user" + i + "@example.com");
+            notification.setSubject("New Watch Release: Chronograph Master");
+            notification.setMessage("Dear User" + i + ",\n\nWe're excited to announce a new watch release!");
+            batch.add(notification);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        smtpSink.close();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void connectionPerMessage() {
+        for (Notification notification : batch) {
+            notificationSender.send(notification);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Map<Notification, Exception> connectionPerBatch() {
+        Map<Notification, Exception> failures = bulkEmailTransport.send(batch);
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Batch send failed", failures.values().iterator().next());
+        }
+        return failures;
+    }
+    
+    private static void set(Object target, String field, int value) throws ReflectiveOperationException {
+        Field declared = target.getClass().getDeclaredField(field);
+        declared.setAccessible(true);
+        declared.setInt(target, value);
+    }
+}
@@ -0,0 +1,63 @@
+package com.watchnotify.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.watchnotify.dto.UserDto;
+import com.watchnotify.dto.WatchReleaseDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes DTO lists the way the list endpoints do, with an {@link ObjectMapper}
+ * configured like Spring Boot's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+    
+    @Param({"100", "1000"})
+    private int size;
+    
+    private ObjectMapper objectMapper;
+    private List<UserDto> users;
+    private List<WatchReleaseDto> releases;
+    
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        UserService userService = new UserService(null, null);
+        WatchReleaseService watchReleaseService = new WatchReleaseService(null, null);
+        users = SyntheticData.users(size).stream().map(userService::convertToDto).toList();
+        releases = SyntheticData.releases(size).stream().map(watchReleaseService::convertToDto).toList();
+    }
+    
+    @Benchmark
+    public byte[] users() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(users);
+    }
+    
+    @Benchmark
+    public byte[] watchReleases() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(releases);
+    }
+}
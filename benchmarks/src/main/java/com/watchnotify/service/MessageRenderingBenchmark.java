@@ -0,0 +1,102 @@
+package com.watchnotify.service;
+
+import com.watchnotify.config.NotificationTemplateProperties;
+import com.watchnotify.model.Notification;
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the email body of one release for a batch of recipients: the original
+ * per-recipient {@code StringBuilder} code against {@link MessageTemplateEngine}, which
+ * renders the release part once and only fills in the salutation per recipient.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageRenderingBenchmark {
+    
+    @Param({"100", "1000"})
+    private int recipients;
+    
+    private List<User> users;
+    private WatchRelease release;
+    private MessageTemplateEngine engine;
+    
+    @Setup
+    public void setUp() {
+        users = SyntheticData.users(recipients);
+        release = SyntheticData.release(1, new Random(1));
+        engine = new MessageTemplateEngine(new NotificationTemplateProperties());
+        engine.compileTemplates();
+    }
+    
+    @Benchmark
+    public void stringBuilderPerRecipient(Blackhole blackhole) {
+        for (User user : users) {
+            blackhole.consume(buildEmailContent(user, release, "Available from Friday"));
+        }
+    }
+    
+    @Benchmark
+    public void templateEngine(Blackhole blackhole) {
+        MessageTemplateEngine.RenderedMessage message = engine
+                .render(release, Notification.NotificationKind.NEW_RELEASE, "Available from Friday")
+                .forChannel(Notification.NotificationType.EMAIL);
+        for (User user : users) {
+            blackhole.consume(message.bodyFor(user.getFirstName()));
+        }
+    }
+    
+    // The email rendering NotificationService used before the template engine
+    private static String buildEmailContent(User user, WatchRelease watchRelease, String customMessage) {
+        StringBuilder content = new StringBuilder();
+        content.append("Dear ").append(user.getFirstName()).append(",\n\n");
+        
+        if (customMessage != null && !customMessage.trim().isEmpty()) {
+            content.append(customMessage).append("\n\n");
+        }
+        
+        content.append("We're excited to announce a new watch release!\n\n");
+        content.append("Watch: ").append(watchRelease.getWatchName()).append("\n");
+        content.append("Brand: ").append(watchRelease.getBrand()).append("\n");
+        
+        if (watchRelease.getModelNumber() != null) {
+            content.append("Model: ").append(watchRelease.getModelNumber()).append("\n");
+        }
+        
+        if (watchRelease.getPrice() != null) {
+            content.append("Price: ").append(watchRelease.getCurrency()).append(" ").append(watchRelease.getPrice()).append("\n");
+        }
+        
+        if (watchRelease.getDescription() != null) {
+            content.append("Description: ").append(watchRelease.getDescription()).append("\n");
+        }
+        
+        if (watchRelease.getProductUrl() != null) {
+            content.append("Learn more: ").append(watchRelease.getProductUrl()).append("\n");
+        }
+        
+        content.append("\nBest regards,\nWatch Notification Service");
+        
+        return content.toString();
+    }
+}
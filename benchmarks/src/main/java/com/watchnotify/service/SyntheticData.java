@@ -0,0 +1,93 @@
+package com.watchnotify.service;
+
+import com.watchnotify.model.User;
+import com.watchnotify.model.WatchRelease;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic synthetic users and releases for the benchmarks.
+ */
+final class SyntheticData {
+    
+    static final List<String> BRANDS = List.of(
+            "Swiss Luxury", "Nordic Time", "Alpine Works", "Harbor & Co", "Meridian", "Tokyo Precision",
+            "Atelier Noir", "Crown Dial", "Vantage", "Old Bridge");
+    
+    static final List<String> CATEGORIES = List.of(
+            "luxury", "sports", "dress", "diver", "pilot", "chronograph", "field", "smart", "vintage", "skeleton",
+            "moonphase", "gmt", "tourbillon", "minimalist", "automatic", "quartz", "titanium", "ceramic",
+            "limited", "heritage");
+    
+    private SyntheticData() {
+    }
+    
+    static List<User> users(int count) {
+        Random random = new Random(42);
+        List<String> preferences = new ArrayList<>(BRANDS);
+        preferences.addAll(CATEGORIES);
+        
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setFirstName("User" + i);
+            user.setLastName("Synthetic");
+            user.setEmail("user" + i + "@example" + (i % 20) + ".com");
+            user.setPhoneNumber(random.nextInt(4) == 0 ? "+1555" + i : null);
+            user.setIsActive(random.nextInt(10) != 0);
+            user.setEmailNotificationsEnabled(random.nextInt(5) != 0);
+            user.setSmsNotificationsEnabled(random.nextInt(3) == 0);
+            user.setPushNotificationsEnabled(random.nextBoolean());
+            
+            Set<String> userPreferences = new HashSet<>();
+            int preferenceCount = 1 + random.nextInt(4);
+            for (int p = 0; p < preferenceCount; p++) {
+                userPreferences.add(preferences.get(random.nextInt(preferences.size())));
+            }
+            user.setPreferences(userPreferences);
+            user.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i));
+            user.setUpdatedAt(user.getCreatedAt());
+            users.add(user);
+        }
+        return users;
+    }
+    
+    static List<WatchRelease> releases(int count) {
+        Random random = new Random(7);
+        List<WatchRelease> releases = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            releases.add(release(i, random));
+        }
+        return releases;
+    }
+    
+    static WatchRelease release(long id, Random random) {
+        WatchRelease release = new WatchRelease();
+        release.setId(id);
+        release.setWatchName("Chronograph Master " + id);
+        release.setBrand(BRANDS.get(random.nextInt(BRANDS.size())));
+        release.setModelNumber("SL-2024-" + id);
+        release.setDescription("A premium automatic chronograph with moon phase complication and sapphire case back");
+        release.setReleaseDate(LocalDateTime.of(2025, 6, 1, 10, 0).plusDays(id));
+        release.setPrice(BigDecimal.valueOf(2500 + random.nextInt(20000)).setScale(2));
+        release.setCurrency("USD");
+        release.setFeatures(new HashSet<>(List.of("Automatic movement", "Sapphire crystal", "100m water resistance")));
+        release.setCategories(new HashSet<>(List.of(
+                CATEGORIES.get(random.nextInt(CATEGORIES.size())), CATEGORIES.get(random.nextInt(CATEGORIES.size())))));
+        release.setImageUrl("https://example.com/images/watch-" + id + ".jpg");
+        release.setProductUrl("https://example.com/watches/watch-" + id);
+        release.setIsLimitedEdition(id % 5 == 0);
+        release.setLimitedQuantity(id % 5 == 0 ? 500 : null);
+        release.setIsNotified(false);
+        release.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusHours(id));
+        release.setUpdatedAt(release.getCreatedAt());
+        return release;
+    }
+}
@@ -0,0 +1,98 @@
+-- Notification Analytics over the Incremental Rollups
+-- Redefines the notification analytics views of 02_notification_analytics.sql on top of
+-- notification_rollup_hourly and notification_rollup_daily (database/schema/09), which
+-- the service keeps up to date every few minutes from a watermark on created_at.
+-- The views keep their names and columns, but no longer aggregate the notifications
+-- table. Time windows are cut at hour boundaries instead of at the exact current time.
+
+-- =====================================================
+-- NOTIFICATION DELIVERY ANALYTICS
+-- =====================================================
+
+-- 1. Notification Delivery Performance by Type
+DROP VIEW IF EXISTS notification_delivery_performance;
+CREATE VIEW notification_delivery_performance AS
+SELECT 
+    notification_type,
+    SUM(notification_count) AS total_notifications,
+    SUM(notification_count) FILTER (WHERE status = 'SENT') AS successful_deliveries,
+    SUM(notification_count) FILTER (WHERE status = 'FAILED') AS failed_deliveries,
+    SUM(notification_count) FILTER (WHERE status = 'PENDING') AS pending_notifications,
+    ROUND(
+        (COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0)::DECIMAL / SUM(notification_count)) * 100, 2
+    ) AS success_rate,
+    ROUND(
+        (COALESCE(SUM(notification_count) FILTER (WHERE status = 'FAILED'), 0)::DECIMAL / SUM(notification_count)) * 100, 2
+    ) AS failure_rate,
+    SUM(delivery_seconds_sum) / NULLIF(SUM(delivered_count), 0) AS avg_delivery_time_seconds,
+    MIN(delivery_seconds_min) AS min_delivery_time_seconds,
+    MAX(delivery_seconds_max) AS max_delivery_time_seconds
+FROM notification_rollup_hourly
+WHERE bucket_start >= DATE_TRUNC('hour', NOW() - INTERVAL '30 days')
+GROUP BY notification_type
+ORDER BY success_rate DESC;
+
+-- 2. Notification Volume Trends (Daily)
+DROP VIEW IF EXISTS notification_volume_trends;
+CREATE VIEW notification_volume_trends AS
+SELECT 
+    rollup_date::TIMESTAMP AS notification_date,
+    notification_type,
+    SUM(notification_count) AS notification_count,
+    COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0) AS successful_count,
+    COALESCE(SUM(notification_count) FILTER (WHERE status = 'FAILED'), 0) AS failed_count,
+    ROUND(
+        (COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0)::DECIMAL / SUM(notification_count)) * 100, 2
+    ) AS daily_success_rate
+FROM notification_rollup_daily
+WHERE rollup_date >= CURRENT_DATE - 90
+GROUP BY rollup_date, notification_type
+ORDER BY notification_date DESC, notification_type;
+
+-- 3. Notification Performance by Hour of Day
+DROP VIEW IF EXISTS notification_hourly_performance;
+CREATE VIEW notification_hourly_performance AS
+SELECT 
+    EXTRACT(HOUR FROM bucket_start) AS hour_of_day,
+    notification_type,
+    SUM(notification_count) AS total_notifications,
+    COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0) AS successful_notifications,
+    ROUND(
+        (COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0)::DECIMAL / SUM(notification_count)) * 100, 2
+    ) AS success_rate,
+    SUM(delivery_seconds_sum) / NULLIF(SUM(delivered_count), 0) AS avg_delivery_time_seconds
+FROM notification_rollup_hourly
+WHERE bucket_start >= DATE_TRUNC('hour', NOW() - INTERVAL '30 days')
+GROUP BY EXTRACT(HOUR FROM bucket_start), notification_type
+ORDER BY hour_of_day, notification_type;
+
+-- 4. Notification Performance by Day of Week
+DROP VIEW IF EXISTS notification_daily_performance;
+CREATE VIEW notification_daily_performance AS
+SELECT 
+    TO_CHAR(rollup_date, 'Day') AS day_of_week,
+    EXTRACT(DOW FROM rollup_date) AS day_number,
+    notification_type,
+    SUM(notification_count) AS total_notifications,
+    COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0) AS successful_notifications,
+    ROUND(
+        (COALESCE(SUM(notification_count) FILTER (WHERE status = 'SENT'), 0)::DECIMAL / SUM(notification_count)) * 100, 2
+    ) AS success_rate,
+    SUM(delivery_seconds_sum) / NULLIF(SUM(delivered_count), 0) AS avg_delivery_time_seconds
+FROM notification_rollup_daily
+WHERE rollup_date >= CURRENT_DATE - 30
+GROUP BY TO_CHAR(rollup_date, 'Day'), EXTRACT(DOW FROM rollup_date), notification_type
+ORDER BY day_number, notification_type;
+
+-- =====================================================
+-- ROLLUP FRESHNESS
+-- =====================================================
+
+-- 5. How far the rollups lag behind the notifications table
+CREATE OR REPLACE VIEW notification_rollup_status AS
+SELECT 
+    name,
+    watermark,
+    updated_at AS last_run_at,
+    NOW() - updated_at AS time_since_last_run
+FROM rollup_watermarks;
@@ -0,0 +1,10 @@
+-- Pooled sequence for notification ids
+-- Notification ids are drawn from a sequence in blocks of 50 so Hibernate can
+-- batch inserts; IDENTITY columns force one round trip per row.
+
+CREATE SEQUENCE IF NOT EXISTS notifications_seq INCREMENT BY 50;
+
+-- Start past any ids already handed out by the old IDENTITY column
+SELECT setval('notifications_seq', COALESCE((SELECT MAX(id) FROM notifications), 0) + 1, false);
+
+ALTER TABLE notifications ALTER COLUMN id DROP IDENTITY IF EXISTS;
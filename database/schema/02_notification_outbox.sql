@@ -0,0 +1,8 @@
+-- Notification outbox
+-- Fan-out writes PENDING rows; outbox workers claim due rows with
+-- FOR UPDATE SKIP LOCKED, ordered by next_attempt_at.
+
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_notifications_status_next_attempt
+    ON notifications (status, next_attempt_at);
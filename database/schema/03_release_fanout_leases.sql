@@ -0,0 +1,16 @@
+-- Release fan-out leases
+-- One row per (release, lease type). A node claims a lease with
+-- SELECT ... FOR UPDATE SKIP LOCKED before fanning a release out, renews it
+-- per recipient chunk, and another node may take it over once it expires.
+
+CREATE TABLE IF NOT EXISTS release_fanout_leases (
+    id BIGSERIAL PRIMARY KEY,
+    watch_release_id BIGINT NOT NULL,
+    lease_type VARCHAR(255) NOT NULL,
+    state VARCHAR(255),
+    lease_owner VARCHAR(255),
+    lease_expires_at TIMESTAMP,
+    claimed_at TIMESTAMP,
+    completed_at TIMESTAMP,
+    CONSTRAINT uk_fanout_lease_release_type UNIQUE (watch_release_id, lease_type)
+);
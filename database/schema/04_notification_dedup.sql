@@ -0,0 +1,22 @@
+-- Per-recipient delivery dedup
+-- Each outbox row records the notification kind and which allowed repeat it is
+-- (dedup_seq; only reminders may have more than one). The unique index stops two
+-- nodes or two scheduler runs from queueing the same delivery twice. Rows without
+-- a dedup_seq (failed queue attempts, history before this change) are not covered.
+
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS notification_kind VARCHAR(255);
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS dedup_seq INTEGER;
+
+-- Treat the earliest existing delivery per recipient, release and channel as the announcement
+UPDATE notifications n
+SET notification_kind = 'NEW_RELEASE', dedup_seq = 0
+FROM (
+    SELECT DISTINCT ON (user_id, watch_release_id, notification_type) id
+    FROM notifications
+    WHERE notification_type IS NOT NULL AND dedup_seq IS NULL
+    ORDER BY user_id, watch_release_id, notification_type, created_at, id
+) first_delivery
+WHERE n.id = first_delivery.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_notifications_delivery
+    ON notifications (user_id, watch_release_id, notification_type, notification_kind, dedup_seq);
@@ -0,0 +1,5 @@
+-- Keyset pages of notifications by status
+-- /api/notifications/status/{status} pages on id within one status; this index
+-- serves those pages without walking the primary key past other statuses.
+
+CREATE INDEX IF NOT EXISTS idx_notifications_status_id ON notifications (status, id);
@@ -0,0 +1,8 @@
+-- User inbox
+-- /api/notifications/user/{userId}/inbox reads a user's notifications newest first,
+-- keyset-paginated on (created_at, id). Status and type are INCLUDEd so the optional
+-- filters are checked on the index entries before any heap row is visited.
+
+CREATE INDEX IF NOT EXISTS idx_notifications_user_created
+    ON notifications (user_id, created_at DESC, id DESC)
+    INCLUDE (status, notification_type);
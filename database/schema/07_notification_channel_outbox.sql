@@ -0,0 +1,9 @@
+-- Per-channel outbox
+-- Each channel has its own outbox workers, which claim only their channel's due rows.
+-- The claim index leads with status and notification_type so every worker scans just
+-- its own channel, ordered by next_attempt_at.
+
+CREATE INDEX IF NOT EXISTS idx_notifications_channel_next_attempt
+    ON notifications (status, notification_type, next_attempt_at);
+
+DROP INDEX IF EXISTS idx_notifications_status_next_attempt;
@@ -0,0 +1,20 @@
+-- Delivery counters
+-- Notification counts per user and per release, split by channel and status. The
+-- service adds in-memory deltas to these rows on a fixed interval, so count endpoints
+-- read a handful of rows instead of counting the notifications table.
+-- The release index lets the reconciliation job recount a chunk of releases without
+-- scanning; users are recounted through the existing user_id indexes.
+
+CREATE TABLE IF NOT EXISTS delivery_counters (
+    id BIGSERIAL PRIMARY KEY,
+    scope VARCHAR(255) NOT NULL,
+    scope_id BIGINT NOT NULL,
+    notification_type VARCHAR(255) NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    total BIGINT NOT NULL,
+    updated_at TIMESTAMP,
+    CONSTRAINT uk_delivery_counters_key UNIQUE (scope, scope_id, notification_type, status)
+);
+
+CREATE INDEX IF NOT EXISTS idx_notifications_release_channel_status
+    ON notifications (watch_release_id, notification_type, status);
@@ -0,0 +1,47 @@
+-- Notification rollups
+-- Hourly and daily aggregates of notifications per channel, kind and status, kept up to
+-- date incrementally by the service from a watermark on notifications.created_at. The
+-- created_at index lets each run read just the hours since the watermark.
+
+CREATE TABLE IF NOT EXISTS notification_rollup_hourly (
+    id BIGSERIAL PRIMARY KEY,
+    bucket_start TIMESTAMP NOT NULL,
+    notification_type VARCHAR(255),
+    notification_kind VARCHAR(255),
+    status VARCHAR(255),
+    notification_count BIGINT NOT NULL,
+    retry_count BIGINT NOT NULL,
+    delivered_count BIGINT NOT NULL,
+    delivery_seconds_sum DOUBLE PRECISION,
+    delivery_seconds_min DOUBLE PRECISION,
+    delivery_seconds_max DOUBLE PRECISION
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_rollup_hourly_bucket_start
+    ON notification_rollup_hourly (bucket_start);
+
+CREATE TABLE IF NOT EXISTS notification_rollup_daily (
+    id BIGSERIAL PRIMARY KEY,
+    rollup_date DATE NOT NULL,
+    notification_type VARCHAR(255),
+    notification_kind VARCHAR(255),
+    status VARCHAR(255),
+    notification_count BIGINT NOT NULL,
+    retry_count BIGINT NOT NULL,
+    delivered_count BIGINT NOT NULL,
+    delivery_seconds_sum DOUBLE PRECISION,
+    delivery_seconds_min DOUBLE PRECISION,
+    delivery_seconds_max DOUBLE PRECISION
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_rollup_daily_rollup_date
+    ON notification_rollup_daily (rollup_date);
+
+CREATE TABLE IF NOT EXISTS rollup_watermarks (
+    name VARCHAR(255) PRIMARY KEY,
+    watermark TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_notifications_created_at
+    ON notifications (created_at);
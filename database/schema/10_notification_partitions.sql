@@ -0,0 +1,98 @@
+-- Monthly partitions of notifications
+-- Range-partitions notifications by created_at, one partition per month named
+-- notifications_pYYYYMM. The service creates upcoming partitions ahead of time and
+-- archives expired ones (app.notification.partitions.*); a default partition catches
+-- rows for months that were not created in time.
+--
+-- PostgreSQL requires every unique key of a partitioned table to include the partition
+-- key, so the primary key becomes (id, created_at) and the unique delivery key moves to
+-- notification_deliveries, which a trigger fills on every insert. Delivery keys stay
+-- there after their partition is archived, so a delivery is never repeated.
+--
+-- The existing rows are copied into the new table, those without a created_at dated by
+-- their sent_at or else the migration time; run in a maintenance window with the
+-- service stopped. Views over notifications are dropped with the old table: re-apply
+-- database/analytics afterwards.
+
+BEGIN;
+
+ALTER TABLE notifications RENAME TO notifications_unpartitioned;
+
+CREATE TABLE notifications (
+    LIKE notifications_unpartitioned INCLUDING DEFAULTS
+) PARTITION BY RANGE (created_at);
+
+ALTER TABLE notifications ALTER COLUMN created_at SET NOT NULL;
+ALTER TABLE notifications ADD PRIMARY KEY (id, created_at);
+ALTER TABLE notifications ADD FOREIGN KEY (user_id) REFERENCES users (id);
+ALTER TABLE notifications ADD FOREIGN KEY (watch_release_id) REFERENCES watch_releases (id);
+
+-- One partition per month from the oldest notification to three months ahead
+DO $$
+DECLARE
+    month DATE := date_trunc('month', COALESCE((SELECT MIN(created_at) FROM notifications_unpartitioned), now()));
+BEGIN
+    WHILE month <= date_trunc('month', now()) + INTERVAL '3 months' LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF notifications FOR VALUES FROM (%L) TO (%L)',
+                       'notifications_p' || to_char(month, 'YYYYMM'), month, month + INTERVAL '1 month');
+        month := month + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+CREATE TABLE IF NOT EXISTS notifications_default PARTITION OF notifications DEFAULT;
+
+-- created_at is the partition key and NOT NULL now; rows without one get their send time
+UPDATE notifications_unpartitioned
+SET created_at = COALESCE(sent_at, now())
+WHERE created_at IS NULL;
+
+INSERT INTO notifications
+SELECT * FROM notifications_unpartitioned;
+
+DROP TABLE notifications_unpartitioned CASCADE;
+
+CREATE INDEX IF NOT EXISTS idx_notifications_channel_next_attempt
+    ON notifications (status, notification_type, next_attempt_at);
+CREATE INDEX IF NOT EXISTS idx_notifications_status_id
+    ON notifications (status, id);
+CREATE INDEX IF NOT EXISTS idx_notifications_user_created
+    ON notifications (user_id, created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_notifications_release_channel_status
+    ON notifications (watch_release_id, notification_type, status);
+CREATE INDEX IF NOT EXISTS idx_notifications_created_at
+    ON notifications (created_at);
+
+-- Unique delivery keys, across all partitions and after archival
+CREATE TABLE IF NOT EXISTS notification_deliveries (
+    user_id BIGINT NOT NULL,
+    watch_release_id BIGINT NOT NULL,
+    notification_type VARCHAR(255) NOT NULL,
+    notification_kind VARCHAR(255) NOT NULL,
+    dedup_seq INTEGER NOT NULL,
+    PRIMARY KEY (user_id, watch_release_id, notification_type, notification_kind, dedup_seq)
+);
+
+INSERT INTO notification_deliveries (user_id, watch_release_id, notification_type, notification_kind, dedup_seq)
+SELECT DISTINCT user_id, watch_release_id, notification_type, notification_kind, dedup_seq
+FROM notifications
+WHERE user_id IS NOT NULL AND watch_release_id IS NOT NULL AND notification_type IS NOT NULL
+  AND notification_kind IS NOT NULL AND dedup_seq IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+-- A repeated delivery fails the insert with a unique violation, as uk_notifications_delivery did
+CREATE OR REPLACE FUNCTION record_notification_delivery() RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.user_id IS NOT NULL AND NEW.watch_release_id IS NOT NULL AND NEW.notification_type IS NOT NULL
+       AND NEW.notification_kind IS NOT NULL AND NEW.dedup_seq IS NOT NULL THEN
+        INSERT INTO notification_deliveries (user_id, watch_release_id, notification_type, notification_kind, dedup_seq)
+        VALUES (NEW.user_id, NEW.watch_release_id, NEW.notification_type, NEW.notification_kind, NEW.dedup_seq);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_notifications_delivery
+    BEFORE INSERT ON notifications
+    FOR EACH ROW EXECUTE FUNCTION record_notification_delivery();
+
+COMMIT;
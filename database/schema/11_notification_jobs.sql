@@ -0,0 +1,32 @@
+-- Fan-out jobs
+-- POST /api/notifications/send queues a job and returns its id. Jobs checkpoint the
+-- last recipient they queued, so a restarted node resumes them, and each notification
+-- records the job that queued it, so a job's progress, hold and cancellation are single
+-- statements over idx_notifications_job_status.
+
+CREATE TABLE IF NOT EXISTS notification_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    watch_release_id BIGINT NOT NULL,
+    notification_kind VARCHAR(255),
+    state VARCHAR(255) NOT NULL,
+    request_json TEXT,
+    scheduled BOOLEAN,
+    job_owner VARCHAR(255),
+    last_recipient_id BIGINT,
+    recipients_resolved BIGINT,
+    notifications_queued BIGINT,
+    error_message VARCHAR(255),
+    created_at TIMESTAMP,
+    started_at TIMESTAMP,
+    heartbeat_at TIMESTAMP,
+    completed_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_jobs_state
+    ON notification_jobs (state, heartbeat_at);
+
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS job_id BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_notifications_job_status
+    ON notifications (job_id, status);
@@ -0,0 +1,6 @@
+-- Catalog feed key
+-- PUT /api/watch-releases/bulk matches feed items to stored releases on
+-- (brand, model_number), one IN query per batch of items.
+
+CREATE INDEX IF NOT EXISTS idx_watch_releases_brand_model
+    ON watch_releases (brand, model_number);
@@ -0,0 +1,37 @@
+-- Notification digests
+-- Users can opt into digests per channel. Fan-outs then buffer one entry per release
+-- here instead of queueing a notification, and the service turns each user's entries
+-- on a channel into one digest notification once the oldest has waited
+-- app.notification.digest.window. Entries stay after their digest is queued, as the
+-- record that the user has had the release; there is no foreign key to notifications
+-- because its primary key includes the partition key.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS email_digest_enabled BOOLEAN DEFAULT FALSE;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS sms_digest_enabled BOOLEAN DEFAULT FALSE;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS push_digest_enabled BOOLEAN DEFAULT FALSE;
+
+CREATE SEQUENCE IF NOT EXISTS notification_digest_entries_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS notification_digest_entries (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id),
+    watch_release_id BIGINT NOT NULL REFERENCES watch_releases (id),
+    notification_type VARCHAR(255) NOT NULL,
+    notification_kind VARCHAR(255) NOT NULL,
+    dedup_seq INTEGER NOT NULL,
+    job_id BIGINT,
+    digest_notification_id BIGINT,
+    created_at TIMESTAMP
+);
+
+-- Also serves loading a release's delivery keys into the dedup index
+CREATE UNIQUE INDEX IF NOT EXISTS uk_notification_digest_entries_delivery
+    ON notification_digest_entries (watch_release_id, notification_kind, notification_type, user_id, dedup_seq);
+
+-- Only entries still waiting for their digest are scanned for due digests
+CREATE INDEX IF NOT EXISTS idx_notification_digest_entries_pending
+    ON notification_digest_entries (user_id, notification_type, created_at)
+    WHERE digest_notification_id IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_notification_digest_entries_job
+    ON notification_digest_entries (job_id);
@@ -0,0 +1,7 @@
+-- Outbox leases
+-- Outbox workers claim a batch in a short transaction that sets leased_until, send it
+-- without holding row locks, and record outcomes only for rows still under their lease.
+-- Rows are claimable again once their lease has run out. Adding the column to the
+-- partitioned table adds it to every partition.
+
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS leased_until TIMESTAMP;
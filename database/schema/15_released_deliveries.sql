@@ -0,0 +1,25 @@
+-- Freed deliveries
+-- Cancelled and dead-lettered notifications give up their dedup sequence, so a later
+-- fan-out of the release may notify the user again. The service clears dedup_seq on
+-- those rows; this trigger removes the matching key from notification_deliveries, and
+-- the backfill frees the keys of rows that were cancelled or dead-lettered before.
+
+CREATE OR REPLACE FUNCTION release_notification_delivery() RETURNS TRIGGER AS $$
+BEGIN
+    DELETE FROM notification_deliveries
+    WHERE user_id = OLD.user_id AND watch_release_id = OLD.watch_release_id
+      AND notification_type = OLD.notification_type AND notification_kind = OLD.notification_kind
+      AND dedup_seq = OLD.dedup_seq;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_notifications_delivery_release ON notifications;
+CREATE TRIGGER trg_notifications_delivery_release
+    AFTER UPDATE OF dedup_seq ON notifications
+    FOR EACH ROW
+    WHEN (OLD.dedup_seq IS NOT NULL AND NEW.dedup_seq IS NULL)
+    EXECUTE FUNCTION release_notification_delivery();
+
+UPDATE notifications SET dedup_seq = NULL
+WHERE status IN ('CANCELLED', 'DEAD_LETTER') AND dedup_seq IS NOT NULL;
@@ -0,0 +1,17 @@
+-- Archived partitions
+-- The partition maintenance job records each notifications partition here before it
+-- detaches it, and only archives and drops detached tables that are recorded, so a
+-- table that merely matches the notifications_pYYYYMM naming is never dropped. The row
+-- is kept after the drop as the record of the archive file.
+
+CREATE TABLE IF NOT EXISTS notification_partition_archives (
+    partition_name VARCHAR(255) PRIMARY KEY,
+    detached_at TIMESTAMP NOT NULL,
+    archived_at TIMESTAMP,
+    archived_rows BIGINT,
+    archive_file VARCHAR(255)
+);
+
+-- A table left detached by a failed run before this script was applied is no longer
+-- archived automatically; once checked, record it to have the next run archive it:
+-- INSERT INTO notification_partition_archives (partition_name, detached_at) VALUES ('notifications_pYYYYMM', now());
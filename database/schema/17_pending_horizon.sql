@@ -0,0 +1,9 @@
+-- Pending horizon
+-- Outbox claims and the queue-depth gauge bound created_at by the oldest PENDING row,
+-- so PostgreSQL prunes the partitions that only hold settled notifications. This index
+-- finds that row without reading the settled ones; created on the partitioned table it
+-- is created on every partition.
+
+CREATE INDEX IF NOT EXISTS idx_notifications_pending_created
+    ON notifications (created_at)
+    WHERE status = 'PENDING';
@@ -0,0 +1,13 @@
+-- Delivery counter watermarks
+-- Each node records how far it has flushed its in-memory counter deltas, and
+-- notifications record when their status last changed. Reconciliation only overwrites
+-- the counters of users and releases whose notifications all changed before every live
+-- node's last flush, so it never counts a delta that is still in flight twice. Adding
+-- the column to the partitioned table adds it to every partition.
+
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS status_changed_at TIMESTAMP;
+
+CREATE TABLE IF NOT EXISTS delivery_counter_nodes (
+    node_id VARCHAR(255) PRIMARY KEY,
+    flushed_through TIMESTAMP NOT NULL
+);
@@ -0,0 +1,6 @@
+-- Audience index refresh
+-- Every node refreshes its in-memory audience index from the users changed since its
+-- last refresh; this index keeps that from reading the whole users table.
+
+CREATE INDEX IF NOT EXISTS idx_users_updated_at
+    ON users (updated_at);
@@ -0,0 +1,22 @@
+-- Unique catalog feed key
+-- Two feeds inserting the same new item at once could both store it, after which the
+-- bulk upsert rejected that (brand, model_number) for good. The key is now unique, and
+-- a feed that loses the race re-reads the stored release and updates it instead.
+--
+-- Releases already stored more than once keep the oldest on the key; the later copies
+-- are referenced by notifications and jobs, so they are not deleted but moved off the
+-- key by suffixing their model number with their id. Merge or delete them by hand.
+
+UPDATE watch_releases w
+SET model_number = w.model_number || ' (duplicate ' || w.id || ')'
+WHERE EXISTS (
+    SELECT 1 FROM watch_releases older
+    WHERE older.brand = w.brand
+      AND older.model_number = w.model_number
+      AND older.id < w.id
+);
+
+DROP INDEX IF EXISTS idx_watch_releases_brand_model;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_watch_releases_brand_model
+    ON watch_releases (brand, model_number);